@@ -40,7 +40,8 @@ public class EventLogGenerator implements CommandLineRunner {
         });
     }
     private void contextLoads() throws IOException {
-        File file = new File(logFile);
+        // with a list of input files, generate events into the first
+        File file = new File(logFile.split(",")[0].trim());
         IOUtils.createDirectoryTree(file);
         try (BufferedWriter writer = new BufferedWriter(new FileWriter(file))) {
             while (running) {
@@ -8,6 +8,12 @@ import com.vgrazi.monitor.eventprocessor.processor.FrameProcessor;
 import com.vgrazi.monitor.eventprocessor.processor.RecordProcessor;
 import com.vgrazi.monitor.eventprocessor.processor.ScorecardProcessor;
 import com.vgrazi.monitor.eventprocessor.util.IOUtils;
+import com.vgrazi.monitor.eventprocessor.util.IngestMetrics;
+import com.vgrazi.monitor.eventprocessor.util.OverflowPolicy;
+import com.vgrazi.monitor.eventprocessor.util.RingBuffer;
+import com.vgrazi.monitor.eventprocessor.util.SheddingQueue;
+import com.vgrazi.monitor.eventprocessor.util.WaitStrategies;
+import com.vgrazi.monitor.eventprocessor.util.WaitStrategy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -16,8 +22,10 @@ import org.springframework.boot.CommandLineRunner;
 import org.springframework.stereotype.Component;
 
 import java.io.File;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.LinkedTransferQueue;
-import java.util.concurrent.TransferQueue;
 
 @Component
 public class EventProcessLauncher implements CommandLineRunner {
@@ -38,15 +46,36 @@ public class EventProcessLauncher implements CommandLineRunner {
     @Value("${scorecard-directory}")
     private String outputDir;
 
+    @Value("${queue-transport}")
+    private String queueTransport;
+
+    @Value("${ring-buffer-size}")
+    private int ringBufferSize;
+
+    @Value("${ring-wait-strategy}")
+    private String ringWaitStrategy;
+
+    @Value("${ring-max-park-ms}")
+    private long ringMaxParkMillis;
+
+    @Value("${record-queue-capacity}")
+    private int recordQueueCapacity;
+
+    @Value("${record-queue-overflow-policy}")
+    private String recordQueueOverflowPolicy;
+
+    @Autowired
+    private IngestMetrics ingestMetrics;
+
     @Override
     public void run(String[] args) {
         IOUtils.createDirectoryTree(new File(outputDir));
         // The FileReader parses records into Record instances, then deposits them on the queue.
         // They are picked up by the EventProcessor, which groups them into Frames, and deposits them on a queue.
         // They are then processed by the FrameProcessor
-        TransferQueue<Record> recordQueue = new LinkedTransferQueue<>();
-        TransferQueue<Frame> frameQueue = new LinkedTransferQueue<>();
-        TransferQueue<Scorecard> scorecardQueue = new LinkedTransferQueue<>();
+        BlockingQueue<Record> recordQueue = createRecordQueue();
+        BlockingQueue<Frame> frameQueue = createQueue(ringBufferSize);
+        BlockingQueue<Scorecard> scorecardQueue = createQueue(ringBufferSize);
         // read lines, parse them, and add them to the records queue
         fileReader.tailFile(recordQueue);
 
@@ -61,4 +90,41 @@ public class EventProcessLauncher implements CommandLineRunner {
 
     }
 
+    /**
+     * Creates the bounded record queue, which sheds records according to the record-queue-overflow-policy when the
+     * FileReader gets too far ahead of the RecordProcessor
+     */
+    private BlockingQueue<Record> createRecordQueue() {
+        OverflowPolicy policy = OverflowPolicy.fromProperty(recordQueueOverflowPolicy);
+        logger.info("Record queue holds up to {} records, overflow policy {}", recordQueueCapacity, policy);
+        BlockingQueue<Record> queue;
+        if (policy == OverflowPolicy.DROP_OLDEST) {
+            // the reader discards the oldest records itself, so the queue has to support more than one consumer
+            queue = new ArrayBlockingQueue<>(recordQueueCapacity);
+        }
+        else if ("linked".equals(queueTransport)) {
+            queue = new LinkedBlockingQueue<>(recordQueueCapacity);
+        }
+        else {
+            queue = createQueue(recordQueueCapacity);
+        }
+        return new SheddingQueue<>(queue, policy, Record::isError, ingestMetrics);
+    }
+
+    /**
+     * Creates the queue connecting two stages, according to the queue-transport property
+     * @param capacity the number of slots in a ring. Linked queues are unbounded
+     */
+    private <E> BlockingQueue<E> createQueue(int capacity) {
+        switch (queueTransport) {
+            case "linked":
+                return new LinkedTransferQueue<>();
+            case "ring":
+                WaitStrategy waitStrategy = WaitStrategies.create(ringWaitStrategy, ringMaxParkMillis, ringMaxParkMillis);
+                return new RingBuffer<>(capacity, waitStrategy);
+            default:
+                throw new IllegalArgumentException("Unknown queue-transport: " + queueTransport);
+        }
+    }
+
 }
@@ -4,7 +4,11 @@ import com.sun.org.glassfish.external.statistics.Stats;
 import com.vgrazi.monitor.eventprocessor.domain.Scorecard;
 import com.vgrazi.monitor.eventprocessor.util.IOUtils;
 import com.vgrazi.monitor.eventprocessor.util.MonitorBuilder;
+import com.vgrazi.monitor.eventprocessor.util.ScorecardCodecs;
+import com.vgrazi.monitor.eventprocessor.util.ScorecardRing;
+import com.vgrazi.monitor.eventprocessor.util.SpinThenParkWaitStrategy;
 import com.vgrazi.monitor.eventprocessor.util.StatsCruncher;
+import com.vgrazi.monitor.eventprocessor.util.WaitStrategy;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.CommandLineRunner;
@@ -17,10 +21,10 @@ import java.nio.file.*;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
 
 /**
  * Listens for new Scorecard files in the "output" directory, consumes them, renders them, and deletes them.
+ * With scorecard-transport=ring, it instead reads the newest scorecards from the shared memory ScorecardRing.
  * Note that the monitor is very dumb, all of the data is produced on the server app, and output to a Scorecard file
  * The sole job of the monitor is to detect scorecards, read them, and render them
  */
@@ -38,15 +42,78 @@ public class MonitorUI implements CommandLineRunner {
     @Value("${report-stats-secs}")
     private String reportStatsSecs;
 
+    @Value("${scorecard-transport}")
+    private String transport;
+
+    @Value("${scorecard-ring-file}")
+    private String ringFile;
+
+    @Value("${scorecard-ring-max-park-ms}")
+    private long ringMaxParkMillis;
+
     @Autowired
     private StatsCruncher statsCruncher;
 
+    // the latest scorecard, with the deltas applied. Null until the first keyframe, or after a missed delta
+    private Scorecard model;
 
     @Override
     public void run(String... args) throws IOException {
         JFrame frame = createJFrame();
         frame.add(new JPanel());
-        watchForFiles();
+        if ("ring".equals(transport)) {
+            readRing();
+        }
+        else {
+            watchForFiles();
+        }
+    }
+
+    /**
+     * Follows the scorecard ring. Scorecards are read in sequence while they are still in the ring; if we fall a whole
+     * ring behind, we skip to the newest one, and the delta check in applyScorecard waits for the next keyframe
+     */
+    private void readRing() throws IOException {
+        Path path = Paths.get(ringFile);
+        long lastSequence = -1;
+        ScorecardRing ring = null;
+        try (WaitStrategy waitStrategy = new SpinThenParkWaitStrategy(ringMaxParkMillis)) {
+            int idleCount = 0;
+            while (running) {
+                if (ring == null) {
+                    // the processor (maybe in another JVM) has not created the ring yet
+                    ring = ScorecardRing.open(path);
+                }
+                long latest = ring == null ? -1 : ring.getLatestSequence();
+                if (latest < lastSequence) {
+                    // the processor restarted, and reset the ring
+                    ring.close();
+                    ring = null;
+                    lastSequence = -1;
+                    continue;
+                }
+                if (latest == lastSequence) {
+                    waitStrategy.idle(idleCount++);
+                    continue;
+                }
+                idleCount = 0;
+                long next = latest - lastSequence < ring.getSlotCount() ? lastSequence + 1 : latest;
+                byte[] bytes = ring.read(next);
+                if (bytes == null) {
+                    // overwritten as we looked at it
+                    lastSequence = ring.getLatestSequence() - 1;
+                    continue;
+                }
+                lastSequence = next;
+                showScorecard(ScorecardCodecs.detect(bytes).decode(bytes));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (ring != null) {
+                ring.close();
+            }
+        }
     }
 
     private void watchForFiles() throws IOException {
@@ -58,21 +125,19 @@ public class MonitorUI implements CommandLineRunner {
                 watchKey.pollEvents().forEach(event ->
                 {
                     Path path = (Path) event.context();
+                    if (IOUtils.isTempScorecardFile(path)) {
+                        // not renamed into place yet
+                        return;
+                    }
                     try {
+                        // the file was renamed into place once complete, so it can be read straight away
                         Path scorecardFile = Paths.get(scorecardDir, path.getFileName().toString());
-                        // give the file a chance to flush!
-                        Thread.sleep(50);
                         Scorecard scorecard = IOUtils.readScorecardFile(scorecardFile);
                         Files.delete(scorecardFile);
-                        JPanel panel = displayScorecard(scorecard);
-                        frame.getContentPane().remove(0);
-                        frame.getContentPane().add(panel);
-                        frame.getContentPane().validate();
+                        showScorecard(scorecard);
 
                     } catch (IOException e) {
                         e.printStackTrace();
-                    } catch (InterruptedException e) {
-                        Thread.currentThread().interrupt();
                     }
                 });
                 watchKey.reset();
@@ -82,6 +147,21 @@ public class MonitorUI implements CommandLineRunner {
         }
     }
 
+    /**
+     * Applies the scorecard to the model, and renders the result
+     */
+    private void showScorecard(Scorecard scorecard) {
+        scorecard = applyScorecard(scorecard);
+        if (scorecard == null) {
+            // waiting for a keyframe
+            return;
+        }
+        JPanel panel = displayScorecard(scorecard);
+        frame.getContentPane().remove(0);
+        frame.getContentPane().add(panel);
+        frame.getContentPane().validate();
+    }
+
     private JFrame createJFrame() {
         frame.setDefaultCloseOperation(WindowConstants.EXIT_ON_CLOSE);
         Toolkit toolkit = Toolkit.getDefaultToolkit();
@@ -96,24 +176,26 @@ public class MonitorUI implements CommandLineRunner {
         int screenHeight = size.height;
         int screenWidth = size.width;
 
-        List<String> hitCountList = scorecard.getHitCounts();
-        List<SecsToHits> secsToHits = hitCountList.stream().map(SecsToHits::new).collect(Collectors.toList());
+        int[] hitCounts = getHitCountsForScorecard(scorecard);
 
         Map<String, Long> hitsReport = scorecard.getHitsReport();
         LinkedHashMap<String, Long> hitsReportSorted = statsCruncher.sortByValueReverseOrder(hitsReport);
 
-        if (!secsToHits.isEmpty()) {
-            int[] hitCounts = getHitCountsForScorecard(secsToHits);
+        if (hitCounts.length > 0) {
             JPanel panel = new JPanel() {
                 @Override
                 protected void paintComponent(Graphics graphics) {
                     super.paintComponent(graphics);
                     MonitorBuilder.clearBackground(graphics, screenWidth, screenHeight);
                     MonitorBuilder.renderAxes(graphics, screenWidth, screenHeight);
-                    MonitorBuilder.renderBarGraph(graphics, screenWidth, screenHeight, hitCounts, secsToHits, alertThreshold);
+                    MonitorBuilder.renderBarGraph(graphics, screenWidth, screenHeight, hitCounts, scorecard.getStartTime(), alertThreshold);
                     MonitorBuilder.renderAlerts(graphics, scorecard);
                     MonitorBuilder.renderHitsReport(graphics, hitsReportSorted, reportStatsSecs);
+                    MonitorBuilder.renderHeavyHitters(graphics, scorecard);
+                    MonitorBuilder.renderResponseSizes(graphics, hitsReportSorted, scorecard);
+                    MonitorBuilder.renderDistinctCounts(graphics, scorecard);
                     MonitorBuilder.renderHistory(graphics, scorecard);
+                    MonitorBuilder.renderIngestWarnings(graphics, scorecard, screenHeight);
 
                     graphics.dispose();
                 }
@@ -124,46 +206,50 @@ public class MonitorUI implements CommandLineRunner {
     }
 
     /**
-     * This method computes an int array based on the incoming SecsToHits list.
-     * Background: Scorecard contains all of the data required for rendering, including the entire historical x and y graph data
-     * The x axis are the "secs" part of SecsToHits
-     * The y-axis are the "hits" part of SecsToHits
-     * Iterates all of the
+     * Applies the scorecard to the model. A keyframe replaces the model. A delta is completed from the model, which may
+     * still be on display, so is left as it is.
+     * If a delta is missing, the model is out of date, so the following deltas are dropped until the next keyframe
+     *
+     * @return the complete scorecard to display, or null if we are waiting for a keyframe
      */
-    private int[] getHitCountsForScorecard(List<SecsToHits> secsToHits) {
-        long min = secsToHits.get(0).secs;
-        long max = secsToHits.get(secsToHits.size() - 1).secs;
-        long count = max - min + 1;
-
-        int[] secs = new int[(int) count];
-        for (int i = 0, j = 0; i < count; i++) {
-            SecsToHits secsHits = secsToHits.get(j);
-            long recordSecs = secsHits.secs;
-            if (recordSecs == min + i) {
-                secs[i] = secsHits.hits;
-                j++;
-            }
+    private Scorecard applyScorecard(Scorecard scorecard) {
+        if (scorecard.isKeyframe()) {
+            model = scorecard;
+            return model;
         }
-        return secs;
+        if (model == null || scorecard.getSequence() != model.getSequence() + 1) {
+            model = null;
+            return null;
+        }
+        scorecard.completeFrom(model, MonitorBuilder.HISTORY_LINES);
+        model = scorecard;
+        return model;
     }
 
-    public class SecsToHits {
-        public long getSecs() {
-            return secs;
+    /**
+     * Returns the scorecard's hits per second, the y axis of the bar graph. Entry i is the second getStartTime() + i,
+     * the x axis. A scorecard written with only the legacy "secs:hits" strings is converted to the same form
+     */
+    private int[] getHitCountsForScorecard(Scorecard scorecard) {
+        if (scorecard.getHitCountSeries() != null) {
+            return scorecard.getHitCountSeries();
         }
-
-        public int getHits() {
-            return hits;
+        List<String> secsToHits = scorecard.getHitCounts();
+        if (secsToHits == null || secsToHits.isEmpty()) {
+            return new int[0];
         }
-
-        private final long secs;
-        private final int hits;
-
-        private SecsToHits(String secsToHits) {
-            String[] split = secsToHits.split(":");
-            secs = Integer.parseInt(split[0]);
-            hits = Integer.parseInt(split[1]);
+        long min = secs(secsToHits.get(0));
+        long max = secs(secsToHits.get(secsToHits.size() - 1));
+        int[] hitCounts = new int[(int) (max - min + 1)];
+        for (String secsHits : secsToHits) {
+            int separator = secsHits.indexOf(':');
+            hitCounts[(int) (secs(secsHits) - min)] = Integer.parseInt(secsHits.substring(separator + 1));
         }
+        return hitCounts;
+    }
+
+    private static long secs(String secsToHits) {
+        return Long.parseLong(secsToHits.substring(0, secsToHits.indexOf(':')));
     }
 
     public void stop() {
@@ -0,0 +1,43 @@
+package com.vgrazi.monitor.eventprocessor.domain;
+
+/**
+ * The Record fields that are tracked by approximate, fixed memory sketches, such as the heavy hitters
+ */
+public enum Dimension {
+    SECTION(Record.Field.SECTION) {
+        @Override
+        public String valueOf(Record record) {
+            return record.getSection();
+        }
+    },
+    HOST(Record.Field.HOST) {
+        @Override
+        public String valueOf(Record record) {
+            return record.getHost();
+        }
+    },
+    CALLER(Record.Field.CALLER) {
+        @Override
+        public String valueOf(Record record) {
+            return record.getCaller();
+        }
+    };
+
+    private final Record.Field field;
+
+    Dimension(Record.Field field) {
+        this.field = field;
+    }
+
+    /**
+     * Returns the record's value for this dimension, or null if the record does not have one
+     */
+    public abstract String valueOf(Record record);
+
+    /**
+     * Returns the Record field that must be decoded to read this dimension
+     */
+    public Record.Field getField() {
+        return field;
+    }
+}
@@ -0,0 +1,83 @@
+package com.vgrazi.monitor.eventprocessor.domain;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.Objects;
+
+/**
+ * HyperLogLog estimates of the number of distinct values of a Dimension, over the recent seconds and over the whole
+ * window. Both estimates have the same relative standard error
+ */
+public class DistinctCount {
+    @JsonProperty("recent-secs")
+    private int recentSeconds;
+    @JsonProperty("recent")
+    private long recent;
+    @JsonProperty("window-secs")
+    private int windowSeconds;
+    @JsonProperty("window")
+    private long window;
+    @JsonProperty("standard-error")
+    private double standardError;
+
+    public DistinctCount() {
+    }
+
+    public DistinctCount(int recentSeconds, long recent, int windowSeconds, long window, double standardError) {
+        this.recentSeconds = recentSeconds;
+        this.recent = recent;
+        this.windowSeconds = windowSeconds;
+        this.window = window;
+        this.standardError = standardError;
+    }
+
+    public int getRecentSeconds() {
+        return recentSeconds;
+    }
+
+    /**
+     * Returns the estimated distinct values over the last recentSeconds
+     */
+    public long getRecent() {
+        return recent;
+    }
+
+    public int getWindowSeconds() {
+        return windowSeconds;
+    }
+
+    /**
+     * Returns the estimated distinct values over the last windowSeconds
+     */
+    public long getWindow() {
+        return window;
+    }
+
+    /**
+     * Returns the relative standard error of the estimates, eg 0.0325 for 3.25%
+     */
+    public double getStandardError() {
+        return standardError;
+    }
+
+    /**
+     * Equal estimates need not be sent again in a delta scorecard
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        DistinctCount that = (DistinctCount) o;
+        return recentSeconds == that.recentSeconds && recent == that.recent && windowSeconds == that.windowSeconds
+                && window == that.window && Double.compare(that.standardError, standardError) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(recentSeconds, recent, windowSeconds, window, standardError);
+    }
+}
@@ -1,30 +1,227 @@
 package com.vgrazi.monitor.eventprocessor.domain;
 
+import com.vgrazi.monitor.eventprocessor.util.Dictionary;
+import com.vgrazi.monitor.eventprocessor.util.HyperLogLog;
+import com.vgrazi.monitor.eventprocessor.util.IntLongMap;
+import com.vgrazi.monitor.eventprocessor.util.LogHistogram;
+import com.vgrazi.monitor.eventprocessor.util.SpaceSaving;
+
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Set;
 import java.util.stream.Stream;
 
 /**
- * A Frame represents one second's worth of records
+ * A Frame represents one second's worth of records.
+ * As each record is added, it is folded into a summary of the second: the hit count, hits and failures per section,
+ * hits per status class, and the total bytes. If the Frame does not keep its records, the record is then dropped, so
+ * the memory held by a Frame is bounded by the number of distinct sections rather than by the traffic.
+ * If heavy hitters are tracked, the section, host and caller are instead added to fixed capacity Space-Saving
+ * sketches, one per Dimension, and the exact section counts are not kept. Likewise the values of the distinct count
+ * Dimensions are added to HyperLogLog sketches.
  */
 public class Frame {
-    private final List<Record> records = new LinkedList<>();
+    private final List<Record> records;
     private long frameStartTime;
     private long frameEndTime;
+    private int recordCount;
+    private long hitCount;
+    // keyed by the section's id in Dictionary.SECTIONS
+    private final IntLongMap sectionCounts = new IntLongMap();
+    // false if heavy hitters are tracked instead
+    private final boolean exactSectionCounts;
+    private final IntLongMap failedSectionCounts = new IntLongMap();
+    // hits per status class, indexed by returnCode / 100. Index 0 counts return codes outside 100-599
+    private final long[] statusClassCounts = new long[6];
+    private long byteCount;
+    // sparse response size histograms of each section, keyed by section id << LogHistogram.BUCKET_BITS | bucket
+    private final IntLongMap sectionByteBuckets = new IntLongMap();
+    private final IntLongMap sectionBytes = new IntLongMap();
+    // indexed by Dimension ordinal, null if heavy hitters are not tracked, or have been taken
+    private SpaceSaving[] heavyHitters;
+    // indexed by Dimension ordinal, null for the dimensions that are not counted, or if they have been taken
+    private HyperLogLog[] distinctCounts;
+
+    /**
+     * Creates a Frame that keeps its records
+     */
+    public Frame() {
+        this(true);
+    }
+
+    /**
+     * @param keepRecords false to only keep the summary of the records
+     */
+    public Frame(boolean keepRecords) {
+        this(keepRecords, 0);
+    }
+
+    /**
+     * @param keepRecords false to only keep the summary of the records
+     * @param heavyHitterCapacity the number of values tracked per Dimension by the heavy hitter sketches, or 0 to keep
+     *                            exact section counts instead
+     */
+    public Frame(boolean keepRecords, int heavyHitterCapacity) {
+        this(keepRecords, heavyHitterCapacity, EnumSet.noneOf(Dimension.class));
+    }
+
+    /**
+     * @param keepRecords false to only keep the summary of the records
+     * @param heavyHitterCapacity the number of values tracked per Dimension by the heavy hitter sketches, or 0 to keep
+     *                            exact section counts instead
+     * @param distinctCountDimensions the dimensions to estimate the distinct values of
+     */
+    public Frame(boolean keepRecords, int heavyHitterCapacity, Set<Dimension> distinctCountDimensions) {
+        if (!distinctCountDimensions.isEmpty()) {
+            distinctCounts = new HyperLogLog[Dimension.values().length];
+            for (Dimension dimension : distinctCountDimensions) {
+                distinctCounts[dimension.ordinal()] = new HyperLogLog();
+            }
+        }
+        records = keepRecords ? new LinkedList<>() : null;
+        exactSectionCounts = heavyHitterCapacity == 0;
+        if (heavyHitterCapacity > 0) {
+            heavyHitters = new SpaceSaving[Dimension.values().length];
+            for (int i = 0; i < heavyHitters.length; i++) {
+                heavyHitters[i] = new SpaceSaving(heavyHitterCapacity);
+            }
+        }
+    }
+
+    /**
+     * Creates a partial of the frame. See newPartial()
+     */
+    private Frame(Frame frame) {
+        records = null;
+        exactSectionCounts = frame.exactSectionCounts;
+        if (frame.heavyHitters != null) {
+            heavyHitters = new SpaceSaving[frame.heavyHitters.length];
+            for (int i = 0; i < heavyHitters.length; i++) {
+                heavyHitters[i] = new SpaceSaving(frame.heavyHitters[i].getCapacity());
+            }
+        }
+        if (frame.distinctCounts != null) {
+            distinctCounts = new HyperLogLog[frame.distinctCounts.length];
+            for (int i = 0; i < distinctCounts.length; i++) {
+                if (frame.distinctCounts[i] != null) {
+                    distinctCounts[i] = new HyperLogLog();
+                }
+            }
+        }
+    }
 
     public void addRecord(Record record) {
-        records.add(record);
+        addInOrder(record);
+        addCounts(record);
+    }
+
+    /**
+     * Adds the record to the kept records, the one part of the Frame that depends on the order the records arrive in.
+     * A partial Frame keeps no records
+     */
+    public void addInOrder(Record record) {
+        if (records != null) {
+            records.add(record);
+        }
+    }
+
+    /**
+     * Adds the record to the summary. The counts add up the same whatever order the records arrive in. The heavy hitter
+     * sketches' evictions do depend on the order, but sketches of parts of the second merge into a sketch of the whole
+     * second, within the merged error bound
+     */
+    private void addCounts(Record record) {
+        recordCount++;
+        int weight = record.getWeight();
+        hitCount += weight;
+        int sectionId = record.getSectionId();
+        // a malformed line may have no section
+        if (exactSectionCounts && sectionId != Dictionary.NO_ID) {
+            sectionCounts.add(sectionId, weight);
+        }
+        if (distinctCounts != null) {
+            for (Dimension dimension : Dimension.values()) {
+                HyperLogLog sketch = distinctCounts[dimension.ordinal()];
+                String value = sketch != null ? dimension.valueOf(record) : null;
+                if (value != null) {
+                    sketch.add(value);
+                }
+            }
+        }
+        if (heavyHitters != null) {
+            for (Dimension dimension : Dimension.values()) {
+                String value = dimension.valueOf(record);
+                if (value != null) {
+                    heavyHitters[dimension.ordinal()].add(value, weight);
+                }
+            }
+        }
+        int returnCode = record.getReturnCode();
+        if (returnCode != 200 && sectionId != Dictionary.NO_ID) {
+            failedSectionCounts.add(sectionId, weight);
+        }
+        int statusClass = returnCode / 100;
+        statusClassCounts[statusClass >= 1 && statusClass <= 5 ? statusClass : 0] += weight;
+        long bytes = record.getByteCount();
+        byteCount += bytes * weight;
+        if (sectionId != Dictionary.NO_ID) {
+            sectionByteBuckets.add(sectionId << LogHistogram.BUCKET_BITS | LogHistogram.bucketOf(bytes), weight);
+            sectionBytes.add(sectionId, bytes * weight);
+        }
+    }
+
+    /**
+     * Creates an empty partial Frame, which keeps the summary but not the records. Records can be added to partials on
+     * other threads, as long as addInOrder adds them to this Frame, in order. Merging the partials into this Frame then
+     * gives the same counts as adding the records directly, and heavy hitter sketches within the merged error bound
+     */
+    public Frame newPartial() {
+        return new Frame(this);
+    }
+
+    /**
+     * Adds the records of another Frame, for the same second, to this one
+     */
+    public void merge(Frame other) {
+        if (records != null && other.records != null) {
+            records.addAll(other.records);
+        }
+        recordCount += other.recordCount;
+        hitCount += other.hitCount;
+        sectionCounts.addAll(other.sectionCounts);
+        failedSectionCounts.addAll(other.failedSectionCounts);
+        for (int i = 0; i < statusClassCounts.length; i++) {
+            statusClassCounts[i] += other.statusClassCounts[i];
+        }
+        byteCount += other.byteCount;
+        sectionByteBuckets.addAll(other.sectionByteBuckets);
+        sectionBytes.addAll(other.sectionBytes);
+        if (heavyHitters != null && other.heavyHitters != null) {
+            for (int i = 0; i < heavyHitters.length; i++) {
+                heavyHitters[i].merge(other.heavyHitters[i]);
+            }
+        }
+        if (distinctCounts != null && other.distinctCounts != null) {
+            for (int i = 0; i < distinctCounts.length; i++) {
+                if (distinctCounts[i] != null && other.distinctCounts[i] != null) {
+                    distinctCounts[i].merge(other.distinctCounts[i]);
+                }
+            }
+        }
+        frameEndTime = Math.max(frameEndTime, other.frameEndTime);
     }
 
     @Override
     public String toString() {
         return "Frame{" +
-                records +
+                (records != null ? records : "hitCount=" + hitCount + ", sections=" + sectionCounts.toMap(Dictionary.SECTIONS)) +
                 '}';
     }
 
     public boolean isEmpty() {
-        return records.isEmpty();
+        return recordCount == 0;
     }
 
     public long getStartTime() {
@@ -50,22 +247,96 @@ public class Frame {
     }
 
     /**
-     * Returns a Stream of Record instances representing the records in this Frame
+     * Returns a Stream of Record instances representing the records in this Frame. Empty if the Frame does not keep
+     * its records
      * @return a Stream of Record instances representing the records in this Frame
      */
     public Stream<Record> stream() {
-        return records.stream();
+        return getRecords().stream();
     }
 
     /**
-     * Returns the number records in this Frame
-     * @return the number records in this Frame
+     * Returns the number of log lines represented by the records in this Frame. This is the number of records, scaled
+     * up by the record weights if the records were sampled
+     * @return the number of log lines represented by this Frame
      */
     public int getHitCount() {
-        return records.size();
+        return (int) hitCount;
+    }
+
+    /**
+     * Returns the hits per section id in this Frame. The map belongs to the Frame, do not modify it
+     */
+    public IntLongMap getSectionCounts() {
+        return sectionCounts;
+    }
+
+    /**
+     * Returns the hits per section id with a return code other than 200. The map belongs to the Frame, do not modify it
+     */
+    public IntLongMap getFailedSectionCounts() {
+        return failedSectionCounts;
+    }
+
+    /**
+     * Returns the hits with a return code in the given class, eg 5 for 5xx. Class 0 counts return codes outside 100-599
+     */
+    public long getStatusClassCount(int statusClass) {
+        return statusClassCounts[statusClass];
+    }
+
+    /**
+     * Returns the total bytes returned by the records in this Frame, scaled up by the record weights
+     */
+    public long getByteCount() {
+        return byteCount;
+    }
+
+    /**
+     * Returns the response size histogram buckets of every section, keyed by
+     * section id &lt;&lt; LogHistogram.BUCKET_BITS | bucket. The map belongs to the Frame, do not modify it
+     */
+    public IntLongMap getSectionByteBuckets() {
+        return sectionByteBuckets;
+    }
+
+    /**
+     * Returns the total bytes returned per section id. The map belongs to the Frame, do not modify it
+     */
+    public IntLongMap getSectionBytes() {
+        return sectionBytes;
+    }
+
+    /**
+     * Hands over the heavy hitter sketches, indexed by Dimension ordinal. The Frame no longer holds them afterwards,
+     * so they only take up memory while they are in use
+     * @return the sketches, or null if heavy hitters are not tracked, or the sketches were already taken
+     */
+    public SpaceSaving[] takeHeavyHitters() {
+        SpaceSaving[] taken = heavyHitters;
+        heavyHitters = null;
+        return taken;
+    }
+
+    /**
+     * Hands over the distinct count sketches, indexed by Dimension ordinal, in the same way as takeHeavyHitters()
+     * @return the sketches, null for the dimensions that are not counted, or null if none are counted or the sketches
+     * were already taken
+     */
+    public HyperLogLog[] takeDistinctCounts() {
+        HyperLogLog[] taken = distinctCounts;
+        distinctCounts = null;
+        return taken;
+    }
+
+    /**
+     * Returns true if this Frame keeps its records, as well as their summary
+     */
+    public boolean isKeepingRecords() {
+        return records != null;
     }
 
     public List<Record> getRecords() {
-        return records;
+        return records != null ? records : Collections.emptyList();
     }
 }
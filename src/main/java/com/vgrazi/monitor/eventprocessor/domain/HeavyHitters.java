@@ -0,0 +1,54 @@
+package com.vgrazi.monitor.eventprocessor.domain;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.LinkedHashMap;
+
+/**
+ * The approximate most frequent values of a Dimension, highest count first, as estimated by Space-Saving sketches.
+ * Each count may be overestimated by up to errorBound, and is never underestimated. The errorBound is at most
+ * total / capacity of the sketches, and is 0 if no sketch ever had to evict a value, in which case the counts are exact
+ */
+public class HeavyHitters {
+    @JsonProperty("counts")
+    private LinkedHashMap<String, Long> counts = new LinkedHashMap<>();
+    @JsonProperty("error-bound")
+    private long errorBound;
+    @JsonProperty("total")
+    private long total;
+
+    public LinkedHashMap<String, Long> getCounts() {
+        return counts;
+    }
+
+    public void setCounts(LinkedHashMap<String, Long> counts) {
+        this.counts = counts;
+    }
+
+    public long getErrorBound() {
+        return errorBound;
+    }
+
+    public void setErrorBound(long errorBound) {
+        this.errorBound = errorBound;
+    }
+
+    /**
+     * Returns the total hits counted by the sketches, including the values that are not reported
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    public void setTotal(long total) {
+        this.total = total;
+    }
+
+    @Override
+    public String toString() {
+        return "HeavyHitters{" +
+                "counts=" + counts +
+                ", errorBound=" + errorBound +
+                '}';
+    }
+}
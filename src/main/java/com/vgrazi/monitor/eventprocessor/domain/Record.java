@@ -1,12 +1,22 @@
 package com.vgrazi.monitor.eventprocessor.domain;
 
+import com.vgrazi.monitor.eventprocessor.util.Dictionary;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.time.Instant;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.Month;
+import java.time.Year;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
+import java.util.EnumSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -19,30 +29,65 @@ import java.util.regex.Pattern;
  * </pre>
  */
 public class Record {
+    /**
+     * The fields of a typical line that can be decoded lazily. See fromLine(String, Set)
+     */
+    public enum Field {
+        HOST, CALLER, METHOD, SECTION, REQUEST, RETURN_CODE, BYTE_COUNT, RECORD_TIME;
+
+        private final int mask = 1 << ordinal();
+    }
+
     private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("dd/MMM/yyyy:HH:mm:ss +SSSS");
-    private final Logger logger = LoggerFactory.getLogger("Record");
+    private static final Logger logger = LoggerFactory.getLogger("Record");
+    // the month abbreviations exactly as FORMATTER prints (and therefore parses) them
+    private static final String[] MONTHS = new String[12];
+
+    static {
+        DateTimeFormatter monthFormatter = DateTimeFormatter.ofPattern("MMM");
+        for (int month = 1; month <= 12; month++) {
+            MONTHS[month - 1] = monthFormatter.format(LocalDate.of(2000, month, 1));
+        }
+    }
+
+    private static final TimestampCache TIMESTAMP_CACHE = new TimestampCache();
+    private static final AtomicIntegerFieldUpdater<Record> PENDING_FIELDS =
+            AtomicIntegerFieldUpdater.newUpdater(Record.class, "pendingFields");
 
     // we keep the record time and the actual time, just in case a record is missing a time, or uses hokey times
-    private LocalDateTime actualTime = LocalDateTime.now();
+    private final long actualTimeMillis = System.currentTimeMillis();
+    // the record time is kept as epoch seconds (treating the logged local time as UTC) plus nanos. The LocalDateTime
+    // is only created if someone asks for it
+    private boolean hasRecordTime;
+    private long recordEpochSecond;
+    private int recordNanos;
     private LocalDateTime recordTime;
     private String logLine;
     private String host;
     private String caller;
     private String method;
     private String section;
+    private int sectionId = Dictionary.NO_ID;
     private String request;
     private int returnCode;
     private long byteCount;
     private String httpVersion;
 
     private List<String> errors;
+    // the number of log lines this record stands for. Greater than 1 when the AdaptiveSampler is sampling
+    private int weight = 1;
 
-    private final static Pattern typicalLinePattern = Pattern.compile(
-            "(?x)(?<host>\\S+)\\s-\\s(?<caller>\\S+)\\s\\[" +
-                    "(?<datetime>\\d\\d?/\\w{3}/\\d{4}:\\d{2}:\\d{2}:\\d{2}\\s\\+\\d{4})]\\s\"" +
-                    "(?<httpmethod>\\w+)\\s(?<section>/[^/\\s]+)?(?<request>\\S+)*\\s(?<http>\\w+)/(?<httpversion>[^\"]+)\"\\s" +
-                    "(?<returncode>\\d{3})\\s(?<bytecount>\\d+)"
-    );
+    // For a typical line, fields that are not decoded eagerly are decoded from these offsets into the logLine
+    // the first time they are requested. The remaining offsets are derived from these.
+    // A Record may be read by more than one thread (the RecordProcessor and the aggregator shards), so a field's bit is
+    // only cleared once the field has been written. Until then, a racing reader decodes the same value again
+    private volatile int pendingFields;
+    private int hostEnd;
+    private int callerEnd;
+    private int dateEnd;
+    private int methodEnd;
+    private int requestEnd;
+    private int returnCodeStart;
 
     private final static Pattern HOST_PATTERN = Pattern.compile("^\\s*(?<host>\\S+)");
     private final static Pattern CALLER_PATTERN = Pattern.compile("- (?<caller>\\S+)");
@@ -58,14 +103,24 @@ public class Record {
      *
      * @param logLine the line in the log
      */
-    private Record(String logLine) {
+    private Record(String logLine, Set<Field> eagerFields) {
         this.logLine = logLine;
-        parseLine(logLine);
+        parseLine(logLine, eagerFields);
 
     }
 
     public static Record fromLine(String line) {
-        return new Record(line);
+        return new Record(line, EnumSet.allOf(Field.class));
+    }
+
+    /**
+     * Creates a Record that only decodes the eagerFields up front. The remaining fields of a typical line are kept as
+     * offsets into the line, and only decoded (once) if their getter is called. Malformed lines are always decoded in full
+     *
+     * @param eagerFields the fields the pipeline is known to consume
+     */
+    public static Record fromLine(String line, Set<Field> eagerFields) {
+        return new Record(line, eagerFields);
     }
 
     /**
@@ -75,51 +130,40 @@ public class Record {
      * '<pre>127.0.0.1 - jill [11/Mar/2019:22:08:21 +9600] "GET /api/user HTTP/1.0" 200 234</pre>
      *
      * @param line the log line to parse
+     * @param eagerFields the fields to decode now, if the line is typical
      */
-    private void parseLine(String line) {
+    private void parseLine(String line, Set<Field> eagerFields) {
         // todo: This assumes a rigid string format, which was stated as a requirement.
         //   for this version, we will assume it either matches or it is an exception. We can add further parsing to try
         //   smaller globs in case of no match
-        Matcher matcher = typicalLinePattern.matcher(line);
-        // if the line meets out requirements, then do it in one parse
-        if (matcher.matches()) {
-            logger.debug("Processing line: {}", line);
-
-            host = matcher.group("host");
-            caller = matcher.group("caller");
-            method = matcher.group("httpmethod");
-            section = matcher.group("section");
-            request = matcher.group("request");
-            returnCode = Integer.parseInt(matcher.group("returncode"));
-            byteCount = Integer.parseInt(matcher.group("bytecount"));
-            recordTime = LocalDateTime.from(FORMATTER.parse(matcher.group("datetime")));
-        } else {
+        // if the line meets our requirements, then do it in one pass
+        if (!scanTypicalLine(line, eagerFields)) {
             logger.warn("Line was not formatted correctly: {}", line);
             // uh-oh, line is broken. Let's do our best and report issues
-            matcher = HOST_PATTERN.matcher(line);
+            Matcher matcher = HOST_PATTERN.matcher(line);
             if (matcher.find()) {
-                host = matcher.group("host");
+                host = Dictionary.HOSTS.intern(line, matcher.start("host"), matcher.end("host"));
             }
             else {
                  addErrorMessage("host");
             }
             matcher = CALLER_PATTERN.matcher(line);
             if (matcher.find()) {
-                caller = matcher.group("caller");
+                caller = Dictionary.CALLERS.intern(line, matcher.start("caller"), matcher.end("caller"));
             }
             else {
                 addErrorMessage("caller");
             }
             matcher = HTTP_METHOD_PATTERN.matcher(line);
             if (matcher.find()) {
-                method = matcher.group("httpmethod");
+                method = Dictionary.METHODS.intern(line, matcher.start("httpmethod"), matcher.end("httpmethod"));
             }
             else {
                 addErrorMessage("http method");
             }
             matcher = REQUEST_PATTERN.matcher(line);
             if (matcher.find()) {
-                section = matcher.group("section");
+                setSection(line, matcher.start("section"), matcher.end("section"));
                 request = matcher.group("request");
             }
             else {
@@ -148,7 +192,7 @@ public class Record {
             }
             matcher = DATE_TIME_PATTERN.matcher(line);
             if (matcher.find()) {
-                recordTime = LocalDateTime.from(FORMATTER.parse(matcher.group("datetime")));
+                setRecordTime(LocalDateTime.from(FORMATTER.parse(matcher.group("datetime"))));
             }
             else {
                 addErrorMessage("date/time");
@@ -156,6 +200,298 @@ public class Record {
         }
     }
 
+    /**
+     * Hand written, single pass scan of the typical line. Accepts exactly the lines matched by the regex
+     * <pre>
+     * (?&lt;host&gt;\S+)\s-\s(?&lt;caller&gt;\S+)\s\[(?&lt;datetime&gt;\d\d?/\w{3}/\d{4}:\d{2}:\d{2}:\d{2}\s\+\d{4})]\s"
+     * (?&lt;httpmethod&gt;\w+)\s(?&lt;section&gt;/[^/\s]+)?(?&lt;request&gt;\S+)*\s(?&lt;http&gt;\w+)/(?&lt;httpversion&gt;[^"]+)"\s
+     * (?&lt;returncode&gt;\d{3})\s(?&lt;bytecount&gt;\d+)
+     * </pre>
+     * and fills the fields exactly as its named groups would, without the cost of the regex engine
+     *
+     * @return true if the line is in the typical format and the eagerFields were filled, false if the line needs the
+     * slower, error reporting parse
+     */
+    private boolean scanTypicalLine(String line, Set<Field> eagerFields) {
+        int length = line.length();
+        // host - caller [
+        int hostEnd = skipNonWhitespace(line, 0);
+        if (hostEnd == 0 || hostEnd + 3 >= length || !isWhitespace(line.charAt(hostEnd))
+                || line.charAt(hostEnd + 1) != '-' || !isWhitespace(line.charAt(hostEnd + 2))) {
+            return false;
+        }
+        int callerStart = hostEnd + 3;
+        int callerEnd = skipNonWhitespace(line, callerStart);
+        if (callerEnd == callerStart || callerEnd + 2 >= length || line.charAt(callerEnd + 1) != '[') {
+            return false;
+        }
+        // d?d/MMM/yyyy:HH:mm:ss +SSSS]
+        int dateStart = callerEnd + 2;
+        int pos = skipDigits(line, dateStart);
+        int dayDigits = pos - dateStart;
+        if (dayDigits < 1 || dayDigits > 2 || !matchChar(line, pos, '/')
+                || skipWordChars(line, pos + 1) < pos + 4 || !matchChar(line, pos + 4, '/')) {
+            return false;
+        }
+        pos += 5;
+        if (!matchDigits(line, pos, 4) || !matchChar(line, pos + 4, ':')
+                || !matchDigits(line, pos + 5, 2) || !matchChar(line, pos + 7, ':')
+                || !matchDigits(line, pos + 8, 2) || !matchChar(line, pos + 10, ':')
+                || !matchDigits(line, pos + 11, 2) || pos + 13 >= length || !isWhitespace(line.charAt(pos + 13))
+                || !matchChar(line, pos + 14, '+') || !matchDigits(line, pos + 15, 4)) {
+            return false;
+        }
+        int dateEnd = pos + 19;
+        // ] "method
+        if (!matchChar(line, dateEnd, ']') || dateEnd + 2 >= length || !isWhitespace(line.charAt(dateEnd + 1))
+                || line.charAt(dateEnd + 2) != '"') {
+            return false;
+        }
+        int methodStart = dateEnd + 3;
+        int methodEnd = skipWordChars(line, methodStart);
+        if (methodEnd == methodStart || methodEnd >= length || !isWhitespace(line.charAt(methodEnd))) {
+            return false;
+        }
+        // the request is the entire non-whitespace run, and may be empty
+        int requestStart = methodEnd + 1;
+        int requestEnd = skipNonWhitespace(line, requestStart);
+        if (requestEnd >= length) {
+            return false;
+        }
+        // http/version"
+        int httpEnd = skipWordChars(line, requestEnd + 1);
+        if (httpEnd == requestEnd + 1 || !matchChar(line, httpEnd, '/')) {
+            return false;
+        }
+        int versionEnd = line.indexOf('"', httpEnd + 1);
+        if (versionEnd <= httpEnd + 1) {
+            return false;
+        }
+        // " returncode bytecount
+        int returnCodeStart = versionEnd + 2;
+        if (returnCodeStart >= length || !isWhitespace(line.charAt(versionEnd + 1))
+                || !matchDigits(line, returnCodeStart, 3)
+                || returnCodeStart + 3 >= length || !isWhitespace(line.charAt(returnCodeStart + 3))) {
+            return false;
+        }
+        int byteCountStart = returnCodeStart + 4;
+        if (byteCountStart >= length || skipDigits(line, byteCountStart) != length) {
+            return false;
+        }
+
+        this.hostEnd = hostEnd;
+        this.callerEnd = callerEnd;
+        this.dateEnd = dateEnd;
+        this.methodEnd = methodEnd;
+        this.requestEnd = requestEnd;
+        this.returnCodeStart = returnCodeStart;
+        int pending = 0;
+        for (Field field : Field.values()) {
+            if (eagerFields.contains(field)) {
+                decodeField(field);
+            }
+            else {
+                pending |= field.mask;
+            }
+        }
+        // the queue that hands the record over publishes it safely, so an ordered store is enough here
+        PENDING_FIELDS.lazySet(this, pending);
+        return true;
+    }
+
+    /**
+     * Decodes the field from its offsets in the typical line
+     */
+    private void decodeField(Field field) {
+        String line = logLine;
+        switch (field) {
+            case HOST:
+                host = Dictionary.HOSTS.intern(line, 0, hostEnd);
+                break;
+            case CALLER:
+                caller = Dictionary.CALLERS.intern(line, hostEnd + 3, callerEnd);
+                break;
+            case METHOD:
+                method = Dictionary.METHODS.intern(line, dateEnd + 3, methodEnd);
+                break;
+            case SECTION:
+                int sectionEnd = sectionEnd();
+                if (sectionEnd > methodEnd + 1) {
+                    setSection(line, methodEnd + 1, sectionEnd);
+                }
+                break;
+            case REQUEST:
+                sectionEnd = sectionEnd();
+                if (sectionEnd < requestEnd) {
+                    request = line.substring(sectionEnd, requestEnd);
+                }
+                break;
+            case RETURN_CODE:
+                returnCode = (int) parseDigits(line, returnCodeStart, returnCodeStart + 3);
+                break;
+            case BYTE_COUNT:
+                byteCount = parseDigits(line, returnCodeStart + 4, line.length());
+                break;
+            case RECORD_TIME:
+                parseRecordTime(line, callerEnd + 2, dateEnd);
+                break;
+        }
+    }
+
+    /**
+     * Looks the section up in the section Dictionary. Unless the dictionary is full, the section String is shared with
+     * every other record for the section
+     */
+    private void setSection(String line, int start, int end) {
+        sectionId = Dictionary.SECTIONS.idOf(line, start, end);
+        section = sectionId == Dictionary.OTHER ? line.substring(start, end) : Dictionary.SECTIONS.valueOf(sectionId);
+    }
+
+    /**
+     * The section is the first path segment of the request, if there is one, and the request is whatever follows it
+     * @return the offset of the end of the section, which is the start of the request if there is no section
+     */
+    private int sectionEnd() {
+        int requestStart = methodEnd + 1;
+        if (requestStart + 1 < requestEnd && logLine.charAt(requestStart) == '/' && logLine.charAt(requestStart + 1) != '/') {
+            int sectionEnd = logLine.indexOf('/', requestStart + 1);
+            if (sectionEnd < 0 || sectionEnd > requestEnd) {
+                sectionEnd = requestEnd;
+            }
+            return sectionEnd;
+        }
+        return requestStart;
+    }
+
+    /**
+     * Decodes the field now if it was left pending by the scan. The bit is cleared after the field is written, so that
+     * any thread that sees it cleared also sees the field. If the decode throws, the bit stays set, and the next call
+     * throws too
+     */
+    private void decodePending(Field field) {
+        if ((pendingFields & field.mask) != 0) {
+            decodeField(field);
+            int pending;
+            do {
+                pending = pendingFields;
+            } while (!PENDING_FIELDS.compareAndSet(this, pending, pending & ~field.mask));
+        }
+    }
+
+    /**
+     * Sets the record time from the dd/MMM/yyyy:HH:mm:ss +SSSS date time in the line. The epoch seconds of the
+     * dd/MMM/yyyy:HH:mm:ss part are looked up in the TIMESTAMP_CACHE, and only decoded if this is a new second
+     */
+    private void parseRecordTime(String line, int start, int end) {
+        if (end - start == 26 && line.charAt(start + 20) == ' ') {
+            long epochSecond = TIMESTAMP_CACHE.get(line, start);
+            if (epochSecond == TimestampCache.MISSING) {
+                epochSecond = decodeDateTime(line, start, end).toEpochSecond(ZoneOffset.UTC);
+                TIMESTAMP_CACHE.put(line, start, epochSecond);
+            }
+            hasRecordTime = true;
+            recordEpochSecond = epochSecond;
+            // +SSSS is parsed as a fraction of a second
+            recordNanos = (int) parseDigits(line, start + 22, start + 26) * 100_000;
+        }
+        else {
+            setRecordTime(LocalDateTime.from(FORMATTER.parse(line.substring(start, end))));
+        }
+    }
+
+    /**
+     * Decodes the dd/MMM/yyyy:HH:mm:ss +SSSS date time directly from the line. Anything out of the ordinary
+     * (out of range values, unknown month...) is left to the FORMATTER, so that it is treated exactly as before
+     */
+    private static LocalDateTime decodeDateTime(String line, int start, int end) {
+        int month = parseMonth(line, start + 3);
+        int day = (int) parseDigits(line, start, start + 2);
+        int year = (int) parseDigits(line, start + 7, start + 11);
+        int hour = (int) parseDigits(line, start + 12, start + 14);
+        int minute = (int) parseDigits(line, start + 15, start + 17);
+        int second = (int) parseDigits(line, start + 18, start + 20);
+        int fraction = (int) parseDigits(line, start + 22, start + 26);
+        if (month > 0 && year > 0 && day >= 1 && hour < 24 && minute < 60 && second < 60
+                && day <= Month.of(month).length(Year.isLeap(year))) {
+            return LocalDateTime.of(year, month, day, hour, minute, second, fraction * 100_000);
+        }
+        return LocalDateTime.from(FORMATTER.parse(line.substring(start, end)));
+    }
+
+    private void setRecordTime(LocalDateTime dateTime) {
+        hasRecordTime = true;
+        recordTime = dateTime;
+        recordEpochSecond = dateTime.toEpochSecond(ZoneOffset.UTC);
+        recordNanos = dateTime.getNano();
+    }
+
+    /**
+     * @return the month number (1 - 12) of the 3 letter abbreviation at the offset, or 0 if it is not recognized
+     */
+    private static int parseMonth(String line, int offset) {
+        for (int i = 0; i < MONTHS.length; i++) {
+            if (line.regionMatches(offset, MONTHS[i], 0, 3) && MONTHS[i].length() == 3) {
+                return i + 1;
+            }
+        }
+        return 0;
+    }
+
+    private static long parseDigits(String line, int start, int end) {
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            value = value * 10 + (line.charAt(i) - '0');
+        }
+        return value;
+    }
+
+    private static boolean matchChar(String line, int index, char ch) {
+        return index < line.length() && line.charAt(index) == ch;
+    }
+
+    private static boolean matchDigits(String line, int index, int count) {
+        return index + count <= line.length() && skipDigits(line, index) >= index + count;
+    }
+
+    private static int skipDigits(String line, int index) {
+        while (index < line.length() && isDigit(line.charAt(index))) {
+            index++;
+        }
+        return index;
+    }
+
+    private static int skipWordChars(String line, int index) {
+        while (index < line.length() && isWordChar(line.charAt(index))) {
+            index++;
+        }
+        return index;
+    }
+
+    private static int skipNonWhitespace(String line, int index) {
+        while (index < line.length() && !isWhitespace(line.charAt(index))) {
+            index++;
+        }
+        return index;
+    }
+
+    private static boolean isDigit(char ch) {
+        return ch >= '0' && ch <= '9';
+    }
+
+    /**
+     * Same as the regex \w
+     */
+    private static boolean isWordChar(char ch) {
+        return ch >= 'a' && ch <= 'z' || ch >= 'A' && ch <= 'Z' || ch >= '0' && ch <= '9' || ch == '_';
+    }
+
+    /**
+     * Same as the regex \s
+     */
+    private static boolean isWhitespace(char ch) {
+        return ch == ' ' || ch == '\t' || ch == '\n' || ch == '\013' || ch == '\f' || ch == '\r';
+    }
+
     private void addErrorMessage(String message) {
         if(errors == null) {
             errors = new LinkedList<>();
@@ -167,42 +503,98 @@ public class Record {
         return errors != null;
     }
 
+    /**
+     * @return true if the log line had a readable date/time
+     */
+    public boolean hasRecordTime() {
+        decodePending(Field.RECORD_TIME);
+        return hasRecordTime;
+    }
+
+    /**
+     * Returns the time in the log line as UTC epoch seconds, without creating a LocalDateTime.
+     * Only meaningful if hasRecordTime() is true
+     */
+    public long getRecordEpochSecond() {
+        decodePending(Field.RECORD_TIME);
+        return recordEpochSecond;
+    }
+
     public LocalDateTime getRecordTime() {
+        decodePending(Field.RECORD_TIME);
+        if (recordTime == null && hasRecordTime) {
+            recordTime = LocalDateTime.ofEpochSecond(recordEpochSecond, recordNanos, ZoneOffset.UTC);
+        }
         return recordTime;
     }
 
+    /**
+     * Returns the local time at which this record was read, as UTC epoch seconds (the same as
+     * getActualTime().toEpochSecond(ZoneOffset.UTC))
+     */
+    public long getActualEpochSecond() {
+        int offsetSeconds = ZoneId.systemDefault().getRules().getOffset(Instant.ofEpochMilli(actualTimeMillis)).getTotalSeconds();
+        return Math.floorDiv(actualTimeMillis, 1000) + offsetSeconds;
+    }
+
     public LocalDateTime getActualTime() {
-        return actualTime;
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(actualTimeMillis), ZoneId.systemDefault());
     }
 
     public String getHost() {
+        decodePending(Field.HOST);
         return host;
     }
 
     public String getCaller() {
+        decodePending(Field.CALLER);
         return caller;
     }
 
     public String getMethod() {
+        decodePending(Field.METHOD);
         return method;
     }
 
     public String getSection() {
+        decodePending(Field.SECTION);
         return section;
     }
 
+    /**
+     * Returns the id of the section in Dictionary.SECTIONS, or Dictionary.NO_ID if the line had no section
+     */
+    public int getSectionId() {
+        decodePending(Field.SECTION);
+        return sectionId;
+    }
+
     public String getRequest() {
+        decodePending(Field.REQUEST);
         return request;
     }
 
     public long getByteCount() {
+        decodePending(Field.BYTE_COUNT);
         return byteCount;
     }
 
     public int getReturnCode() {
+        decodePending(Field.RETURN_CODE);
         return returnCode;
     }
 
+    /**
+     * Returns the number of log lines this record represents; 1, unless it was admitted by a sampler
+     */
+    public int getWeight() {
+        return weight;
+    }
+
+    public void setWeight(int weight) {
+        this.weight = weight;
+    }
+
     public String getHttpVersion() {
         return httpVersion;
     }
@@ -222,15 +614,15 @@ public class Record {
         return "Record{" +
                 "logLine='" + logLine + '\'' +
                 ", errors=" + errors +
-                ", actualTime=" + actualTime +
-                ", recordTime=" + recordTime +
-                ", host='" + host + '\'' +
-                ", caller='" + caller + '\'' +
-                ", method='" + method + '\'' +
-                ", section='" + section + '\'' +
-                ", request='" + request + '\'' +
-                ", returnCode=" + returnCode +
-                ", byteCount=" + byteCount +
+                ", actualTime=" + getActualTime() +
+                ", recordTime=" + getRecordTime() +
+                ", host='" + getHost() + '\'' +
+                ", caller='" + getCaller() + '\'' +
+                ", method='" + getMethod() + '\'' +
+                ", section='" + getSection() + '\'' +
+                ", request='" + getRequest() + '\'' +
+                ", returnCode=" + getReturnCode() +
+                ", byteCount=" + getByteCount() +
                 ", httpVersion='" + httpVersion + '\'' +
                 '}';
     }
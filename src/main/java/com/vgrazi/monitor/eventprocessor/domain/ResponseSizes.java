@@ -0,0 +1,53 @@
+package com.vgrazi.monitor.eventprocessor.domain;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Response size (byte count) percentiles and bandwidth over the window. Percentiles are accurate to within about 6%
+ */
+public class ResponseSizes {
+    @JsonProperty("p50")
+    private long p50;
+    @JsonProperty("p95")
+    private long p95;
+    @JsonProperty("p99")
+    private long p99;
+    @JsonProperty("bytes-per-sec")
+    private long bytesPerSecond;
+
+    public ResponseSizes() {
+    }
+
+    public ResponseSizes(long p50, long p95, long p99, long bytesPerSecond) {
+        this.p50 = p50;
+        this.p95 = p95;
+        this.p99 = p99;
+        this.bytesPerSecond = bytesPerSecond;
+    }
+
+    public long getP50() {
+        return p50;
+    }
+
+    public long getP95() {
+        return p95;
+    }
+
+    public long getP99() {
+        return p99;
+    }
+
+    public long getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    @Override
+    public String toString() {
+        return "ResponseSizes{" +
+                "p50=" + p50 +
+                ", p95=" + p95 +
+                ", p99=" + p99 +
+                ", bytesPerSecond=" + bytesPerSecond +
+                '}';
+    }
+}
@@ -1,9 +1,12 @@
 package com.vgrazi.monitor.eventprocessor.domain;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import jdk.nashorn.internal.ir.annotations.Ignore;
 
+import java.util.Arrays;
 import java.util.Deque;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 
@@ -12,12 +15,32 @@ import java.util.Map;
  * It contains all of the information the client needs to render
  * It is created from scratch each time. If there is any state that is to be preserved between generations of this class,
  * that state must be preserved in the State object
+ * <p>
+ * Scorecards are numbered in sequence. Every so often a scorecard is a keyframe, carrying the whole hit count series and
+ * the latest history messages. The scorecards in between are deltas: their series only starts at the first second that changed
+ * (seriesOffset seconds after startTime), and their history only holds the messages added since the previous
+ * scorecard. The hits report, heavy hitters and response sizes are only in a delta if the report was regenerated,
+ * and the distinct counts only if they changed; otherwise they are null. The alert and ingest fields are always
+ * complete. A client completes each delta from the scorecard before it, see completeFrom
  */
 public class Scorecard {
+    @JsonProperty("sequence")
+    private long sequence;
+    @JsonProperty("keyframe")
+    private boolean keyframe = true;
+    // the hit count series starts this many seconds after startTime. Always 0 in a keyframe
+    @JsonProperty("series-offset")
+    private int seriesOffset;
+    // the legacy "secs:hits" form of the hit count series, only written if scorecard-legacy-hit-counts=true
     @JsonProperty("hitCounts")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
     private List<String> hitCounts;
+    // the epoch second of the first entry of the hit count series
     @JsonProperty("startTime")
     private long startTime;
+    // the hits of each second from startTime on, 0 for the seconds with no hits
+    @JsonProperty("hit-count-series")
+    private int[] hitCountSeries;
     @JsonProperty("hitsReport")
     private Map<String, Long> hitsReport;
     @JsonProperty("latest-time-of-threshold-exceeded-alert-secs")
@@ -30,6 +53,22 @@ public class Scorecard {
     private Deque<String> history;
     @JsonProperty("alert")
     private String alert;
+    @JsonProperty("shed-records")
+    private long shedRecords;
+    @JsonProperty("sampling-interval")
+    private int samplingInterval = 1;
+    @JsonProperty("top-sections")
+    private HeavyHitters topSections;
+    @JsonProperty("top-hosts")
+    private HeavyHitters topHosts;
+    @JsonProperty("top-callers")
+    private HeavyHitters topCallers;
+    @JsonProperty("response-sizes")
+    private Map<String, ResponseSizes> responseSizes;
+    @JsonProperty("all-response-sizes")
+    private ResponseSizes allResponseSizes;
+    @JsonProperty("distinct-counts")
+    private Map<String, DistinctCount> distinctCounts;
 
     public String getAlert() {
         return alert;
@@ -48,6 +87,44 @@ public class Scorecard {
         return hitCounts;
     }
 
+    public long getSequence() {
+        return sequence;
+    }
+
+    public void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+
+    public boolean isKeyframe() {
+        return keyframe;
+    }
+
+    public void setKeyframe(boolean keyframe) {
+        this.keyframe = keyframe;
+    }
+
+    /**
+     * Returns the second of the first hit count in the series, relative to getStartTime()
+     */
+    public int getSeriesOffset() {
+        return seriesOffset;
+    }
+
+    public void setSeriesOffset(int seriesOffset) {
+        this.seriesOffset = seriesOffset;
+    }
+
+    /**
+     * Returns the hits of each second, starting from getStartTime() + getSeriesOffset()
+     */
+    public int[] getHitCountSeries() {
+        return hitCountSeries;
+    }
+
+    public void setHitCountSeries(int[] hitCountSeries) {
+        this.hitCountSeries = hitCountSeries;
+    }
+
     public long getStartTime() {
         return startTime;
     }
@@ -60,10 +137,52 @@ public class Scorecard {
         this.hitsReport = hitsReport;
     }
 
+    /**
+     * Completes this delta from the complete scorecard before it: the hit count series is prefixed with the unchanged
+     * seconds, the new history messages are followed by the previous ones, up to maxHistory, and the fields the delta
+     * left out are taken from the previous scorecard. The previous scorecard may still be in use, so it is not
+     * modified
+     */
+    public void completeFrom(Scorecard previous, int maxHistory) {
+        int[] changed = hitCountSeries;
+        int[] previousSeries = previous.hitCountSeries;
+        int[] series = new int[seriesOffset + changed.length];
+        for (int i = 0; i < seriesOffset; i++) {
+            long index = startTime + i - previous.startTime;
+            if (index >= 0 && index < previousSeries.length) {
+                series[i] = previousSeries[(int) index];
+            }
+        }
+        System.arraycopy(changed, 0, series, seriesOffset, changed.length);
+        hitCountSeries = series;
+        seriesOffset = 0;
+        Deque<String> completeHistory = new LinkedList<>();
+        for (Deque<String> messages : Arrays.asList(history, previous.history)) {
+            for (String message : messages) {
+                if (completeHistory.size() >= maxHistory) {
+                    break;
+                }
+                completeHistory.add(message);
+            }
+        }
+        history = completeHistory;
+        if (hitsReport == null) {
+            hitsReport = previous.hitsReport;
+            topSections = previous.topSections;
+            topHosts = previous.topHosts;
+            topCallers = previous.topCallers;
+            responseSizes = previous.responseSizes;
+            allResponseSizes = previous.allResponseSizes;
+        }
+        if (distinctCounts == null) {
+            distinctCounts = previous.distinctCounts;
+        }
+    }
+
     @Override
     public String toString() {
         return "Scorecard{" +
-                "hitCounts=" + hitCounts +
+                "hitCountSeries=" + Arrays.toString(hitCountSeries) +
                 ", startTime=" + startTime +
                 '}';
     }
@@ -110,4 +229,85 @@ public class Scorecard {
     public void setAlert(String message) {
         this.alert = message;
     }
+
+    /**
+     * Returns the number of records shed by the record queue's overflow policy since startup
+     */
+    public long getShedRecords() {
+        return shedRecords;
+    }
+
+    public void setShedRecords(long shedRecords) {
+        this.shedRecords = shedRecords;
+    }
+
+    /**
+     * Returns N, where records are currently being sampled 1 in N because of overload. Greater than 1 means the hit
+     * counts are estimates
+     */
+    public int getSamplingInterval() {
+        return samplingInterval;
+    }
+
+    public void setSamplingInterval(int samplingInterval) {
+        this.samplingInterval = samplingInterval;
+    }
+
+    /**
+     * Returns the approximate top sections over the last report-stats-secs, with their error bound, or null if heavy
+     * hitters are not tracked. The hitsReport then holds the same counts
+     */
+    public HeavyHitters getTopSections() {
+        return topSections;
+    }
+
+    public void setTopSections(HeavyHitters topSections) {
+        this.topSections = topSections;
+    }
+
+    public HeavyHitters getTopHosts() {
+        return topHosts;
+    }
+
+    public void setTopHosts(HeavyHitters topHosts) {
+        this.topHosts = topHosts;
+    }
+
+    public HeavyHitters getTopCallers() {
+        return topCallers;
+    }
+
+    public void setTopCallers(HeavyHitters topCallers) {
+        this.topCallers = topCallers;
+    }
+
+    /**
+     * Returns the response sizes over the window of each section in the hits report
+     */
+    public Map<String, ResponseSizes> getResponseSizes() {
+        return responseSizes;
+    }
+
+    public void setResponseSizes(Map<String, ResponseSizes> responseSizes) {
+        this.responseSizes = responseSizes;
+    }
+
+    public ResponseSizes getAllResponseSizes() {
+        return allResponseSizes;
+    }
+
+    public void setAllResponseSizes(ResponseSizes allResponseSizes) {
+        this.allResponseSizes = allResponseSizes;
+    }
+
+    /**
+     * Returns the estimated distinct values of each distinct count dimension (host, caller...), keyed by dimension name
+     */
+    public Map<String, DistinctCount> getDistinctCounts() {
+        return distinctCounts;
+    }
+
+    public void setDistinctCounts(Map<String, DistinctCount> distinctCounts) {
+        this.distinctCounts = distinctCounts;
+    }
 }
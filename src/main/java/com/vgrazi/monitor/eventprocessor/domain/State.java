@@ -12,11 +12,20 @@ public class State {
     private long lastStatsReportTime;
     private Map<String, Long> hitsReport;
     private Deque<String> history = new LinkedList<>();
+    // the number of history messages ever added, including those dropped since
+    private long historyCount;
+    private int maxHistory = Integer.MAX_VALUE;
     private boolean inHighActivity;
     private long firstTimeOfThresholdExceededSecs;
     private long lastTimeOfThresholdExceededAlertSecs;
     private String alert;
     private int averageHighActivity;
+    private HeavyHitters topSections;
+    private HeavyHitters topHosts;
+    private HeavyHitters topCallers;
+    private Map<String, ResponseSizes> responseSizes;
+    private ResponseSizes allResponseSizes;
+    private Map<String, DistinctCount> distinctCounts;
 
     public void setLastStatsReportTime(long lastStatsReportTime) {
         this.lastStatsReportTime = lastStatsReportTime;
@@ -62,8 +71,29 @@ public class State {
         this.lastTimeOfThresholdExceededAlertSecs = lastTimeOfThresholdExceededAlertSecs;
     }
 
+    /**
+     * Adds the message to the front of the history. Beyond maxHistory messages, the oldest is dropped
+     */
     public void addHistoryMessage(String message) {
         history.addFirst(message);
+        historyCount++;
+        if (history.size() > maxHistory) {
+            history.removeLast();
+        }
+    }
+
+    /**
+     * Returns the number of history messages ever added, including those that have since been dropped
+     */
+    public long getHistoryCount() {
+        return historyCount;
+    }
+
+    /**
+     * Sets the number of the latest history messages to keep
+     */
+    public void setMaxHistory(int maxHistory) {
+        this.maxHistory = maxHistory;
     }
 
     public Deque<String> getHistory() {
@@ -85,4 +115,52 @@ public class State {
     public int getAverageHighActivity() {
         return averageHighActivity;
     }
+
+    public HeavyHitters getTopSections() {
+        return topSections;
+    }
+
+    public void setTopSections(HeavyHitters topSections) {
+        this.topSections = topSections;
+    }
+
+    public HeavyHitters getTopHosts() {
+        return topHosts;
+    }
+
+    public void setTopHosts(HeavyHitters topHosts) {
+        this.topHosts = topHosts;
+    }
+
+    public HeavyHitters getTopCallers() {
+        return topCallers;
+    }
+
+    public void setTopCallers(HeavyHitters topCallers) {
+        this.topCallers = topCallers;
+    }
+
+    public Map<String, ResponseSizes> getResponseSizes() {
+        return responseSizes;
+    }
+
+    public void setResponseSizes(Map<String, ResponseSizes> responseSizes) {
+        this.responseSizes = responseSizes;
+    }
+
+    public ResponseSizes getAllResponseSizes() {
+        return allResponseSizes;
+    }
+
+    public void setAllResponseSizes(ResponseSizes allResponseSizes) {
+        this.allResponseSizes = allResponseSizes;
+    }
+
+    public Map<String, DistinctCount> getDistinctCounts() {
+        return distinctCounts;
+    }
+
+    public void setDistinctCounts(Map<String, DistinctCount> distinctCounts) {
+        this.distinctCounts = distinctCounts;
+    }
 }
@@ -0,0 +1,54 @@
+package com.vgrazi.monitor.eventprocessor.domain;
+
+/**
+ * Remembers the epoch seconds of recently decoded "dd/MMM/yyyy:HH:mm:ss" timestamps.
+ * Practically every line logged within the same second carries the same timestamp text, so the (relatively expensive)
+ * date decoding only needs to happen once per second instead of once per line.
+ * The cache is a small direct mapped table of immutable entries, so it is safe to share between threads without locking;
+ * the worst a race can do is cost an extra decode.
+ */
+final class TimestampCache {
+    /**
+     * Returned by get() if the timestamp is not in the cache
+     */
+    static final long MISSING = Long.MIN_VALUE;
+    /**
+     * The length of the "dd/MMM/yyyy:HH:mm:ss" key
+     */
+    static final int KEY_LENGTH = 20;
+    private static final int SIZE = 64;
+    private final Entry[] entries = new Entry[SIZE];
+
+    /**
+     * @return the epoch seconds cached for the timestamp starting at the offset in the line, or MISSING
+     */
+    long get(String line, int offset) {
+        Entry entry = entries[index(line, offset)];
+        if (entry != null && line.regionMatches(offset, entry.key, 0, KEY_LENGTH)) {
+            return entry.epochSecond;
+        }
+        return MISSING;
+    }
+
+    void put(String line, int offset, long epochSecond) {
+        entries[index(line, offset)] = new Entry(line.substring(offset, offset + KEY_LENGTH), epochSecond);
+    }
+
+    private static int index(String line, int offset) {
+        int hash = 0;
+        for (int i = offset; i < offset + KEY_LENGTH; i++) {
+            hash = 31 * hash + line.charAt(i);
+        }
+        return (hash ^ (hash >>> 16)) & (SIZE - 1);
+    }
+
+    private static final class Entry {
+        private final String key;
+        private final long epochSecond;
+
+        private Entry(String key, long epochSecond) {
+            this.key = key;
+            this.epochSecond = epochSecond;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.vgrazi.monitor.eventprocessor.processor;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Tails a FileChannel in large blocks, using a single reusable direct ByteBuffer.
+ * Line boundaries are located inside the block; whatever trails the last line break is carried over and completed
+ * by the next read, so we still only ever emit entire lines.
+ * Bytes are decoded as ISO-8859-1, ie one char per byte, the same as the original byte-at-a-time reader.
+ */
+public class ChannelLineTailer implements LineTailer {
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    // the current (possibly partial) line. Grows as needed, and is reused from line to line
+    private byte[] line = new byte[256];
+    private int lineLength;
+
+    public ChannelLineTailer(FileChannel channel, int bufferSize) {
+        this.channel = channel;
+        this.buffer = ByteBuffer.allocateDirect(bufferSize);
+    }
+
+    @Override
+    public int poll(LineHandler handler) throws IOException, InterruptedException {
+        buffer.clear();
+        int read = channel.read(buffer);
+        if (read <= 0) {
+            return 0;
+        }
+        buffer.flip();
+        int limit = buffer.limit();
+        int start = 0;
+        for (int i = 0; i < limit; i++) {
+            byte b = buffer.get(i);
+            // unix or windows, no matter
+            if (b == '\n' || b == '\r') {
+                append(start, i);
+                emitLine(handler);
+                start = i + 1;
+            }
+            else if (b == 0) {
+                // skip NUL padding, as the byte-at-a-time reader did
+                append(start, i);
+                start = i + 1;
+            }
+        }
+        // carry the partial trailing line over to the next read
+        append(start, limit);
+        return read;
+    }
+
+    private void append(int from, int to) {
+        int length = to - from;
+        if (length <= 0) {
+            return;
+        }
+        if (lineLength + length > line.length) {
+            line = Arrays.copyOf(line, Math.max(line.length * 2, lineLength + length));
+        }
+        buffer.position(from);
+        buffer.get(line, lineLength, length);
+        lineLength += length;
+    }
+
+    private void emitLine(LineHandler handler) throws InterruptedException {
+        if (lineLength == 0) {
+            return;
+        }
+        String text = new String(line, 0, lineLength, StandardCharsets.ISO_8859_1);
+        lineLength = 0;
+        if (!text.trim().isEmpty()) {
+            handler.onLine(text);
+        }
+    }
+}
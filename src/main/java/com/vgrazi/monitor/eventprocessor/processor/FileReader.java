@@ -1,24 +1,48 @@
 package com.vgrazi.monitor.eventprocessor.processor;
 
 import com.vgrazi.monitor.eventprocessor.domain.Record;
+import com.vgrazi.monitor.eventprocessor.util.AdaptiveSampler;
+import com.vgrazi.monitor.eventprocessor.util.Dictionary;
+import com.vgrazi.monitor.eventprocessor.util.IngestMetrics;
+import com.vgrazi.monitor.eventprocessor.util.RecordProjection;
+import com.vgrazi.monitor.eventprocessor.util.RingBuffer;
+import com.vgrazi.monitor.eventprocessor.util.SpinThenParkWaitStrategy;
+import com.vgrazi.monitor.eventprocessor.util.WaitStrategies;
+import com.vgrazi.monitor.eventprocessor.util.WaitStrategy;
+import com.vgrazi.monitor.eventprocessor.util.WatchServiceWaitStrategy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.io.IOException;
 import java.io.RandomAccessFile;
-import java.nio.CharBuffer;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 @Component
 /**
- * Tails the event file, converting new log events to Records, and throwing them on the RecordProcessor queue
+ * Tails the event files, converting new log events to Records, and throwing them on the RecordProcessor queue.
+ * Each file gets its own tailer thread. With more than one file, a RecordMerger merges their records by time
  */
 public class FileReader {
     private final Logger logger = LoggerFactory.getLogger(FileReader.class);
-    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private ExecutorService executor;
+    private ExecutorService parserPool;
     private volatile boolean running = true;
 
     @Value("${tail-from-end}")
@@ -30,62 +54,163 @@ public class FileReader {
     @Value("${poll-frequency-sec}")
     private long pollFrequencySeconds;
 
+    @Value("${tail-buffer-size}")
+    private int tailBufferSize;
+
+    @Value("${tail-mode}")
+    private String tailMode;
+
+    @Value("${tail-map-segment-bytes}")
+    private long mapSegmentBytes;
+
+    @Value("${parse-mode}")
+    private String parseMode;
+
+    @Autowired
+    private RecordProjection recordProjection;
+
+    @Value("${sampling-enabled}")
+    private boolean samplingEnabled;
+
+    @Value("${sampling-lag-threshold}")
+    private int samplingLagThreshold;
+
+    @Value("${sampling-max-interval}")
+    private int samplingMaxInterval;
+
+    @Autowired
+    private IngestMetrics ingestMetrics;
+
+    @Value("${tail-wait-strategy}")
+    private String waitStrategyName;
+
+    @Value("${tail-max-park-ms}")
+    private long maxParkMillis;
+
+    @Value("${use-record-times}")
+    private boolean useRecordTimes;
+
+    @Value("${merge-queue-capacity}")
+    private int mergeQueueCapacity;
+
+    @Value("${merge-max-wait-ms}")
+    private long mergeMaxWaitMillis;
+
+    @Value("${parser-threads}")
+    private int parserThreads;
+
+    @Value("${parse-batch-size}")
+    private int parseBatchSize;
+
+    @Value("${parse-max-in-flight}")
+    private int parseMaxInFlight;
+
+    @Value("${dictionary-max-size}")
+    private int dictionaryMaxSize;
+
     /**
-     * Tails the file, depositing parsed records on the queue for asynchronous processing
+     * Tails the files, depositing parsed records on the queue for asynchronous processing
      * This will only process entire, non-empty lines; if the log stops writing, this will wait forever until the lines
      * are completed
      *
      * @param recordQueue this is our processing queue.
      */
     public void tailFile(BlockingQueue<Record> recordQueue) {
-        logger.info("Reading {}", inputFileName);
+        List<Path> inputFiles = resolveInputFiles();
+        if (inputFiles.isEmpty()) {
+            throw new IllegalArgumentException("No files match input-filename: " + inputFileName);
+        }
+        Dictionary.setMaxSizes(dictionaryMaxSize);
+        // a tailer thread per file, plus a resequencer per file when the parse is done on the parser pool
+        int threadsPerFile = 1;
+        if (parserThreads > 0) {
+            logger.info("Parsing on {} parser threads, in batches of {} lines", parserThreads, parseBatchSize);
+            parserPool = Executors.newFixedThreadPool(parserThreads);
+            threadsPerFile = 2;
+        }
+        if (inputFiles.size() == 1) {
+            executor = Executors.newFixedThreadPool(threadsPerFile);
+            submitTailer(inputFiles.get(0), recordQueue, recordQueue);
+            return;
+        }
+        // plus one for the merge
+        executor = Executors.newFixedThreadPool(inputFiles.size() * threadsPerFile + 1);
+        List<BlockingQueue<Record>> fileQueues = new ArrayList<>();
+        for (Path inputFile : inputFiles) {
+            // the tailer only waits on its queue when the merger falls behind
+            BlockingQueue<Record> fileQueue = new RingBuffer<>(mergeQueueCapacity, new SpinThenParkWaitStrategy(maxParkMillis));
+            fileQueues.add(fileQueue);
+            submitTailer(inputFile, fileQueue, recordQueue);
+        }
+        RecordMerger merger = new RecordMerger(fileQueues, recordQueue, useRecordTimes, mergeMaxWaitMillis);
+        executor.submit(() -> {
+            try (WaitStrategy waitStrategy = new SpinThenParkWaitStrategy(maxParkMillis)) {
+                int idleCount = 0;
+                while (running) {
+                    if (merger.mergeNext()) {
+                        idleCount = 0;
+                    }
+                    else {
+                        waitStrategy.idle(idleCount++);
+                    }
+                }
+            }
+            logger.debug("Record merger exiting");
+            return null;
+        });
+    }
+
+    /**
+     * Tails one file, depositing its parsed records on the given queue
+     *
+     * @param queue       the record queue, or with multiple files, this file's queue to the merger
+     * @param recordQueue the record queue, whose lag drives the sampler
+     */
+    private void submitTailer(Path inputFile, BlockingQueue<Record> queue, BlockingQueue<Record> recordQueue) {
+        logger.info("Reading {}", inputFile);
 
         executor.submit(() -> {
-            try (RandomAccessFile file = new RandomAccessFile(inputFileName, "r")) {
-                {
-                    if (tailFromEnd) {
-                        // start a few bytes earlier
-                        long eofPos = file.length() - 100;
-                        if(eofPos > 0) {
-                            // Skip the old news, and just start from the end of the file
-                            file.seek(eofPos);
-                        }
+            try (RandomAccessFile file = new RandomAccessFile(inputFile.toFile(), "r");
+                 WaitStrategy waitStrategy = createWaitStrategy(inputFile)) {
+                FileChannel channel = file.getChannel();
+                long startPosition = 0;
+                if (tailFromEnd) {
+                    // start a few bytes earlier
+                    long eofPos = channel.size() - 100;
+                    if (eofPos > 0) {
+                        // Skip the old news, and just start from the end of the file
+                        startPosition = eofPos;
                     }
-                    boolean first = true;
-                    CharBuffer buffer = null;
-                    while (running) {
-                        // May be overkill, but who knows when the file writer decides to flush and give us half a line thank you very much.
-                        // Let's use brute force to read one character at a time, and don't parse until the line is complete (ends in a new line)
-                        int read = file.read();
-                        if (read > 0) {
-                            char ch = (char) read;
-                            // unix or windows, no matter
-                            if (ch != '\n' && ch != '\r') {
-                                if (buffer == null) {
-                                    buffer = CharBuffer.allocate(1000);
-                                }
-                                buffer.put(ch);
-                            } else if (buffer != null) {
-                                // we have a keeper!
-                                String line = buffer.flip().toString();
-                                if (!line.trim().equals("")) {
-                                    Record record = Record.fromLine(line);
-                                    // The first record is very likely incomplete, since we are coming in at a random time
-                                    // so if this is first record, just ignore it
-                                    if (!first || !record.isError()) {
-                                        // todo: How to handle the case where the queue grows faster than we can process it.
-                                        //  Need to debounce?
-                                        recordQueue.put(record);
-
-                                    }
-                                    if (first) {
-                                        first = false;
-                                    }
-                                }
-                                buffer = null;
-                            }
+                }
+                // Who knows when the file writer decides to flush and give us half a line thank you very much.
+                // The tailer holds back any partial line until its new line arrives
+                LineTailer tailer = createTailer(inputFile, channel, startPosition);
+                AdaptiveSampler sampler = null;
+                if (samplingEnabled) {
+                    sampler = new AdaptiveSampler(recordQueue, samplingLagThreshold, samplingMaxInterval, ingestMetrics);
+                }
+                Set<Record.Field> eagerFields = getEagerFields();
+                RecordEnqueuer enqueuer = new RecordEnqueuer(queue, sampler);
+                LineHandler handler;
+                if (parserPool == null) {
+                    handler = line -> enqueuer.onRecord(Record.fromLine(line, eagerFields));
+                }
+                else {
+                    ParallelLineParser parser = new ParallelLineParser(parserPool, eagerFields, parseBatchSize, parseMaxInFlight);
+                    submitResequencer(inputFile, parser, enqueuer);
+                    handler = parser;
+                }
+                int idleCount = 0;
+                while (running) {
+                    if (tailer.poll(handler) == 0) {
+                        if (idleCount == 0) {
+                            handler.flush();
                         }
-                        Thread.yield();
+                        // at the end of the file. Let the wait strategy decide how long to wait for more
+                        waitStrategy.idle(idleCount++);
+                    }
+                    else {
+                        idleCount = 0;
                     }
                 }
             }
@@ -95,12 +220,156 @@ public class FileReader {
         });
     }
 
+    /**
+     * Takes the parsed batches back from the parser pool in the order they were read, and deposits their records
+     */
+    private void submitResequencer(Path inputFile, ParallelLineParser parser, RecordEnqueuer enqueuer) {
+        executor.submit(() -> {
+            long pollMillis = TimeUnit.SECONDS.toMillis(pollFrequencySeconds);
+            while (running) {
+                List<Record> records;
+                try {
+                    records = parser.poll(pollMillis, TimeUnit.MILLISECONDS);
+                }
+                catch (ExecutionException e) {
+                    // nobody checks this task's Future, so log the failure here. The batch is lost, but the batches
+                    // after it are still passed on
+                    logger.error("Failed to parse a batch of lines from {}", inputFile, e.getCause());
+                    continue;
+                }
+                if (records != null) {
+                    for (Record record : records) {
+                        enqueuer.onRecord(record);
+                    }
+                }
+            }
+            logger.debug("Resequencer exiting");
+            return null;
+        });
+    }
+
+    /**
+     * Expands the input-filename property, a comma separated list of files, into the files to tail.
+     * An entry may use a glob in its file name (eg logs/access-*.log), which matches the files present at start up
+     */
+    private List<Path> resolveInputFiles() {
+        List<Path> inputFiles = new ArrayList<>();
+        for (String entry : inputFileName.split(",")) {
+            entry = entry.trim();
+            if (entry.isEmpty()) {
+                continue;
+            }
+            Path path = Paths.get(entry);
+            String name = path.getFileName().toString();
+            if (name.matches(".*[*?\\[{].*")) {
+                Path dir = path.toAbsolutePath().getParent();
+                List<Path> matches = new ArrayList<>();
+                try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, name)) {
+                    for (Path match : stream) {
+                        if (Files.isRegularFile(match)) {
+                            matches.add(match);
+                        }
+                    }
+                }
+                catch (IOException e) {
+                    throw new UncheckedIOException("Can't list the files matching " + entry, e);
+                }
+                if (matches.isEmpty()) {
+                    logger.warn("No files match {}", entry);
+                }
+                matches.sort(null);
+                inputFiles.addAll(matches);
+            }
+            else if (!inputFiles.contains(path)) {
+                inputFiles.add(path);
+            }
+        }
+        return inputFiles;
+    }
+
+    /**
+     * Creates the tailer named by the tail-mode property. Memory mapping is only possible for regular files,
+     * so anything else falls back to reading blocks from the channel
+     */
+    private LineTailer createTailer(Path inputFile, FileChannel channel, long startPosition) throws IOException {
+        if ("mapped".equals(tailMode)) {
+            if (Files.isRegularFile(inputFile)) {
+                logger.info("Memory mapping {} in segments of {} bytes", inputFile, mapSegmentBytes);
+                return new MappedLineTailer(channel, startPosition, mapSegmentBytes, tailBufferSize);
+            }
+            logger.warn("{} is not a regular file and can't be memory mapped, reading it in blocks instead", inputFile);
+        }
+        else if (!"buffered".equals(tailMode)) {
+            throw new IllegalArgumentException("Unknown tail-mode: " + tailMode);
+        }
+        channel.position(startPosition);
+        return new ChannelLineTailer(channel, tailBufferSize);
+    }
+
+    /**
+     * Returns the Record fields to decode up front, according to the parse-mode property
+     */
+    private Set<Record.Field> getEagerFields() {
+        switch (parseMode) {
+            case "eager":
+                return EnumSet.allOf(Record.Field.class);
+            case "projection":
+                Set<Record.Field> eagerFields = recordProjection.getEagerFields();
+                logger.info("Decoding {} eagerly, other fields on demand", eagerFields);
+                return eagerFields;
+            default:
+                throw new IllegalArgumentException("Unknown parse-mode: " + parseMode);
+        }
+    }
+
+    /**
+     * Creates the wait strategy named by the tail-wait-strategy property, used when the tailer reaches the end of the file
+     */
+    private WaitStrategy createWaitStrategy(Path inputFile) throws IOException {
+        long pollMillis = TimeUnit.SECONDS.toMillis(pollFrequencySeconds);
+        if ("watch-service".equals(waitStrategyName)) {
+            return new WatchServiceWaitStrategy(inputFile, pollMillis);
+        }
+        return WaitStrategies.create(waitStrategyName, maxParkMillis, pollMillis);
+    }
+
+    /**
+     * Deposits the parsed Records on the record queue, unless the sampler (if any) leaves them out
+     */
+    private static class RecordEnqueuer {
+        private final BlockingQueue<Record> recordQueue;
+        private final AdaptiveSampler sampler;
+        private boolean first = true;
+
+        private RecordEnqueuer(BlockingQueue<Record> recordQueue, AdaptiveSampler sampler) {
+            this.recordQueue = recordQueue;
+            this.sampler = sampler;
+        }
+
+        private void onRecord(Record record) throws InterruptedException {
+            // we have a keeper!
+            // The first record is very likely incomplete, since we are coming in at a random time
+            // so if this is first record, just ignore it
+            if ((!first || !record.isError()) && (sampler == null || sampler.admit(record))) {
+                // if the queue grows faster than we can process it, the queue's overflow policy decides whether we
+                // wait, or shed records
+                recordQueue.put(record);
+            }
+            first = false;
+        }
+    }
+
     /**
      * gracefully stop the file reader after the current line is done
      */
     public void stop() {
         running = false;
         // shut down the executor. Will wait to finish any existing tasks
-        executor.shutdown();
+        if (executor != null) {
+            executor.shutdown();
+        }
+        if (parserPool != null) {
+            parserPool.shutdown();
+        }
     }
 }
@@ -1,18 +1,27 @@
 package com.vgrazi.monitor.eventprocessor.processor;
 
+import com.vgrazi.monitor.eventprocessor.domain.DistinctCount;
 import com.vgrazi.monitor.eventprocessor.domain.Frame;
 import com.vgrazi.monitor.eventprocessor.domain.Scorecard;
 import com.vgrazi.monitor.eventprocessor.domain.State;
+import com.vgrazi.monitor.eventprocessor.util.FrameWindow;
+import com.vgrazi.monitor.eventprocessor.util.IngestMetrics;
+import com.vgrazi.monitor.eventprocessor.util.QueueUtils;
+import com.vgrazi.monitor.eventprocessor.util.SlidingAggregator;
 import com.vgrazi.monitor.eventprocessor.util.StatsCruncher;
 import com.vgrazi.monitor.eventprocessor.util.WindowUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
 import java.util.Deque;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -36,11 +45,41 @@ public class FrameProcessor {
     /**
      * Maintain the window of interest, 10 minutes by default, consisting of all frames within that time period
      */
-    private final Deque<Frame> window = new LinkedList<>();
+    private FrameWindow window;
 
     @Autowired
     private WindowUtils windowUtils;
 
+    /**
+     * Keeps the hits report and average hit count up to date as frames enter and leave the window
+     */
+    private SlidingAggregator aggregator;
+
+    @Autowired
+    private IngestMetrics ingestMetrics;
+
+    @Value("${batch-size}")
+    private int batchSize;
+
+    @Value("${batch-max-delay-ms}")
+    private long batchMaxDelayMillis;
+
+    @Value("${scorecard-legacy-hit-counts}")
+    private boolean legacyHitCounts;
+
+    @Value("${scorecard-keyframe-interval}")
+    private int keyframeInterval;
+
+    @Value("${history-max-messages}")
+    private int historyMaxMessages;
+
+    private long scorecardSequence;
+    // the number of history messages sent in earlier scorecards
+    private long historySent;
+    // the time of the hits report sent in earlier scorecards
+    private long reportSentSecs;
+    private Map<String, DistinctCount> distinctCountsSent;
+
     private State state = new State();
     /**
      * When the RecordProcessor deposits Frame of seconds onto the queue, FrameProcessor processes them
@@ -50,31 +89,74 @@ public class FrameProcessor {
     public void processFrames(BlockingQueue<Frame> frameQueue, BlockingQueue<Scorecard> scorecardQueue) {
         executor.submit(()-> {
             logger.info("FrameProcessor running");
+            window = windowUtils.createWindow();
+            state.setMaxHistory(historyMaxMessages);
+            aggregator = statsCruncher.createSlidingAggregator(window.getDurationSeconds());
+            List<Frame> batch = new ArrayList<>(batchSize);
+            List<Scorecard> scorecards = new ArrayList<>(batchSize);
             while (running) {
-                Frame frame = frameQueue.take();
-                windowUtils.addFrameToWindow(frame, window);
-                Scorecard scorecard = createScorecard(window);
-                scorecardQueue.put(scorecard);
-                Thread.yield();
+                QueueUtils.drainBatch(frameQueue, batch, batchSize, batchMaxDelayMillis);
+                for (Frame frame : batch) {
+                    windowUtils.addFrameToWindow(frame, window, aggregator);
+                    scorecards.add(createScorecard(window, frame.getStartTime()));
+                }
+                batch.clear();
+                QueueUtils.putAll(scorecardQueue, scorecards);
+                scorecards.clear();
             }
             logger.info("FrameProcessor exiting");
             return null;
         });
     }
 
-    private Scorecard createScorecard(Deque<Frame> frames) {
+    /**
+     * @param changedSecond the second of the frame just added to the window. Every keyframe-interval scorecards is a
+     *                      keyframe; the others are deltas, which only carry the hit counts from this second on, and
+     *                      only the report and distinct counts if they have changed
+     */
+    private Scorecard createScorecard(FrameWindow frames, long changedSecond) {
         logger.debug("Processing frame {}", frames);
-        List<String> hitCounts = statsCruncher.extractHitCountList(frames);
         Scorecard scorecard = new Scorecard();
-        scorecard.setStartTime(frames.getFirst().getStartTime());
-        scorecard.setHitCounts(hitCounts);
-        statsCruncher.generateState(frames, state);
+        long sequence = scorecardSequence++;
+        boolean keyframe = sequence % keyframeInterval == 0;
+        scorecard.setSequence(sequence);
+        scorecard.setKeyframe(keyframe);
+        long startTime = frames.getFirst().getStartTime();
+        scorecard.setStartTime(startTime);
+        if (keyframe) {
+            scorecard.setHitCountSeries(statsCruncher.extractHitCountSeries(frames, startTime));
+            if (legacyHitCounts) {
+                scorecard.setHitCounts(statsCruncher.extractHitCountList(frames));
+            }
+        }
+        else {
+            // only the seconds from the changed one on are built
+            long offset = Math.min(Math.max(0, changedSecond - startTime), frames.getNewestSecond() - startTime + 1);
+            scorecard.setSeriesOffset((int) offset);
+            scorecard.setHitCountSeries(statsCruncher.extractHitCountSeries(frames, startTime + offset));
+        }
+        statsCruncher.generateState(frames, aggregator, state);
 
-        scorecard.setHitsReport(state.getHitsReport());
+        if (keyframe || state.getLastStatsReportTimeSecs() != reportSentSecs) {
+            scorecard.setHitsReport(state.getHitsReport());
+            scorecard.setTopSections(state.getTopSections());
+            scorecard.setTopHosts(state.getTopHosts());
+            scorecard.setTopCallers(state.getTopCallers());
+            scorecard.setResponseSizes(state.getResponseSizes());
+            scorecard.setAllResponseSizes(state.getAllResponseSizes());
+            reportSentSecs = state.getLastStatsReportTimeSecs();
+        }
+        if (keyframe || !state.getDistinctCounts().equals(distinctCountsSent)) {
+            scorecard.setDistinctCounts(state.getDistinctCounts());
+            distinctCountsSent = state.getDistinctCounts();
+        }
         scorecard.setLastTimeOfThresholdExceededAlertSecs(state.getLastTimeOfThresholdExceededAlertSecs());
         scorecard.setFirstTimeOfThresholdExceededSecs(state.getFirstTimeOfThresholdExceededSecs());
         scorecard.setInHighActivity(state.isInHighActivity());
-        scorecard.setHistory(state.getHistory());
+        scorecard.setHistory(keyframe ? new LinkedList<>(state.getHistory()) : getNewHistory());
+        historySent = state.getHistoryCount();
+        scorecard.setShedRecords(ingestMetrics.getShedCount());
+        scorecard.setSamplingInterval(ingestMetrics.getSamplingInterval());
         String alert = state.getAlert();
         if (alert != null) {
             scorecard.setAlert(alert);
@@ -87,6 +169,20 @@ public class FrameProcessor {
         return scorecard;
     }
 
+    /**
+     * Returns the history messages added since the previous scorecard, newest first. If more were added than the
+     * state keeps, only the ones it still has
+     */
+    private Deque<String> getNewHistory() {
+        Deque<String> newHistory = new LinkedList<>();
+        int count = (int) Math.min(state.getHistoryCount() - historySent, state.getHistory().size());
+        Iterator<String> iterator = state.getHistory().iterator();
+        for (int i = 0; i < count; i++) {
+            newHistory.add(iterator.next());
+        }
+        return newHistory;
+    }
+
     /**
      * gracefully stop the file reader after the current line is done
      */
@@ -0,0 +1,15 @@
+package com.vgrazi.monitor.eventprocessor.processor;
+
+/**
+ * Receives complete, non-blank lines from a LineTailer
+ */
+@FunctionalInterface
+public interface LineHandler {
+    void onLine(String line) throws InterruptedException;
+
+    /**
+     * Called when the tailer reaches the end of the file, in case the handler is holding lines back
+     */
+    default void flush() throws InterruptedException {
+    }
+}
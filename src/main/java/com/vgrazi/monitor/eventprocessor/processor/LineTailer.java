@@ -0,0 +1,15 @@
+package com.vgrazi.monitor.eventprocessor.processor;
+
+import java.io.IOException;
+
+/**
+ * A LineTailer reads whatever has been appended to the log since the last call, and hands each complete line to the
+ * LineHandler. Partial lines (the writer has not flushed the new line yet) are held back until they are completed.
+ */
+public interface LineTailer {
+    /**
+     * Reads the newly available bytes, passing each complete, non-blank line to the handler
+     * @return the number of bytes consumed, or 0 if we are at the end of the file
+     */
+    int poll(LineHandler handler) throws IOException, InterruptedException;
+}
@@ -0,0 +1,148 @@
+package com.vgrazi.monitor.eventprocessor.processor;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Tails the file by memory mapping it, and scanning the newly appended region in place, so the bytes are never copied
+ * through an intermediate buffer. Each line is decoded straight from the mapped region.
+ * The file is mapped in segments of up to segmentSize bytes. When the scan reaches the end of a segment and the file
+ * has grown, a new segment is mapped starting at the beginning of the pending (incomplete) line, so a line never
+ * straddles two mappings. A line longer than a segment grows the segment size until it fits.
+ * <p>
+ * Mapping only pays off for bulk catch-up. Once we are caught up, each poll would map the few bytes just appended,
+ * costing an mmap call and a mapping that is only released when the GC gets round to it. So while less than a quarter
+ * of a segment is waiting, the new bytes (from the start of the pending line) are read into a reusable direct buffer
+ * instead, and scanned the same way.
+ */
+public class MappedLineTailer implements LineTailer {
+    private final FileChannel channel;
+    private long segmentSize;
+    // the region being scanned: either a mapped segment, or the read buffer
+    private ByteBuffer segment;
+    private ByteBuffer readBuffer;
+    // file offset of the first byte of the current segment
+    private long segmentStart;
+    // file offset of the first byte of the current, incomplete line
+    private long lineStart;
+    // file offset of the next byte to scan
+    private long scanPosition;
+    private boolean lineHasNul;
+    private byte[] line = new byte[256];
+
+    /**
+     * @param readBufferSize the size of the direct buffer used to read the live tail, once we are caught up
+     */
+    public MappedLineTailer(FileChannel channel, long startPosition, long segmentSize, int readBufferSize) {
+        this.channel = channel;
+        this.segmentSize = segmentSize;
+        this.readBuffer = ByteBuffer.allocateDirect(readBufferSize);
+        this.lineStart = startPosition;
+        this.scanPosition = startPosition;
+    }
+
+    @Override
+    public int poll(LineHandler handler) throws IOException, InterruptedException {
+        if (segment == null || scanPosition >= segmentStart + segment.limit()) {
+            if (!remap()) {
+                return 0;
+            }
+        }
+        int limit = segment.limit();
+        int from = (int) (scanPosition - segmentStart);
+        for (int i = from; i < limit; i++) {
+            byte b = segment.get(i);
+            // unix or windows, no matter
+            if (b == '\n' || b == '\r') {
+                emitLine(handler, (int) (lineStart - segmentStart), i);
+                lineStart = segmentStart + i + 1;
+            }
+            else if (b == 0) {
+                lineHasNul = true;
+            }
+        }
+        scanPosition = segmentStart + limit;
+        return limit - from;
+    }
+
+    /**
+     * Maps the next segment, or reads the next block if only a little is waiting, beginning at the start of the
+     * pending line
+     * @return false if the file has not grown since the last mapping
+     */
+    private boolean remap() throws IOException {
+        long size = channel.size();
+        if (size <= scanPosition) {
+            return false;
+        }
+        if (size - scanPosition < segmentSize / 4) {
+            return readTail();
+        }
+        while (scanPosition - lineStart >= segmentSize) {
+            // the pending line already fills a whole segment. Grow it until the new bytes are in the segment too
+            segmentSize *= 2;
+        }
+        long length = Math.min(size - lineStart, segmentSize);
+        segment = channel.map(FileChannel.MapMode.READ_ONLY, lineStart, length);
+        segmentStart = lineStart;
+        return true;
+    }
+
+    /**
+     * Reads the live tail into the read buffer, beginning at the start of the pending line
+     * @return false if nothing new was read
+     */
+    private boolean readTail() throws IOException {
+        if (scanPosition - lineStart >= readBuffer.capacity()) {
+            // the pending line already fills the whole buffer. Grow it until there is room for the new bytes too
+            int capacity = readBuffer.capacity();
+            while (scanPosition - lineStart >= capacity) {
+                capacity *= 2;
+            }
+            readBuffer = ByteBuffer.allocateDirect(capacity);
+        }
+        readBuffer.clear();
+        int read = channel.read(readBuffer, lineStart);
+        if (read <= 0 || lineStart + read <= scanPosition) {
+            return false;
+        }
+        readBuffer.flip();
+        // drop our reference to the last mapping, so it can be released
+        segment = readBuffer;
+        segmentStart = lineStart;
+        return true;
+    }
+
+    private void emitLine(LineHandler handler, int from, int to) throws InterruptedException {
+        int length = to - from;
+        if (length > line.length) {
+            line = new byte[Math.max(length, line.length * 2)];
+        }
+        segment.position(from);
+        segment.get(line, 0, length);
+        if (lineHasNul) {
+            // skip NUL padding, as the byte-at-a-time reader did
+            length = removeNuls(length);
+            lineHasNul = false;
+        }
+        if (length == 0) {
+            return;
+        }
+        String text = new String(line, 0, length, StandardCharsets.ISO_8859_1);
+        if (!text.trim().isEmpty()) {
+            handler.onLine(text);
+        }
+    }
+
+    private int removeNuls(int length) {
+        int kept = 0;
+        for (int i = 0; i < length; i++) {
+            if (line[i] != 0) {
+                line[kept++] = line[i];
+            }
+        }
+        return kept;
+    }
+}
@@ -0,0 +1,81 @@
+package com.vgrazi.monitor.eventprocessor.processor;
+
+import com.vgrazi.monitor.eventprocessor.domain.Record;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Takes the parse off the tailer thread. The tailer's lines are collected into batches, and each batch is parsed on
+ * the shared pool of parser threads. The batches complete in any order, so the resequencer (the thread calling
+ * poll) takes them back in the order they were read. That way each file's records still reach the queue in file order.
+ * <p>
+ * At most maxInFlight batches may be waiting to be taken; beyond that, the tailer waits for the resequencer.
+ * Only one thread may call onLine and flush, and only one thread may call poll
+ */
+public class ParallelLineParser implements LineHandler {
+    private final ExecutorService parserPool;
+    private final Set<Record.Field> eagerFields;
+    private final int batchSize;
+    // the batches in the order they were read. The head is the next one the resequencer needs
+    private final BlockingQueue<CompletableFuture<List<Record>>> inFlight;
+    private List<String> lines;
+
+    public ParallelLineParser(ExecutorService parserPool, Set<Record.Field> eagerFields, int batchSize, int maxInFlight) {
+        this.parserPool = parserPool;
+        this.eagerFields = eagerFields;
+        this.batchSize = batchSize;
+        this.inFlight = new ArrayBlockingQueue<>(maxInFlight);
+        lines = new ArrayList<>(batchSize);
+    }
+
+    @Override
+    public void onLine(String line) throws InterruptedException {
+        lines.add(line);
+        if (lines.size() >= batchSize) {
+            flush();
+        }
+    }
+
+    /**
+     * Sends the partial batch for parsing. The tailer calls this when it reaches the end of the file, so that lines are
+     * not held back while the log is quiet
+     */
+    @Override
+    public void flush() throws InterruptedException {
+        if (lines.isEmpty()) {
+            return;
+        }
+        List<String> batch = lines;
+        lines = new ArrayList<>(batchSize);
+        inFlight.put(CompletableFuture.supplyAsync(() -> parse(batch), parserPool));
+    }
+
+    /**
+     * Returns the records of the next batch in file order, waiting for it to be read and parsed if necessary
+     *
+     * @return the records, or null if no batch was read within the timeout
+     */
+    public List<Record> poll(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException {
+        CompletableFuture<List<Record>> next = inFlight.poll(timeout, unit);
+        if (next == null) {
+            return null;
+        }
+        return next.get();
+    }
+
+    private List<Record> parse(List<String> batch) {
+        List<Record> records = new ArrayList<>(batch.size());
+        for (String line : batch) {
+            records.add(Record.fromLine(line, eagerFields));
+        }
+        return records;
+    }
+}
@@ -0,0 +1,111 @@
+package com.vgrazi.monitor.eventprocessor.processor;
+
+import com.vgrazi.monitor.eventprocessor.domain.Record;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Merges the records tailed from several files into the single record queue, in record time order, so the
+ * RecordProcessor still sees one stream and forms Frames with the correct global per-second counts.
+ * <p>
+ * This is a k-way merge: each file's queue contributes its oldest record, and the oldest of those is passed on. A record
+ * is only held back while some file has nothing queued and might still deliver an older record. That is, while the
+ * quiet file's last record is older than the candidate, and the file has been quiet for less than maxWaitMillis.
+ * After that, the quiet file is not waited on, and if a late record does come from it, the RecordProcessor lumps it
+ * into the current Frame, the same as any other late record.
+ */
+public class RecordMerger {
+    private final Source[] sources;
+    private final BlockingQueue<Record> recordQueue;
+    private final boolean useRecordTimes;
+    private final long maxWaitNanos;
+
+    public RecordMerger(List<BlockingQueue<Record>> fileQueues, BlockingQueue<Record> recordQueue,
+                        boolean useRecordTimes, long maxWaitMillis) {
+        sources = new Source[fileQueues.size()];
+        for (int i = 0; i < sources.length; i++) {
+            sources[i] = new Source(fileQueues.get(i));
+        }
+        this.recordQueue = recordQueue;
+        this.useRecordTimes = useRecordTimes;
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+    }
+
+    /**
+     * Passes on the oldest queued record, if it is safe to do so
+     * @return false if there was nothing to pass on
+     */
+    public boolean mergeNext() throws InterruptedException {
+        long now = System.nanoTime();
+        Source oldest = null;
+        for (Source source : sources) {
+            if (source.fill(now) && (oldest == null || source.headTime < oldest.headTime)) {
+                oldest = source;
+            }
+        }
+        if (oldest == null) {
+            return false;
+        }
+        for (Source source : sources) {
+            if (source.head == null && source.lastTime < oldest.headTime && now - source.idleSince < maxWaitNanos) {
+                // this file might still deliver something older
+                return false;
+            }
+        }
+        Record record = oldest.head;
+        oldest.head = null;
+        oldest.lastTime = oldest.headTime;
+        recordQueue.put(record);
+        return true;
+    }
+
+    /**
+     * Returns the record time or the actual time (in seconds), the same as the RecordProcessor uses to form Frames
+     */
+    private long getRecordTime(Record record) {
+        if (useRecordTimes && record.hasRecordTime()) {
+            return record.getRecordEpochSecond();
+        }
+        return record.getActualEpochSecond();
+    }
+
+    /**
+     * One file's queue, with its oldest record pulled out for comparison
+     */
+    private class Source {
+        private final BlockingQueue<Record> queue;
+        private Record head;
+        private long headTime;
+        // the time of the last record passed on from this file
+        private long lastTime = Long.MIN_VALUE;
+        // when this file's queue was first found empty
+        private long idleSince;
+        private boolean idle;
+
+        private Source(BlockingQueue<Record> queue) {
+            this.queue = queue;
+        }
+
+        /**
+         * Pulls the next record out of the queue if we don't already have one
+         * @return true if there is a head record
+         */
+        private boolean fill(long now) {
+            if (head == null) {
+                head = queue.poll();
+                if (head == null) {
+                    if (!idle) {
+                        idle = true;
+                        idleSince = now;
+                    }
+                    return false;
+                }
+                idle = false;
+                headTime = getRecordTime(head);
+            }
+            return true;
+        }
+    }
+}
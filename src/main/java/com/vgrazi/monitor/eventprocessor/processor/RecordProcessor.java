@@ -1,14 +1,21 @@
 package com.vgrazi.monitor.eventprocessor.processor;
 
+import com.vgrazi.monitor.eventprocessor.domain.Dimension;
 import com.vgrazi.monitor.eventprocessor.domain.Frame;
 import com.vgrazi.monitor.eventprocessor.domain.Record;
+import com.vgrazi.monitor.eventprocessor.util.QueueUtils;
+import com.vgrazi.monitor.eventprocessor.util.StatsCruncher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -29,6 +36,32 @@ public class RecordProcessor {
     @Value("${use-record-times}")
     private boolean useRecordTimes;
 
+    @Value("${frame-mode}")
+    private String frameMode;
+
+    @Value("${heavy-hitters-enabled}")
+    private boolean heavyHittersEnabled;
+
+    @Value("${heavy-hitters-capacity}")
+    private int heavyHittersCapacity;
+
+    @Autowired
+    private StatsCruncher statsCruncher;
+
+    @Value("${batch-size}")
+    private int batchSize;
+
+    @Value("${batch-max-delay-ms}")
+    private long batchMaxDelayMillis;
+
+    @Value("${aggregation-shards}")
+    private int aggregationShards;
+
+    @Value("${ring-max-park-ms}")
+    private long ringMaxParkMillis;
+
+    private ShardedAggregator aggregator;
+
     /**
      * We process incoming records from the recordQueue into one second frames, beginning from the start time, and throw them on the frame queue
      * we assume record times are correct, and in proper sequence.
@@ -37,56 +70,117 @@ public class RecordProcessor {
      */
     public void processRecords(BlockingQueue<Record> recordQueue, BlockingQueue<Frame> frameQueue) {
         executor.submit(() -> {
-            // each frame contains 1 seconds worth of data, starting from the frameStartTime
-            Frame frame = null;
+            try {
+                formFrames(recordQueue, frameQueue);
+            } catch (RuntimeException e) {
+                // nobody checks this task's Future, so log the failure here, and stop rather than silently stall
+                logger.error("RecordProcessor failed, no more records will be processed", e);
+                stop();
+            }
+            return null;
+        });
+    }
+
+    /**
+     * The RecordProcessor's loop, until it is stopped
+     */
+    private void formFrames(BlockingQueue<Record> recordQueue, BlockingQueue<Frame> frameQueue) throws InterruptedException {
+        // each frame contains 1 seconds worth of data, starting from the frameStartTime
+        boolean keepRecords = keepRecords();
+        int heavyHitterCapacity = heavyHittersEnabled ? heavyHittersCapacity : 0;
+        Set<Dimension> distinctCountDimensions = statsCruncher.getDistinctCountDimensions();
+        if (aggregationShards > 1) {
+            logger.info("Aggregating records on {} shards", aggregationShards);
+            aggregator = new ShardedAggregator(aggregationShards, batchSize, ringMaxParkMillis);
+        }
+        Frame frame = null;
+        // the number of records in the current frame, which may be held by the aggregator's shards
+        int frameRecordCount = 0;
+        List<Record> batch = new ArrayList<>(batchSize);
+        List<Frame> completedFrames = new ArrayList<>();
 
-            while (running) {
-                Record record = recordQueue.take();
+        while (running) {
+            QueueUtils.drainBatch(recordQueue, batch, batchSize, batchMaxDelayMillis);
+            for (Record record : batch) {
                 long recordTime = getRecordTime(record);
-                if(frame == null) {
-                    frame = new Frame();
+                if (frame == null) {
+                    frame = new Frame(keepRecords, heavyHitterCapacity, distinctCountDimensions);
                     frame.setFrameStartTime(recordTime);
                 }
                 else if (recordTime - frame.getStartTime() >= frameResolutionInSeconds) {
                     // Record belongs to the next Frame.
                     // Close this Frame and prepare for processing...
                     // Queue up the previous frame...
-                    if (!frame.isEmpty()) {
+                    if (frameRecordCount > 0) {
                         // if the Frame is empty, don't queue it up, just reuse it. This guarantee that
                         // only non-empty Frames will be processed
-                        LocalDateTime dateTime = LocalDateTime.ofEpochSecond(recordTime, 0, ZoneOffset.UTC);
-                        logger.debug("Creating new frame for time {}", dateTime);
-                        frameQueue.put(frame);
+                        if (logger.isDebugEnabled()) {
+                            logger.debug("Creating new frame for time {}", LocalDateTime.ofEpochSecond(recordTime, 0, ZoneOffset.UTC));
+                        }
+                        if (aggregator != null) {
+                            aggregator.close(frame);
+                        }
+                        completedFrames.add(frame);
+                        frameRecordCount = 0;
 
                         // create the next Frame
-                        frame = new Frame();
+                        frame = new Frame(keepRecords, heavyHitterCapacity, distinctCountDimensions);
                     }
                     // bump the start time for the new Frame
                     frame.setFrameStartTime(recordTime);
                 }
                 // add the record to the Frame
-                frame.addRecord(record);
+                if (aggregator != null) {
+                    aggregator.add(frame, record);
+                }
+                else {
+                    frame.addRecord(record);
+                }
+                frameRecordCount++;
                 frame.setFrameEndTime(recordTime);
-                Thread.yield();
             }
-            logger.info("RecordProcessor exiting");
-            return null;
-        });
+            batch.clear();
+            if (aggregator != null) {
+                // let the shards get on with the current frame's records while we wait for the next batch
+                aggregator.flush();
+            }
+            // publish the Frames closed by this batch together
+            if (!completedFrames.isEmpty()) {
+                if (aggregator != null) {
+                    aggregator.awaitClosed();
+                }
+                QueueUtils.putAll(frameQueue, completedFrames);
+                completedFrames.clear();
+            }
+        }
+        logger.info("RecordProcessor exiting");
+    }
+
+    /**
+     * frame-mode=records keeps every Record in its Frame for the life of the window. frame-mode=summary only keeps the
+     * Frame's running summary of the records, and lets the records go
+     */
+    private boolean keepRecords() {
+        switch (frameMode) {
+            case "records":
+                return true;
+            case "summary":
+                return false;
+            default:
+                throw new IllegalArgumentException("Unknown frame-mode: " + frameMode);
+        }
     }
 
     /**
      * Returns the actual record time or the log time (in seconds) depending
-     * on whether the use-record-times property is true or false
+     * on whether the use-record-times property is true or false.
+     * A record whose line had no readable time falls back to the actual time
      */
     private long getRecordTime(Record record) {
-        LocalDateTime recordTime;
-        if(useRecordTimes) {
-            recordTime = record.getRecordTime();
+        if (useRecordTimes && record.hasRecordTime()) {
+            return record.getRecordEpochSecond();
         }
-        else {
-            recordTime = record.getActualTime();
-        }
-        return recordTime.toEpochSecond(ZoneOffset.UTC);
+        return record.getActualEpochSecond();
     }
 
     /**
@@ -96,6 +190,9 @@ public class RecordProcessor {
         running = false;
         // shut down the executor. Will wait to finish any existing tasks
         executor.shutdown();
+        if (aggregator != null) {
+            aggregator.stop();
+        }
     }
 
 }
@@ -1,26 +1,38 @@
 package com.vgrazi.monitor.eventprocessor.processor;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.vgrazi.monitor.eventprocessor.domain.Scorecard;
+import com.vgrazi.monitor.eventprocessor.util.IOUtils;
+import com.vgrazi.monitor.eventprocessor.util.QueueUtils;
+import com.vgrazi.monitor.eventprocessor.util.ScorecardCodec;
+import com.vgrazi.monitor.eventprocessor.util.ScorecardCodecs;
+import com.vgrazi.monitor.eventprocessor.util.ScorecardRing;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.PostConstruct;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
 /**
  * Listens for new Scorecards on the ScorecardQueue, and writes them to the file system, where they are picked up
- * by the MonitorUI, displayed, and deleted.
+ * by the MonitorUI, displayed, and deleted. With scorecard-transport=ring, they are instead published to a memory
+ * mapped ScorecardRing, where the MonitorUI reads the newest ones straight from memory.
  */
 @Service
 public class ScorecardProcessor {
@@ -36,11 +48,69 @@ public class ScorecardProcessor {
 
     private DateTimeFormatter FORMATTER;
 
+    @Value("${batch-size}")
+    private int batchSize;
+
+    @Value("${batch-max-delay-ms}")
+    private long batchMaxDelayMillis;
+
+    @Value("${scorecard-codec}")
+    private String codecName;
+
+    @Value("${scorecard-transport}")
+    private String transport;
+
+    @Value("${scorecard-ring-file}")
+    private String ringFile;
+
+    @Value("${scorecard-ring-slots}")
+    private int ringSlots;
+
+    @Value("${scorecard-ring-slot-bytes}")
+    private int ringSlotBytes;
+
+    @Autowired
+    private ScorecardStreamer streamer;
+
+    private ScorecardCodec codec;
+
+    private ScorecardRing ring;
+    private long ringSequence;
+
+    // each scorecard is encoded into this buffer, which is reused from one scorecard to the next
+    private final EncodeBuffer buffer = new EncodeBuffer();
+
     public void processScorecard(BlockingQueue<Scorecard> scorecardQueue) {
+        switch (transport) {
+            case "file":
+                break;
+            case "ring":
+                try {
+                    ring = ScorecardRing.create(Paths.get(ringFile), ringSlots, ringSlotBytes);
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Can't create the scorecard ring " + ringFile, e);
+                }
+                logger.info("Publishing scorecards to {}", ringFile);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown scorecard-transport: " + transport);
+        }
         executor.submit(()-> {
+            List<Scorecard> batch = new ArrayList<>(batchSize);
             while (running) {
-                Scorecard scorecard = scorecardQueue.take();
-                serializeScorecard(scorecard);
+                QueueUtils.drainBatch(scorecardQueue, batch, batchSize, batchMaxDelayMillis);
+                for (Scorecard scorecard : batch) {
+                    if (ring != null) {
+                        publishScorecard(scorecard);
+                    }
+                    else {
+                        serializeScorecard(scorecard);
+                    }
+                    if (streamer.isEnabled()) {
+                        streamer.publish(scorecard);
+                    }
+                }
+                batch.clear();
             }
             logger.info("ScorecardProcessor exiting");
             return null;
@@ -48,21 +118,39 @@ public class ScorecardProcessor {
     }
 
     private void serializeScorecard(Scorecard scorecard) throws IOException {
-        ObjectMapper mapper = new ObjectMapper();
         String format = FORMATTER.format(LocalDateTime.now());
         String filename = String.format(scorecardFileFormat, format);
-        // Create a temp file and rename, so that the file watcher
-        // only gets one modify signal
-        Path tempFile = Files.createTempFile("tmp", "tmp");
-        mapper.writeValue(tempFile.toFile(), scorecard);
-        Path target = Paths.get(filename);
-        Files.move(tempFile, target);
+        buffer.reset();
+        codec.encode(scorecard, buffer);
+        // Create a temp file in the same directory and rename it, so the rename is atomic, and the file watcher
+        // only sees the complete file
+        Path target = Paths.get(filename).toAbsolutePath();
+        Path tempFile = Files.createTempFile(target.getParent(), ".scorecard-", IOUtils.TEMP_SUFFIX);
+        try (OutputStream out = Files.newOutputStream(tempFile)) {
+            buffer.writeTo(out);
+        }
+        Files.move(tempFile, target, StandardCopyOption.ATOMIC_MOVE);
         logger.debug("wrote file: {}", target);
     }
 
+    /**
+     * Encodes the scorecard into the reusable heap buffer, and copies it from there into the next slot of the ring
+     */
+    private void publishScorecard(Scorecard scorecard) throws IOException {
+        buffer.reset();
+        codec.encode(scorecard, buffer);
+        if (ring.publish(ringSequence, buffer.array(), buffer.size())) {
+            ringSequence++;
+        }
+        else {
+            logger.warn("Scorecard of {} bytes does not fit in a scorecard-ring-slot-bytes of {}, dropped it", buffer.size(), ringSlotBytes);
+        }
+    }
+
     @PostConstruct
     public void postConstruct() {
         FORMATTER = DateTimeFormatter.ofPattern(DATE_FILE_PATTERN);
+        codec = ScorecardCodecs.create(codecName);
     }
 
     /**
@@ -74,5 +162,17 @@ public class ScorecardProcessor {
         executor.shutdown();
     }
 
+    /**
+     * A ByteArrayOutputStream that lets the ring copy straight out of its array
+     */
+    private static class EncodeBuffer extends ByteArrayOutputStream {
+        private EncodeBuffer() {
+            super(8192);
+        }
+
+        private byte[] array() {
+            return buf;
+        }
+    }
 
 }
@@ -0,0 +1,180 @@
+package com.vgrazi.monitor.eventprocessor.processor;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.vgrazi.monitor.eventprocessor.domain.Scorecard;
+import com.vgrazi.monitor.eventprocessor.util.ScorecardCodec;
+import com.vgrazi.monitor.eventprocessor.util.ScorecardCodecs;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Streams the scorecards to any number of remote subscribers as Server-Sent Events, on GET /scorecards.
+ * Each event is one JSON scorecard, keyframe or delta, with the scorecard's sequence as its id.
+ * <p>
+ * Every subscriber has its own bounded buffer, drained by its own sender thread. When a slow subscriber's buffer is
+ * full, its oldest event is dropped to make room, so publishing never waits on a subscriber. A subscriber that misses
+ * a delta sees the gap in the sequence, and (like the MonitorUI) waits for the next keyframe. A new subscriber starts
+ * with the latest keyframe and the deltas since, so it can apply the very next scorecard published
+ */
+@Service
+public class ScorecardStreamer {
+    private static final String PATH = "/scorecards";
+    private final Logger logger = LoggerFactory.getLogger(ScorecardStreamer.class);
+    private final ScorecardCodec codec = ScorecardCodecs.create("json");
+    private final List<BlockingDeque<byte[]>> subscribers = new CopyOnWriteArrayList<>();
+    // the latest keyframe's event followed by those of the deltas since, replayed to each new subscriber
+    private final List<byte[]> replay = new ArrayList<>();
+    // held while publishing and while a subscriber attaches, so a new subscriber neither misses nor repeats a scorecard
+    private final Object lock = new Object();
+    private volatile boolean running = true;
+    private HttpServer server;
+    private ExecutorService executor;
+
+    @Value("${scorecard-stream-enabled}")
+    private boolean enabled;
+
+    @Value("${scorecard-stream-address}")
+    private String address;
+
+    @Value("${scorecard-stream-port}")
+    private int port;
+
+    @Value("${scorecard-stream-buffer}")
+    private int bufferSize;
+
+    @Value("${scorecard-stream-keep-alive-secs}")
+    private long keepAliveSeconds;
+
+    @PostConstruct
+    public void start() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        server = HttpServer.create(new InetSocketAddress(address, port), 0);
+        // one thread per subscriber, which sends its events for as long as it stays attached
+        executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        server.createContext(PATH, this::subscribe);
+        server.start();
+        logger.info("Streaming scorecards on http://{}:{}{}", address, port, PATH);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Offers the scorecard to every subscriber. Only called from the ScorecardProcessor thread
+     */
+    public void publish(Scorecard scorecard) throws IOException {
+        byte[] event = toEvent(scorecard);
+        synchronized (lock) {
+            if (scorecard.isKeyframe()) {
+                replay.clear();
+            }
+            // a delta before the first keyframe is of no use to a new subscriber
+            if (!replay.isEmpty() || scorecard.isKeyframe()) {
+                replay.add(event);
+            }
+            for (BlockingDeque<byte[]> buffer : subscribers) {
+                // latest wins: make room by dropping the oldest event
+                while (!buffer.offerLast(event)) {
+                    buffer.pollFirst();
+                }
+            }
+        }
+    }
+
+    /**
+     * Attaches the subscriber, and sends it events until it disconnects
+     */
+    private void subscribe(HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            // attach before answering, so everything published once the subscriber has the response reaches it
+            BlockingDeque<byte[]> buffer;
+            synchronized (lock) {
+                // room for the whole replay, on top of the usual buffer
+                buffer = new LinkedBlockingDeque<>(bufferSize + replay.size());
+                buffer.addAll(replay);
+                subscribers.add(buffer);
+            }
+            logger.info("Scorecard subscriber {} attached, {} subscribers", exchange.getRemoteAddress(), subscribers.size());
+            try {
+                exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+                exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+                exchange.sendResponseHeaders(200, 0);
+                send(exchange.getResponseBody(), buffer);
+            } finally {
+                subscribers.remove(buffer);
+                logger.info("Scorecard subscriber {} detached, {} subscribers", exchange.getRemoteAddress(), subscribers.size());
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * The subscriber's sender loop. A comment line goes out whenever there has been nothing to send for a while, so a
+     * vanished subscriber is noticed even when no scorecards are being published
+     */
+    private void send(OutputStream out, BlockingDeque<byte[]> buffer) {
+        byte[] keepAlive = ": keep-alive\n\n".getBytes(StandardCharsets.UTF_8);
+        try {
+            while (running) {
+                byte[] event = buffer.poll(keepAliveSeconds, TimeUnit.SECONDS);
+                out.write(event != null ? event : keepAlive);
+                out.flush();
+            }
+        } catch (IOException e) {
+            // the subscriber went away
+            logger.debug("Scorecard subscriber disconnected: {}", e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Formats the scorecard as a Server-Sent Event. Jackson writes the JSON on a single line, so it fits in one data field
+     */
+    private byte[] toEvent(Scorecard scorecard) throws IOException {
+        ByteArrayOutputStream event = new ByteArrayOutputStream(4096);
+        String header = "id: " + scorecard.getSequence() + "\nevent: " + (scorecard.isKeyframe() ? "keyframe" : "delta") + "\ndata: ";
+        event.write(header.getBytes(StandardCharsets.UTF_8));
+        codec.encode(scorecard, event);
+        event.write("\n\n".getBytes(StandardCharsets.UTF_8));
+        return event.toByteArray();
+    }
+
+    /**
+     * Stops accepting subscribers, and detaches the current ones
+     */
+    public void stop() {
+        running = false;
+        if (server != null) {
+            server.stop(0);
+            executor.shutdownNow();
+        }
+    }
+}
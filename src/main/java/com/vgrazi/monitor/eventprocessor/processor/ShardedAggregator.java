@@ -0,0 +1,249 @@
+package com.vgrazi.monitor.eventprocessor.processor;
+
+import com.vgrazi.monitor.eventprocessor.domain.Frame;
+import com.vgrazi.monitor.eventprocessor.domain.Record;
+import com.vgrazi.monitor.eventprocessor.util.QueueUtils;
+import com.vgrazi.monitor.eventprocessor.util.RingBuffer;
+import com.vgrazi.monitor.eventprocessor.util.SpinThenParkWaitStrategy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Folds records into Frames on several aggregator threads (shards), so that the per record aggregation is not capped by
+ * the RecordProcessor thread. Records are partitioned by section id, so each section's counts are kept by just one shard.
+ * Each shard folds its records into its own partial Frame for the current second. When the RecordProcessor closes the
+ * Frame, the partials are merged into it.
+ * <p>
+ * The kept records depend on the order the records arrive in, so add puts the record in those directly, on the
+ * RecordProcessor thread. Everything else, including the heavy hitter sketches, is done on the shards. The merged
+ * Frame has the same records and counts as one thread would have produced. Its heavy hitter sketches are merged from
+ * the shards' sketches, so their counts may differ, but stay within the merged error bound.
+ * <p>
+ * add, flush, close and awaitClosed are only called from the RecordProcessor thread
+ */
+public class ShardedAggregator {
+    private static final int QUEUE_CAPACITY = 1024;
+    // how often a wait for a shard checks that the shards are still alive
+    private static final long CHECK_MILLIS = 100;
+    private final Logger logger = LoggerFactory.getLogger(ShardedAggregator.class);
+    private final int shardCount;
+    private final int dispatchSize;
+    private final ExecutorService executor;
+    private final List<BlockingQueue<Work>> shardQueues = new ArrayList<>();
+    // the Work each shard has finished with, to be reused
+    private final List<BlockingQueue<Work>> freeWork = new ArrayList<>();
+    // the records routed to each shard, not yet handed over. Null if there are none
+    private final Work[] pending;
+    // the partial Frames of the current second, one per shard. Null until the first record of the second
+    private Frame[] partials;
+    private final List<Closing> closing = new ArrayList<>();
+    private volatile boolean running = true;
+    // what killed a shard, if one has died
+    private volatile Throwable failure;
+
+    /**
+     * @param dispatchSize the number of records routed to a shard before they are handed over
+     */
+    public ShardedAggregator(int shardCount, int dispatchSize, long maxParkMillis) {
+        this.shardCount = shardCount;
+        this.dispatchSize = dispatchSize;
+        pending = new Work[shardCount];
+        executor = Executors.newFixedThreadPool(shardCount);
+        for (int i = 0; i < shardCount; i++) {
+            BlockingQueue<Work> queue = new RingBuffer<>(QUEUE_CAPACITY, new SpinThenParkWaitStrategy(maxParkMillis));
+            // room for about as much Work as the shard can have queued and in hand. Any more is left to the GC
+            BlockingQueue<Work> free = new RingBuffer<>(2 * QUEUE_CAPACITY, new SpinThenParkWaitStrategy(maxParkMillis));
+            shardQueues.add(queue);
+            freeWork.add(free);
+            executor.submit(() -> {
+                try {
+                    aggregate(queue, free);
+                } catch (Throwable e) {
+                    if (running) {
+                        failure = e;
+                        logger.error("Aggregator shard died", e);
+                    }
+                    throw e;
+                }
+                return null;
+            });
+        }
+    }
+
+    /**
+     * Adds the record to the frame's kept records, and routes it to the shard that owns its section
+     */
+    public void add(Frame frame, Record record) throws InterruptedException {
+        if (partials == null) {
+            partials = new Frame[shardCount];
+            for (int i = 0; i < shardCount; i++) {
+                partials[i] = frame.newPartial();
+            }
+        }
+        frame.addInOrder(record);
+        // malformed lines have no section; they all go to the same shard
+        int shard = Math.floorMod(record.getSectionId(), shardCount);
+        Work work = pending[shard];
+        if (work == null) {
+            work = obtainWork(shard, null);
+            pending[shard] = work;
+        }
+        work.records.add(record);
+        if (work.records.size() >= dispatchSize) {
+            dispatch(shard);
+        }
+    }
+
+    /**
+     * Hands the records routed so far over to their shards
+     */
+    public void flush() throws InterruptedException {
+        for (int shard = 0; shard < shardCount; shard++) {
+            if (pending[shard] != null) {
+                dispatch(shard);
+            }
+        }
+    }
+
+    /**
+     * Ends the current second. Its partials will be merged into the frame by awaitClosed. Meanwhile, the shards
+     * carry on with the next second
+     */
+    public void close(Frame frame) throws InterruptedException {
+        if (partials == null) {
+            return;
+        }
+        flush();
+        CountDownLatch done = new CountDownLatch(shardCount);
+        for (int shard = 0; shard < shardCount; shard++) {
+            handOver(shard, obtainWork(shard, done));
+        }
+        closing.add(new Closing(frame, partials, done));
+        partials = null;
+    }
+
+    /**
+     * Waits for the shards to finish the closed seconds, and merges their partials into the Frames
+     *
+     * @throws IllegalStateException if a shard has died, and will never finish
+     */
+    public void awaitClosed() throws InterruptedException {
+        for (Closing closed : closing) {
+            while (!closed.done.await(CHECK_MILLIS, TimeUnit.MILLISECONDS)) {
+                checkShards();
+            }
+            for (Frame partial : closed.partials) {
+                closed.frame.merge(partial);
+            }
+        }
+        closing.clear();
+    }
+
+    private void dispatch(int shard) throws InterruptedException {
+        Work work = pending[shard];
+        pending[shard] = null;
+        handOver(shard, work);
+    }
+
+    /**
+     * Returns a finished Work to reuse if there is one, or else a new one, for the shard's current partial
+     */
+    private Work obtainWork(int shard, CountDownLatch done) {
+        Work work = freeWork.get(shard).poll();
+        if (work == null) {
+            work = new Work(dispatchSize);
+        }
+        work.partial = partials[shard];
+        work.done = done;
+        return work;
+    }
+
+    /**
+     * Puts the Work on the shard's queue, waiting for room if necessary, as long as the shards are alive
+     */
+    private void handOver(int shard, Work work) throws InterruptedException {
+        BlockingQueue<Work> queue = shardQueues.get(shard);
+        while (!queue.offer(work, CHECK_MILLIS, TimeUnit.MILLISECONDS)) {
+            checkShards();
+        }
+    }
+
+    /**
+     * Fails the caller if a shard has died. Whoever is waiting on the shards would otherwise wait forever
+     */
+    private void checkShards() {
+        Throwable failure = this.failure;
+        if (failure != null) {
+            logger.error("An aggregator shard has died, no more records can be processed");
+            throw new IllegalStateException("An aggregator shard has died", failure);
+        }
+    }
+
+    /**
+     * The shard's loop: folds each batch of records into its partial Frame, and signals when a second is closed.
+     * A record that can't be folded in is logged and skipped, so that one bad record can't stall the pipeline
+     */
+    private void aggregate(BlockingQueue<Work> queue, BlockingQueue<Work> free) throws InterruptedException {
+        List<Work> batch = new ArrayList<>();
+        while (running) {
+            QueueUtils.drainBatch(queue, batch, QUEUE_CAPACITY, 0);
+            for (Work work : batch) {
+                for (Record record : work.records) {
+                    try {
+                        work.partial.addRecord(record);
+                    } catch (RuntimeException e) {
+                        logger.error("Can't aggregate {}", record, e);
+                    }
+                }
+                if (work.done != null) {
+                    work.done.countDown();
+                }
+                work.records.clear();
+                work.partial = null;
+                work.done = null;
+                free.offer(work);
+            }
+            batch.clear();
+        }
+        logger.debug("Aggregator shard exiting");
+    }
+
+    public void stop() {
+        running = false;
+        executor.shutdownNow();
+    }
+
+    /**
+     * Either a batch of records to fold into a partial Frame, or (with done set) the signal that the second is closed.
+     * Reused once the shard has finished with it
+     */
+    private static class Work {
+        private final List<Record> records;
+        private Frame partial;
+        private CountDownLatch done;
+
+        private Work(int capacity) {
+            records = new ArrayList<>(capacity);
+        }
+    }
+
+    private static class Closing {
+        private final Frame frame;
+        private final Frame[] partials;
+        private final CountDownLatch done;
+
+        private Closing(Frame frame, Frame[] partials, CountDownLatch done) {
+            this.frame = frame;
+            this.partials = partials;
+            this.done = done;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.vgrazi.monitor.eventprocessor.util;
+
+import com.vgrazi.monitor.eventprocessor.domain.Record;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Under overload, admits only 1 in every N records to the record queue, and gives each admitted record a weight of N,
+ * so that hit counts summed from the weights remain (statistically) correct.
+ * N adapts to the measured lag, ie the number of records waiting in the queue: it doubles (up to maxInterval) while the
+ * lag is above the threshold, and halves (down to 1, ie no sampling) once the lag drops below half the threshold.
+ * An admitted record stands for itself and the interval - 1 records after it, which are sampled out even if the interval
+ * changes meanwhile. So whenever a record is admitted, the weights so far add up to exactly the records seen so far.
+ * Only called from the FileReader thread.
+ */
+public class AdaptiveSampler {
+    // re-measure the lag every ADJUST_EVERY records
+    private static final int ADJUST_EVERY = 256;
+    private final Logger logger = LoggerFactory.getLogger(AdaptiveSampler.class);
+    private final BlockingQueue<Record> recordQueue;
+    private final int lagThreshold;
+    private final int maxInterval;
+    private final IngestMetrics metrics;
+    private int interval = 1;
+    private int countdown = 1;
+    private int untilAdjust = ADJUST_EVERY;
+
+    public AdaptiveSampler(BlockingQueue<Record> recordQueue, int lagThreshold, int maxInterval, IngestMetrics metrics) {
+        this.recordQueue = recordQueue;
+        this.lagThreshold = lagThreshold;
+        this.maxInterval = maxInterval;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Decides whether the record is admitted to the queue. An admitted record is weighted by the current interval
+     *
+     * @return true if the record should be queued, false if it was sampled out
+     */
+    public boolean admit(Record record) {
+        if (--untilAdjust == 0) {
+            untilAdjust = ADJUST_EVERY;
+            adjust();
+        }
+        if (--countdown > 0) {
+            metrics.recordSampledOut();
+            return false;
+        }
+        countdown = interval;
+        record.setWeight(interval);
+        return true;
+    }
+
+    private void adjust() {
+        int lag = recordQueue.size();
+        int newInterval = interval;
+        if (lag > lagThreshold) {
+            newInterval = Math.min(interval * 2, maxInterval);
+        }
+        else if (lag < lagThreshold / 2) {
+            newInterval = Math.max(interval / 2, 1);
+        }
+        if (newInterval != interval) {
+            logger.info("Record queue lag is {}, sampling 1 in {} records", lag, newInterval);
+            // the current record's block keeps the length it was weighted with; the new interval starts with the next
+            interval = newInterval;
+            metrics.setSamplingInterval(interval);
+        }
+    }
+}
@@ -0,0 +1,321 @@
+package com.vgrazi.monitor.eventprocessor.util;
+
+import com.vgrazi.monitor.eventprocessor.domain.DistinctCount;
+import com.vgrazi.monitor.eventprocessor.domain.HeavyHitters;
+import com.vgrazi.monitor.eventprocessor.domain.ResponseSizes;
+import com.vgrazi.monitor.eventprocessor.domain.Scorecard;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Encodes Scorecards in a compact binary form: a magic header and a format version, then the fields in a fixed order.
+ * Integers are written as zig-zag varints, so the typical small count takes a byte or two. Strings are UTF-8, prefixed
+ * by their length. Nullable values are prefixed by a presence flag, or a length of 0.
+ * <p>
+ * Adding a field means a new VERSION, and a decoder that still reads the older versions
+ */
+public class BinaryScorecardCodec implements ScorecardCodec {
+    private static final byte[] MAGIC = {'S', 'C', 'R', 'B'};
+    private static final int VERSION = 1;
+
+    /**
+     * Returns true if the bytes start with the binary scorecard header
+     */
+    public static boolean hasMagic(byte[] bytes) {
+        if (bytes.length < MAGIC.length) {
+            return false;
+        }
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (bytes[i] != MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void encode(Scorecard scorecard, OutputStream out) throws IOException {
+        out.write(MAGIC);
+        writeLong(out, VERSION);
+        writeLong(out, scorecard.getSequence());
+        writeBoolean(out, scorecard.isKeyframe());
+        writeLong(out, scorecard.getSeriesOffset());
+        writeLong(out, scorecard.getStartTime());
+        int[] series = scorecard.getHitCountSeries();
+        writeLength(out, series == null ? -1 : series.length);
+        if (series != null) {
+            for (int hits : series) {
+                writeLong(out, hits);
+            }
+        }
+        writeStrings(out, scorecard.getHitCounts());
+        writeCounts(out, scorecard.getHitsReport());
+        writeLong(out, scorecard.getLastTimeOfThresholdExceededAlertSecs());
+        writeLong(out, scorecard.getFirstTimeOfThresholdExceededSecs());
+        writeBoolean(out, scorecard.isInHighActivity());
+        writeStrings(out, scorecard.getHistory());
+        writeString(out, scorecard.getAlert());
+        writeLong(out, scorecard.getShedRecords());
+        writeLong(out, scorecard.getSamplingInterval());
+        writeHeavyHitters(out, scorecard.getTopSections());
+        writeHeavyHitters(out, scorecard.getTopHosts());
+        writeHeavyHitters(out, scorecard.getTopCallers());
+        Map<String, ResponseSizes> responseSizes = scorecard.getResponseSizes();
+        writeLength(out, responseSizes == null ? -1 : responseSizes.size());
+        if (responseSizes != null) {
+            for (Map.Entry<String, ResponseSizes> entry : responseSizes.entrySet()) {
+                writeString(out, entry.getKey());
+                writeResponseSizes(out, entry.getValue());
+            }
+        }
+        writeResponseSizes(out, scorecard.getAllResponseSizes());
+        Map<String, DistinctCount> distinctCounts = scorecard.getDistinctCounts();
+        writeLength(out, distinctCounts == null ? -1 : distinctCounts.size());
+        if (distinctCounts != null) {
+            for (Map.Entry<String, DistinctCount> entry : distinctCounts.entrySet()) {
+                writeString(out, entry.getKey());
+                DistinctCount distinctCount = entry.getValue();
+                writeLong(out, distinctCount.getRecentSeconds());
+                writeLong(out, distinctCount.getRecent());
+                writeLong(out, distinctCount.getWindowSeconds());
+                writeLong(out, distinctCount.getWindow());
+                writeLong(out, Double.doubleToLongBits(distinctCount.getStandardError()));
+            }
+        }
+    }
+
+    @Override
+    public Scorecard decode(byte[] bytes) throws IOException {
+        if (!hasMagic(bytes)) {
+            throw new IOException("Not a binary scorecard");
+        }
+        Reader in = new Reader(bytes, MAGIC.length);
+        long version = in.readLong();
+        if (version != VERSION) {
+            throw new IOException("Unsupported binary scorecard version " + version);
+        }
+        Scorecard scorecard = new Scorecard();
+        scorecard.setSequence(in.readLong());
+        scorecard.setKeyframe(in.readBoolean());
+        scorecard.setSeriesOffset((int) in.readLong());
+        scorecard.setStartTime(in.readLong());
+        int seriesLength = in.readLength();
+        if (seriesLength >= 0) {
+            int[] series = new int[seriesLength];
+            for (int i = 0; i < seriesLength; i++) {
+                series[i] = (int) in.readLong();
+            }
+            scorecard.setHitCountSeries(series);
+        }
+        scorecard.setHitCounts(in.readStrings());
+        scorecard.setHitsReport(in.readCounts());
+        scorecard.setLastTimeOfThresholdExceededAlertSecs(in.readLong());
+        scorecard.setFirstTimeOfThresholdExceededSecs(in.readLong());
+        scorecard.setInHighActivity(in.readBoolean());
+        List<String> history = in.readStrings();
+        scorecard.setHistory(history == null ? null : new LinkedList<>(history));
+        scorecard.setAlert(in.readString());
+        scorecard.setShedRecords(in.readLong());
+        scorecard.setSamplingInterval((int) in.readLong());
+        scorecard.setTopSections(in.readHeavyHitters());
+        scorecard.setTopHosts(in.readHeavyHitters());
+        scorecard.setTopCallers(in.readHeavyHitters());
+        int responseSizesCount = in.readLength();
+        if (responseSizesCount >= 0) {
+            Map<String, ResponseSizes> responseSizes = new LinkedHashMap<>();
+            for (int i = 0; i < responseSizesCount; i++) {
+                responseSizes.put(in.readString(), in.readResponseSizes());
+            }
+            scorecard.setResponseSizes(responseSizes);
+        }
+        scorecard.setAllResponseSizes(in.readResponseSizes());
+        int distinctCountsCount = in.readLength();
+        if (distinctCountsCount >= 0) {
+            Map<String, DistinctCount> distinctCounts = new LinkedHashMap<>();
+            for (int i = 0; i < distinctCountsCount; i++) {
+                String dimension = in.readString();
+                distinctCounts.put(dimension, new DistinctCount((int) in.readLong(), in.readLong(), (int) in.readLong(),
+                        in.readLong(), Double.longBitsToDouble(in.readLong())));
+            }
+            scorecard.setDistinctCounts(distinctCounts);
+        }
+        return scorecard;
+    }
+
+    private static void writeLong(OutputStream out, long value) throws IOException {
+        // zig-zag, so that small negative values stay short too
+        long zigZag = (value << 1) ^ (value >> 63);
+        while ((zigZag & ~0x7FL) != 0) {
+            out.write((int) (zigZag & 0x7F) | 0x80);
+            zigZag >>>= 7;
+        }
+        out.write((int) zigZag);
+    }
+
+    /**
+     * Writes a collection length, or -1 for null
+     */
+    private static void writeLength(OutputStream out, int length) throws IOException {
+        writeLong(out, length);
+    }
+
+    private static void writeBoolean(OutputStream out, boolean value) throws IOException {
+        out.write(value ? 1 : 0);
+    }
+
+    private static void writeString(OutputStream out, String value) throws IOException {
+        if (value == null) {
+            writeLength(out, -1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeLength(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private static void writeStrings(OutputStream out, Collection<String> values) throws IOException {
+        writeLength(out, values == null ? -1 : values.size());
+        if (values != null) {
+            for (String value : values) {
+                writeString(out, value);
+            }
+        }
+    }
+
+    private static void writeCounts(OutputStream out, Map<String, Long> counts) throws IOException {
+        writeLength(out, counts == null ? -1 : counts.size());
+        if (counts != null) {
+            for (Map.Entry<String, Long> entry : counts.entrySet()) {
+                writeString(out, entry.getKey());
+                writeLong(out, entry.getValue());
+            }
+        }
+    }
+
+    private static void writeHeavyHitters(OutputStream out, HeavyHitters heavyHitters) throws IOException {
+        writeBoolean(out, heavyHitters != null);
+        if (heavyHitters != null) {
+            writeCounts(out, heavyHitters.getCounts());
+            writeLong(out, heavyHitters.getErrorBound());
+            writeLong(out, heavyHitters.getTotal());
+        }
+    }
+
+    private static void writeResponseSizes(OutputStream out, ResponseSizes responseSizes) throws IOException {
+        writeBoolean(out, responseSizes != null);
+        if (responseSizes != null) {
+            writeLong(out, responseSizes.getP50());
+            writeLong(out, responseSizes.getP95());
+            writeLong(out, responseSizes.getP99());
+            writeLong(out, responseSizes.getBytesPerSecond());
+        }
+    }
+
+    /**
+     * Reads the fields back in the order they were written
+     */
+    private static class Reader {
+        private final byte[] bytes;
+        private int position;
+
+        private Reader(byte[] bytes, int position) {
+            this.bytes = bytes;
+            this.position = position;
+        }
+
+        private int readByte() throws IOException {
+            if (position >= bytes.length) {
+                throw new IOException("Truncated binary scorecard");
+            }
+            return bytes[position++] & 0xFF;
+        }
+
+        private long readLong() throws IOException {
+            long zigZag = 0;
+            int shift = 0;
+            int b;
+            do {
+                if (shift > 63) {
+                    throw new IOException("Malformed varint in binary scorecard");
+                }
+                b = readByte();
+                zigZag |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return (zigZag >>> 1) ^ -(zigZag & 1);
+        }
+
+        private int readLength() throws IOException {
+            long length = readLong();
+            if (length < -1 || length > bytes.length - position) {
+                // every element takes at least a byte
+                throw new IOException("Bad length " + length + " in binary scorecard");
+            }
+            return (int) length;
+        }
+
+        private boolean readBoolean() throws IOException {
+            return readByte() != 0;
+        }
+
+        private String readString() throws IOException {
+            int length = readLength();
+            if (length < 0) {
+                return null;
+            }
+            String value = new String(bytes, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+
+        private List<String> readStrings() throws IOException {
+            int count = readLength();
+            if (count < 0) {
+                return null;
+            }
+            List<String> values = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                values.add(readString());
+            }
+            return values;
+        }
+
+        private LinkedHashMap<String, Long> readCounts() throws IOException {
+            int count = readLength();
+            if (count < 0) {
+                return null;
+            }
+            LinkedHashMap<String, Long> counts = new LinkedHashMap<>();
+            for (int i = 0; i < count; i++) {
+                counts.put(readString(), readLong());
+            }
+            return counts;
+        }
+
+        private HeavyHitters readHeavyHitters() throws IOException {
+            if (!readBoolean()) {
+                return null;
+            }
+            HeavyHitters heavyHitters = new HeavyHitters();
+            heavyHitters.setCounts(readCounts());
+            heavyHitters.setErrorBound(readLong());
+            heavyHitters.setTotal(readLong());
+            return heavyHitters;
+        }
+
+        private ResponseSizes readResponseSizes() throws IOException {
+            if (!readBoolean()) {
+                return null;
+            }
+            return new ResponseSizes(readLong(), readLong(), readLong(), readLong());
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package com.vgrazi.monitor.eventprocessor.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+
+/**
+ * Interns the distinct values of a field, such as the section, giving each one a dense int id (0, 1, 2...). The value
+ * is looked up directly from a region of the log line, so a value that has been seen before is never copied out of the
+ * line again, and every record with that value shares the one String.
+ * <p>
+ * Lookups are lock free. Only the insertion of a new value is synchronized, and the table is republished through a
+ * volatile field, so any number of parser threads can share a Dictionary. To bound memory, once maxSize values have
+ * been interned, further new values all get the OTHER id, and a warning is logged the first time that happens. The
+ * max size of the shared dictionaries is set by the dictionary-max-size property.
+ */
+public class Dictionary {
+    private static final Logger logger = LoggerFactory.getLogger(Dictionary.class);
+
+    /**
+     * The id shared by all values that arrived after the dictionary filled up
+     */
+    public static final int OTHER = 0;
+    public static final String OTHER_VALUE = "(other)";
+    /**
+     * The id of a missing value
+     */
+    public static final int NO_ID = -1;
+
+    private static final int DEFAULT_MAX_SIZE = 1 << 16;
+
+    public static final Dictionary SECTIONS = new Dictionary("section", DEFAULT_MAX_SIZE);
+    public static final Dictionary HOSTS = new Dictionary("host", DEFAULT_MAX_SIZE);
+    public static final Dictionary CALLERS = new Dictionary("caller", DEFAULT_MAX_SIZE);
+    public static final Dictionary METHODS = new Dictionary("method", DEFAULT_MAX_SIZE);
+
+    private static final class Entry {
+        final String value;
+        final int hash;
+        final int id;
+
+        Entry(String value, int hash, int id) {
+            this.value = value;
+            this.hash = hash;
+            this.id = id;
+        }
+    }
+
+    private final String name;
+    private int maxSize;
+    private boolean overflowLogged;
+    // open addressing hash table of the entries, at most half full
+    private volatile Entry[] table = new Entry[64];
+    // the values, indexed by id
+    private volatile String[] values = new String[32];
+    private int size;
+
+    public Dictionary(String name, int maxSize) {
+        this.name = name;
+        this.maxSize = maxSize;
+        idOf(OTHER_VALUE);
+    }
+
+    /**
+     * Sets the max size of all of the shared dictionaries. Call before any lines are parsed
+     */
+    public static void setMaxSizes(int maxSize) {
+        SECTIONS.setMaxSize(maxSize);
+        HOSTS.setMaxSize(maxSize);
+        CALLERS.setMaxSize(maxSize);
+        METHODS.setMaxSize(maxSize);
+    }
+
+    /**
+     * Sets the number of values, including OTHER_VALUE, after which new values get the OTHER id. Values already
+     * interned keep their ids
+     */
+    public synchronized void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Returns the id of the characters of text from start (inclusive) to end (exclusive), interning them if they are new
+     */
+    public int idOf(String text, int start, int end) {
+        int hash = hash(text, start, end);
+        int id = find(table, text, start, end, hash);
+        if (id != NO_ID) {
+            return id;
+        }
+        return insert(text, start, end, hash);
+    }
+
+    public int idOf(String value) {
+        return idOf(value, 0, value.length());
+    }
+
+    /**
+     * Returns the id of the value if it has been interned, else NO_ID. Never inserts
+     */
+    public int find(String value) {
+        return find(table, value, 0, value.length(), hash(value, 0, value.length()));
+    }
+
+    /**
+     * Returns the shared String for the characters of text from start to end. If the dictionary is full and they
+     * are new, returns a copy of them
+     */
+    public String intern(String text, int start, int end) {
+        int id = idOf(text, start, end);
+        return id == OTHER ? text.substring(start, end) : valueOf(id);
+    }
+
+    public String valueOf(int id) {
+        String[] values = this.values;
+        String value = id < values.length ? values[id] : null;
+        if (value == null) {
+            // the id was published on another thread, and we have yet to see the value
+            synchronized (this) {
+                value = this.values[id];
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Returns the number of values interned, including OTHER_VALUE
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    private synchronized int insert(String text, int start, int end, int hash) {
+        Entry[] table = this.table;
+        // another thread may have inserted it since we looked
+        int id = find(table, text, start, end, hash);
+        if (id != NO_ID) {
+            return id;
+        }
+        if (size >= maxSize) {
+            if (!overflowLogged) {
+                overflowLogged = true;
+                logger.warn("The {} dictionary is full at {} values. New {} values are counted together as {}. " +
+                        "Raise dictionary-max-size to tell them apart", name, maxSize, name, OTHER_VALUE);
+            }
+            return OTHER;
+        }
+        String value = text.substring(start, end);
+        id = size++;
+        String[] values = this.values;
+        if (id >= values.length) {
+            values = Arrays.copyOf(values, values.length * 2);
+        }
+        values[id] = value;
+        this.values = values;
+        if (size * 2 > table.length) {
+            Entry[] grown = new Entry[table.length * 2];
+            for (Entry entry : table) {
+                if (entry != null) {
+                    place(grown, entry);
+                }
+            }
+            table = grown;
+        }
+        place(table, new Entry(value, hash, id));
+        this.table = table;
+        return id;
+    }
+
+    private static int find(Entry[] table, String text, int start, int end, int hash) {
+        int mask = table.length - 1;
+        int length = end - start;
+        for (int i = hash & mask; ; i = (i + 1) & mask) {
+            Entry entry = table[i];
+            if (entry == null) {
+                return NO_ID;
+            }
+            if (entry.hash == hash && entry.value.length() == length && entry.value.regionMatches(0, text, start, length)) {
+                return entry.id;
+            }
+        }
+    }
+
+    private static void place(Entry[] table, Entry entry) {
+        int mask = table.length - 1;
+        int i = entry.hash & mask;
+        while (table[i] != null) {
+            i = (i + 1) & mask;
+        }
+        table[i] = entry;
+    }
+
+    /**
+     * Same as String.hashCode() of the substring, spread so the low bits are usable as a table index
+     */
+    private static int hash(String text, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + text.charAt(i);
+        }
+        return hash ^ (hash >>> 16);
+    }
+}
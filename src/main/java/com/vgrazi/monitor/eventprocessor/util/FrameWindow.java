@@ -0,0 +1,172 @@
+package com.vgrazi.monitor.eventprocessor.util;
+
+import com.vgrazi.monitor.eventprocessor.domain.Frame;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * The window of interest, as a fixed ring of one slot per second, indexed by epoch second modulo the window duration.
+ * A second with no records is an explicit empty (null) slot, so the Frame for any second in the window is found in
+ * constant time, and adding a Frame evicts exactly the seconds that fell out of the window, without walking a list.
+ * <p>
+ * Not thread safe, the window is owned by the FrameProcessor thread.
+ */
+public class FrameWindow implements Iterable<Frame> {
+    private final Frame[] slots;
+    private long newestSecond;
+    private int frameCount;
+
+    public FrameWindow(int durationSeconds) {
+        slots = new Frame[durationSeconds];
+    }
+
+    /**
+     * Puts the frame in the slot for its start second. If that second is newer than any in the window, the window
+     * first advances to it, evicting the frames of the seconds that fall out. If the slot is already occupied, the
+     * frame is merged into the existing one. A frame older than the window is discarded.
+     * The listener is notified of each evicted frame, and then of the added frame
+     *
+     * @return false if the frame was older than the window and discarded
+     */
+    public boolean add(Frame frame, WindowListener listener) {
+        long second = frame.getStartTime();
+        if (frameCount == 0) {
+            newestSecond = second;
+        }
+        else if (second > newestSecond) {
+            // evict the seconds that the window slides past. Once we have gone all the way round, every slot is stale
+            long steps = Math.min(second - newestSecond, slots.length);
+            for (long evicted = second - steps + 1; evicted <= second; evicted++) {
+                int index = indexOf(evicted);
+                Frame stale = slots[index];
+                if (stale != null) {
+                    slots[index] = null;
+                    frameCount--;
+                    listener.frameEvicted(stale);
+                }
+            }
+            newestSecond = second;
+        }
+        else if (second <= newestSecond - slots.length) {
+            return false;
+        }
+
+        int index = indexOf(second);
+        if (slots[index] == null) {
+            slots[index] = frame;
+            frameCount++;
+        }
+        else {
+            slots[index].merge(frame);
+        }
+        listener.frameAdded(frame);
+        return true;
+    }
+
+    /**
+     * Returns the Frame for the given epoch second, or null if there were no records in that second, or the second is
+     * outside the window
+     */
+    public Frame get(long epochSecond) {
+        if (frameCount == 0 || epochSecond > newestSecond || epochSecond <= newestSecond - slots.length) {
+            return null;
+        }
+        return slots[indexOf(epochSecond)];
+    }
+
+    public boolean isEmpty() {
+        return frameCount == 0;
+    }
+
+    /**
+     * Returns the number of non-empty seconds in the window
+     */
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    public int getDurationSeconds() {
+        return slots.length;
+    }
+
+    /**
+     * Returns the newest second in the window. The window covers the getDurationSeconds() seconds ending with this one
+     */
+    public long getNewestSecond() {
+        return newestSecond;
+    }
+
+    public long getOldestSecond() {
+        return newestSecond - slots.length + 1;
+    }
+
+    /**
+     * Returns the oldest Frame in the window
+     */
+    public Frame getFirst() {
+        Iterator<Frame> iterator = iterator();
+        if (!iterator.hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return iterator.next();
+    }
+
+    /**
+     * Returns the newest Frame in the window
+     */
+    public Frame getLast() {
+        if (frameCount == 0) {
+            throw new NoSuchElementException();
+        }
+        return slots[indexOf(newestSecond)];
+    }
+
+    /**
+     * Iterates the non-empty seconds of the window, oldest first
+     */
+    @Override
+    public Iterator<Frame> iterator() {
+        return new Iterator<Frame>() {
+            private long second = getOldestSecond();
+            private Frame next = advance();
+
+            private Frame advance() {
+                while (frameCount > 0 && second <= newestSecond) {
+                    Frame frame = slots[indexOf(second++)];
+                    if (frame != null) {
+                        return frame;
+                    }
+                }
+                return null;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public Frame next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                Frame frame = next;
+                next = advance();
+                return frame;
+            }
+        };
+    }
+
+    private int indexOf(long epochSecond) {
+        return (int) Math.floorMod(epochSecond, (long) slots.length);
+    }
+
+    @Override
+    public String toString() {
+        return "FrameWindow{" +
+                "newestSecond=" + newestSecond +
+                ", frameCount=" + frameCount +
+                '}';
+    }
+}
@@ -0,0 +1,83 @@
+package com.vgrazi.monitor.eventprocessor.util;
+
+/**
+ * HyperLogLog distinct count sketch (Flajolet et al.) with 2^PRECISION one byte registers, ie 1KB whatever the number
+ * of distinct values. The estimate has a standard error of 1.04 / sqrt(2^PRECISION), about 3.3%.
+ * Sketches are merged by taking the maximum of each register.
+ * Not thread safe.
+ */
+public class HyperLogLog {
+    public static final int PRECISION = 10;
+    public static final int REGISTER_COUNT = 1 << PRECISION;
+    public static final double STANDARD_ERROR = 1.04 / Math.sqrt(REGISTER_COUNT);
+
+    private final byte[] registers = new byte[REGISTER_COUNT];
+
+    public void add(String value) {
+        long hash = hash(value);
+        int register = (int) (hash >>> (64 - PRECISION));
+        // the position of the first 1 bit in the remaining bits. The sentinel bit caps it at 64 - PRECISION + 1
+        int rho = Long.numberOfLeadingZeros((hash << PRECISION) | (1L << (PRECISION - 1))) + 1;
+        if (rho > registers[register]) {
+            registers[register] = (byte) rho;
+        }
+    }
+
+    public void merge(HyperLogLog other) {
+        for (int i = 0; i < REGISTER_COUNT; i++) {
+            if (other.registers[i] > registers[i]) {
+                registers[i] = other.registers[i];
+            }
+        }
+    }
+
+    /**
+     * Returns the value of the register, ie the highest rho seen for it, 0 if none
+     */
+    public int getRegister(int register) {
+        return registers[register];
+    }
+
+    public long estimate() {
+        return estimate(registers);
+    }
+
+    /**
+     * Returns the distinct count estimate for the register values, applying the linear counting correction for small
+     * counts
+     */
+    static long estimate(byte[] registers) {
+        double sum = 0;
+        int zeros = 0;
+        for (byte register : registers) {
+            sum += 1.0 / (1L << register);
+            if (register == 0) {
+                zeros++;
+            }
+        }
+        int m = registers.length;
+        double alpha = 0.7213 / (1 + 1.079 / m);
+        double estimate = alpha * m * m / sum;
+        if (estimate <= 2.5 * m && zeros > 0) {
+            estimate = m * Math.log(m / (double) zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    /**
+     * 64 bit FNV-1a over the chars, finished with the MurmurHash3 mix so every bit depends on every char
+     */
+    private static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -1,16 +1,17 @@
 package com.vgrazi.monitor.eventprocessor.util;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.vgrazi.monitor.eventprocessor.domain.Scorecard;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 
 public class IOUtils {
     private final static Logger logger = LoggerFactory.getLogger(IOUtils.class);
+    public static final String TEMP_SUFFIX = ".tmp";
 
     /**
      * Creates the directory tree if required
@@ -24,9 +25,18 @@ public class IOUtils {
         }
     }
 
+    /**
+     * Reads the scorecard, whichever codec wrote it
+     */
     public static Scorecard readScorecardFile(Path scorecardFile) throws IOException {
-        ObjectMapper mapper = new ObjectMapper();
-        Scorecard scorecard = mapper.readValue(scorecardFile.toFile(), Scorecard.class);
-        return scorecard;
+        byte[] bytes = Files.readAllBytes(scorecardFile);
+        return ScorecardCodecs.detect(bytes).decode(bytes);
+    }
+
+    /**
+     * Returns true for the temp files that scorecards are written to, before they are renamed into place
+     */
+    public static boolean isTempScorecardFile(Path file) {
+        return file.getFileName().toString().endsWith(TEMP_SUFFIX);
     }
 }
@@ -0,0 +1,71 @@
+package com.vgrazi.monitor.eventprocessor.util;
+
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the records that were read but never made it into a Frame, so the Scorecard can report them
+ */
+@Service
+public class IngestMetrics {
+    private final AtomicLong droppedOldest = new AtomicLong();
+    private final AtomicLong droppedNewest = new AtomicLong();
+    private final AtomicLong droppedMalformed = new AtomicLong();
+    private final AtomicLong sampledOut = new AtomicLong();
+    private volatile int samplingInterval = 1;
+
+    public void recordDroppedOldest() {
+        droppedOldest.incrementAndGet();
+    }
+
+    public void recordDroppedNewest() {
+        droppedNewest.incrementAndGet();
+    }
+
+    public void recordDroppedMalformed() {
+        droppedMalformed.incrementAndGet();
+    }
+
+    public void recordSampledOut() {
+        sampledOut.incrementAndGet();
+    }
+
+    public void setSamplingInterval(int samplingInterval) {
+        this.samplingInterval = samplingInterval;
+    }
+
+    /**
+     * Returns N, where the AdaptiveSampler is currently admitting 1 in N records. 1 means no sampling
+     */
+    public int getSamplingInterval() {
+        return samplingInterval;
+    }
+
+    /**
+     * Returns the number of records the AdaptiveSampler has left out since startup. These are accounted for by the
+     * weights of the admitted records, so unlike shed records they are not lost from the hit counts
+     */
+    public long getSampledOut() {
+        return sampledOut.get();
+    }
+
+    public long getDroppedOldest() {
+        return droppedOldest.get();
+    }
+
+    public long getDroppedNewest() {
+        return droppedNewest.get();
+    }
+
+    public long getDroppedMalformed() {
+        return droppedMalformed.get();
+    }
+
+    /**
+     * Returns the total number of records shed since startup
+     */
+    public long getShedCount() {
+        return droppedOldest.get() + droppedNewest.get() + droppedMalformed.get();
+    }
+}
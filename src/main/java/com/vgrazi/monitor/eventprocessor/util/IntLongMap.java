@@ -0,0 +1,176 @@
+package com.vgrazi.monitor.eventprocessor.util;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A map from non-negative int keys (such as Dictionary ids) to primitive long counts, using open addressing with
+ * linear probing, so counting never boxes or allocates once the table is large enough.
+ * A count that drops to 0 is removed, so the map only holds keys with a non-zero count.
+ * Not thread safe.
+ */
+public class IntLongMap {
+    private static final int EMPTY = -1;
+
+    private int[] keys;
+    private long[] values;
+    private int mask;
+    private int size;
+
+    @FunctionalInterface
+    public interface IntLongConsumer {
+        void accept(int key, long value);
+    }
+
+    public IntLongMap() {
+        this(8);
+    }
+
+    /**
+     * @param expectedSize the number of keys to size the table for
+     */
+    public IntLongMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize * 2) - 1) << 1;
+        keys = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+        values = new long[capacity];
+        mask = capacity - 1;
+    }
+
+    /**
+     * Returns the count for the key, or 0 if it has none
+     */
+    public long get(int key) {
+        for (int i = index(key); keys[i] != EMPTY; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return values[i];
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Adds delta to the count for the key
+     */
+    public void add(int key, long delta) {
+        int i = index(key);
+        for (; keys[i] != EMPTY; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                values[i] += delta;
+                if (values[i] == 0) {
+                    removeAt(i);
+                }
+                return;
+            }
+        }
+        if (delta == 0) {
+            return;
+        }
+        keys[i] = key;
+        values[i] = delta;
+        if (++size * 2 > keys.length) {
+            grow();
+        }
+    }
+
+    /**
+     * Adds all of the other map's counts to this one
+     */
+    public void addAll(IntLongMap other) {
+        for (int i = 0; i < other.keys.length; i++) {
+            if (other.keys[i] != EMPTY) {
+                add(other.keys[i], other.values[i]);
+            }
+        }
+    }
+
+    /**
+     * Subtracts all of the other map's counts from this one
+     */
+    public void subtractAll(IntLongMap other) {
+        for (int i = 0; i < other.keys.length; i++) {
+            if (other.keys[i] != EMPTY) {
+                add(other.keys[i], -other.values[i]);
+            }
+        }
+    }
+
+    public void forEach(IntLongConsumer action) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != EMPTY) {
+                action.accept(keys[i], values[i]);
+            }
+        }
+    }
+
+    /**
+     * Empties the map, keeping its capacity
+     */
+    public void clear() {
+        if (size > 0) {
+            Arrays.fill(keys, EMPTY);
+            Arrays.fill(values, 0);
+            size = 0;
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Creates the boxed form of this map, keyed by the values of the ids in the dictionary
+     */
+    public Map<String, Long> toMap(Dictionary dictionary) {
+        Map<String, Long> map = new HashMap<>(size * 2);
+        forEach((key, value) -> map.put(dictionary.valueOf(key), value));
+        return map;
+    }
+
+    /**
+     * Removes the entry in slot, shifting back any later entries of the probe sequence, so lookups never hit a hole
+     */
+    private void removeAt(int slot) {
+        size--;
+        int hole = slot;
+        for (int i = (slot + 1) & mask; keys[i] != EMPTY; i = (i + 1) & mask) {
+            // the entry at i can fill the hole if the hole lies between its home slot and i
+            if (((i - index(keys[i])) & mask) >= ((i - hole) & mask)) {
+                keys[hole] = keys[i];
+                values[hole] = values[i];
+                hole = i;
+            }
+        }
+        keys[hole] = EMPTY;
+        values[hole] = 0;
+    }
+
+    private void grow() {
+        int[] oldKeys = keys;
+        long[] oldValues = values;
+        keys = new int[oldKeys.length * 2];
+        Arrays.fill(keys, EMPTY);
+        values = new long[oldKeys.length * 2];
+        mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int j = index(oldKeys[i]);
+                while (keys[j] != EMPTY) {
+                    j = (j + 1) & mask;
+                }
+                keys[j] = oldKeys[i];
+                values[j] = oldValues[i];
+            }
+        }
+    }
+
+    private int index(int key) {
+        int hash = key * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+}
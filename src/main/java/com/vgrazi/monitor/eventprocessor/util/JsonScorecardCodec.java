@@ -0,0 +1,25 @@
+package com.vgrazi.monitor.eventprocessor.util;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.vgrazi.monitor.eventprocessor.domain.Scorecard;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Encodes Scorecards as JSON, as readable as they come. The ObjectMapper is thread safe once configured, so one instance
+ * serves every scorecard
+ */
+public class JsonScorecardCodec implements ScorecardCodec {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Override
+    public void encode(Scorecard scorecard, OutputStream out) throws IOException {
+        MAPPER.writeValue(out, scorecard);
+    }
+
+    @Override
+    public Scorecard decode(byte[] bytes) throws IOException {
+        return MAPPER.readValue(bytes, Scorecard.class);
+    }
+}
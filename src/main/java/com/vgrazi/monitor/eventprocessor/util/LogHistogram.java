@@ -0,0 +1,106 @@
+package com.vgrazi.monitor.eventprocessor.util;
+
+import java.util.Arrays;
+
+/**
+ * A histogram of non-negative long values in logarithmic buckets, in the style of HdrHistogram. Values below 32 have
+ * a bucket each; above that, every power of 2 is split into 16 buckets, so a value is only ever reported to within
+ * 1/16 (about 6%) of its true value, and all of long fits in BUCKET_COUNT buckets.
+ * <p>
+ * Counts can be added and subtracted by bucket, so histograms are mergeable, and a histogram of a sliding window is
+ * kept by adding each Frame's buckets as it enters and subtracting them as it leaves. The bucket array only grows to
+ * the highest bucket used, and recording never allocates after that.
+ * Not thread safe.
+ */
+public class LogHistogram {
+    public static final int BUCKET_BITS = 10;
+    public static final int BUCKET_COUNT = 1 << BUCKET_BITS;
+    // values below 2 * SUB_BUCKETS have a bucket each
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    private long[] counts = new long[SUB_BUCKETS];
+    private long totalCount;
+
+    /**
+     * Returns the bucket of the value
+     */
+    public static int bucketOf(long value) {
+        if (value < 2 * SUB_BUCKETS) {
+            return (int) Math.max(0, value);
+        }
+        // keep the top 5 bits of the value, ie 16 - 31 shifted left by shift
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift << SUB_BUCKET_BITS) + (int) (value >>> shift);
+    }
+
+    /**
+     * Returns the lowest value that falls in the bucket
+     */
+    public static long lowestValue(int bucket) {
+        if (bucket < 2 * SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = (bucket >>> SUB_BUCKET_BITS) - 1;
+        long mantissa = (bucket & (SUB_BUCKETS - 1)) + SUB_BUCKETS;
+        return mantissa << shift;
+    }
+
+    /**
+     * Returns the highest value that falls in the bucket
+     */
+    public static long highestValue(int bucket) {
+        long next = lowestValue(bucket + 1);
+        // the top buckets reach past Long.MAX_VALUE
+        return next <= 0 ? Long.MAX_VALUE : next - 1;
+    }
+
+    /**
+     * Adds count (which may be negative, to take values back out) to the bucket
+     */
+    public void add(int bucket, long count) {
+        if (bucket >= counts.length) {
+            counts = Arrays.copyOf(counts, Math.min(BUCKET_COUNT, Integer.highestOneBit(bucket) << 1));
+        }
+        counts[bucket] += count;
+        totalCount += count;
+    }
+
+    public void record(long value, long count) {
+        add(bucketOf(value), count);
+    }
+
+    /**
+     * Adds all of the other histogram's counts to this one
+     */
+    public void add(LogHistogram other) {
+        for (int bucket = other.counts.length - 1; bucket >= 0; bucket--) {
+            if (other.counts[bucket] != 0) {
+                add(bucket, other.counts[bucket]);
+            }
+        }
+    }
+
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+    /**
+     * Returns the value at or below which percentile percent of the counted values fall, as the highest value of that
+     * bucket, or 0 if the histogram is empty
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (totalCount <= 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * totalCount));
+        long cumulative = 0;
+        for (int bucket = 0; bucket < counts.length; bucket++) {
+            cumulative += counts[bucket];
+            if (cumulative >= rank) {
+                return highestValue(bucket);
+            }
+        }
+        return highestValue(counts.length - 1);
+    }
+}
@@ -0,0 +1,75 @@
+package com.vgrazi.monitor.eventprocessor.util;
+
+import sun.misc.Unsafe;
+
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+
+/**
+ * Ordered int and long accesses to a memory mapped buffer that is shared with other threads or processes.
+ * <p>
+ * The Java memory model only orders accesses to Java fields, and Java 8 has no public fence (VarHandle's fences arrive
+ * in Java 9). A volatile field access is no substitute: the JMM only orders it against accesses to other variables
+ * when another thread reads the same field, which another process never does. So the fences here are Unsafe's, which
+ * HotSpot compiles to fences that neither the JIT nor the CPU moves memory accesses across, mapped memory included.
+ * They are confined to this class. Replace them with VarHandle's fences of the same names once on Java 9+.
+ * <p>
+ * The accesses must be naturally aligned, so that they are never torn
+ */
+final class MappedOrdering {
+    private static final Unsafe UNSAFE = getUnsafe();
+
+    private MappedOrdering() {
+    }
+
+    private static Unsafe getUnsafe() {
+        try {
+            Field field = Unsafe.class.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            return (Unsafe) field.get(null);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * No memory access before the fence is moved after it, and none after it is moved before it
+     */
+    static void fullFence() {
+        UNSAFE.fullFence();
+    }
+
+    /**
+     * Reads the long before any of the accesses that follow
+     */
+    static long getLongAcquire(ByteBuffer buffer, int index) {
+        long value = buffer.getLong(index);
+        UNSAFE.loadFence();
+        return value;
+    }
+
+    /**
+     * Writes the long after all of the accesses that came before
+     */
+    static void putLongRelease(ByteBuffer buffer, int index, long value) {
+        UNSAFE.storeFence();
+        buffer.putLong(index, value);
+    }
+
+    /**
+     * Reads the int before any of the accesses that follow
+     */
+    static int getIntAcquire(ByteBuffer buffer, int index) {
+        int value = buffer.getInt(index);
+        UNSAFE.loadFence();
+        return value;
+    }
+
+    /**
+     * Writes the int after all of the accesses that came before
+     */
+    static void putIntRelease(ByteBuffer buffer, int index, int value) {
+        UNSAFE.storeFence();
+        buffer.putInt(index, value);
+    }
+}
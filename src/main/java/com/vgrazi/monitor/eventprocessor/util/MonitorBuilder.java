@@ -1,6 +1,8 @@
 package com.vgrazi.monitor.eventprocessor.util;
 
-import com.vgrazi.monitor.eventprocessor.MonitorUI;
+import com.vgrazi.monitor.eventprocessor.domain.DistinctCount;
+import com.vgrazi.monitor.eventprocessor.domain.HeavyHitters;
+import com.vgrazi.monitor.eventprocessor.domain.ResponseSizes;
 import com.vgrazi.monitor.eventprocessor.domain.Scorecard;
 
 import java.awt.*;
@@ -18,6 +20,8 @@ public class MonitorBuilder {
     private static final int axisXPos = 20;
     private static final int axisYPos = 100;
     private static final int xHistoryPos = 400;
+    // the number of the latest history messages shown
+    public static final int HISTORY_LINES = 10;
     private static int alertYPos = 20;
     private static int xPixelDelta = 20;
     private static int hitCountYPos = 30;
@@ -35,7 +39,7 @@ public class MonitorBuilder {
         }
     }
     public static int startSeconds = LocalDateTime.now().get(ChronoField.SECOND_OF_DAY);
-    public static void renderBarGraph(Graphics graphics, int screenWidth, int screenHeight, int[] secs, List<MonitorUI.SecsToHits> secsToHits, int alertThreshold) {
+    public static void renderBarGraph(Graphics graphics, int screenWidth, int screenHeight, int[] secs, long startSecond, int alertThreshold) {
         int howManyTicksFitOnScreen = (screenWidth - xMargin - 50) / xPixelDelta;
         int start = 0;
         if (secs.length >= howManyTicksFitOnScreen) {
@@ -66,7 +70,7 @@ public class MonitorBuilder {
                 // now render the x axis labels, alternate the labels along 2 rows, so there is room for everything. We use seconds since
                 // start, so that the any given time will always display on the same row,
                 int y = screenHeight - axisYPos + 20;
-                LocalDateTime dateTime = LocalDateTime.ofEpochSecond(secsToHits.get(0).getSecs() + i, 0, ZoneOffset.UTC);
+                LocalDateTime dateTime = LocalDateTime.ofEpochSecond(startSecond + i, 0, ZoneOffset.UTC);
                 int seconds = dateTime.get(ChronoField.SECOND_OF_DAY);
                 int deltaSeconds = seconds - startSeconds;
                 if(deltaSeconds % 3 == 1) {
@@ -109,7 +113,7 @@ public class MonitorBuilder {
             yPos+= fontHeight;
             graphics.drawString(message, xHistoryPos, yPos);
             index++;
-            if(index >= 10) {
+            if(index >= HISTORY_LINES) {
                 break;
             }
         }
@@ -130,6 +134,122 @@ public class MonitorBuilder {
         }
     }
 
+    /**
+     * Renders the top hosts and callers below the hits report, and warns if the section counts are estimates
+     */
+    public static void renderHeavyHitters(Graphics graphics, Scorecard scorecard) {
+        HeavyHitters topSections = scorecard.getTopSections();
+        if (topSections == null) {
+            return;
+        }
+        FontMetrics fm = graphics.getFontMetrics();
+        int fontHeight = fm.getHeight();
+        // below the title and 10 lines of the hits report
+        int yPos = hitCountYPos + 12 * fontHeight;
+        if (topSections.getErrorBound() > 0) {
+            graphics.setColor(Color.red);
+            graphics.drawString(String.format("Section hit-counts are estimates, up to %d too high", topSections.getErrorBound()), xMargin, yPos);
+        }
+        yPos += 2 * fontHeight;
+        renderTopValues(graphics, "Top hosts", scorecard.getTopHosts(), xMargin, yPos);
+        renderTopValues(graphics, "Top callers", scorecard.getTopCallers(), xHistoryPos, yPos);
+    }
+
+    private static void renderTopValues(Graphics graphics, String title, HeavyHitters heavyHitters, int xPos, int yPos) {
+        if (heavyHitters == null) {
+            return;
+        }
+        graphics.setColor(Color.blue);
+        int fontHeight = graphics.getFontMetrics().getHeight();
+        String bound = heavyHitters.getErrorBound() > 0 ? String.format(" (up to %d too high)", heavyHitters.getErrorBound()) : "";
+        graphics.drawString(title + bound, xPos, yPos);
+        Iterator<Map.Entry<String, Long>> iterator = heavyHitters.getCounts().entrySet().iterator();
+        for (int i = 0; iterator.hasNext() && i < 5; i++) {
+            yPos += fontHeight;
+            Map.Entry<String, Long> entry = iterator.next();
+            graphics.drawString(String.format("%s: %d", entry.getKey(), entry.getValue()), xPos, yPos);
+        }
+    }
+
+    /**
+     * Renders the response size percentiles and bandwidth over the window, for all sections and for the top sections
+     * of the hits report, below the heavy hitters
+     */
+    public static void renderResponseSizes(Graphics graphics, LinkedHashMap<String, Long> hitsReportSorted, Scorecard scorecard) {
+        ResponseSizes all = scorecard.getAllResponseSizes();
+        if (all == null) {
+            return;
+        }
+        graphics.setColor(Color.blue);
+        int fontHeight = graphics.getFontMetrics().getHeight();
+        int yPos = hitCountYPos + 21 * fontHeight;
+        graphics.drawString("Response sizes over the window", xMargin, yPos);
+        yPos += fontHeight;
+        graphics.drawString("all sections: " + formatResponseSizes(all), xMargin, yPos);
+        Map<String, ResponseSizes> responseSizes = scorecard.getResponseSizes();
+        Iterator<String> iterator = hitsReportSorted.keySet().iterator();
+        for (int i = 0; iterator.hasNext() && i < 5 && responseSizes != null; i++) {
+            String section = iterator.next();
+            ResponseSizes sizes = responseSizes.get(section);
+            if (sizes != null) {
+                yPos += fontHeight;
+                graphics.drawString(section + ": " + formatResponseSizes(sizes), xMargin, yPos);
+            }
+        }
+    }
+
+    /**
+     * Renders the estimated distinct hosts, callers etc, below the response sizes
+     */
+    public static void renderDistinctCounts(Graphics graphics, Scorecard scorecard) {
+        Map<String, DistinctCount> distinctCounts = scorecard.getDistinctCounts();
+        if (distinctCounts == null) {
+            return;
+        }
+        graphics.setColor(Color.blue);
+        int fontHeight = graphics.getFontMetrics().getHeight();
+        int yPos = hitCountYPos + 29 * fontHeight;
+        for (Map.Entry<String, DistinctCount> entry : distinctCounts.entrySet()) {
+            DistinctCount count = entry.getValue();
+            graphics.drawString(String.format("Distinct %ss: ~%d in the last %d seconds, ~%d in the last %d seconds (+/-%.1f%%)",
+                    entry.getKey(), count.getRecent(), count.getRecentSeconds(), count.getWindow(), count.getWindowSeconds(),
+                    count.getStandardError() * 100), xMargin, yPos);
+            yPos += fontHeight;
+        }
+    }
+
+    private static String formatResponseSizes(ResponseSizes sizes) {
+        return String.format("p50 %s  p95 %s  p99 %s  %s/sec", formatBytes(sizes.getP50()), formatBytes(sizes.getP95()),
+                formatBytes(sizes.getP99()), formatBytes(sizes.getBytesPerSecond()));
+    }
+
+    private static String formatBytes(long bytes) {
+        if (bytes < 1024) {
+            return bytes + "B";
+        }
+        if (bytes < 1024 * 1024) {
+            return String.format("%.1fKB", bytes / 1024.0);
+        }
+        return String.format("%.1fMB", bytes / (1024.0 * 1024));
+    }
+
+    /**
+     * Warns (below the x axis labels) that the figures are estimates because records are being sampled, and reports
+     * any records that were shed
+     */
+    public static void renderIngestWarnings(Graphics graphics, Scorecard scorecard, int screenHeight) {
+        graphics.setColor(Color.red);
+        graphics.setFont(font);
+        int yPos = screenHeight - axisYPos + 70;
+        if (scorecard.getSamplingInterval() > 1) {
+            graphics.drawString(String.format("Overloaded: sampling 1 in %d records, hit counts are estimates", scorecard.getSamplingInterval()), xMargin, yPos);
+            yPos += graphics.getFontMetrics().getHeight();
+        }
+        if (scorecard.getShedRecords() > 0) {
+            graphics.drawString(String.format("%d records shed since startup", scorecard.getShedRecords()), xMargin, yPos);
+        }
+    }
+
     public static void clearBackground(Graphics graphics, int screenWidth, int screenHeight) {
         graphics.setColor(Color.WHITE);
         graphics.fillRect(0, 0, screenWidth, screenHeight);
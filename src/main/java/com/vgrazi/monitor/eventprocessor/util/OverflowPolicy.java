@@ -0,0 +1,30 @@
+package com.vgrazi.monitor.eventprocessor.util;
+
+/**
+ * What a SheddingQueue does with a new element when it is full
+ */
+public enum OverflowPolicy {
+    /**
+     * wait for room, ie apply backpressure to the producer
+     */
+    BLOCK,
+    /**
+     * discard the oldest queued element to make room
+     */
+    DROP_OLDEST,
+    /**
+     * discard the new element
+     */
+    DROP_NEWEST,
+    /**
+     * discard the new element if it is malformed, otherwise wait for room
+     */
+    DROP_MALFORMED;
+
+    /**
+     * Converts a property value such as drop-oldest to its policy
+     */
+    public static OverflowPolicy fromProperty(String value) {
+        return valueOf(value.trim().toUpperCase().replace('-', '_'));
+    }
+}
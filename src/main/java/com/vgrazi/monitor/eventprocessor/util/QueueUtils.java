@@ -0,0 +1,50 @@
+package com.vgrazi.monitor.eventprocessor.util;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Batch hand off between pipeline stages, so that each element does not pay the full wakeup and hand off cost
+ */
+public class QueueUtils {
+    /**
+     * Waits for the next element, then drains whatever else is pending, up to maxBatchSize elements. If the batch is not
+     * full, keeps collecting for up to maxDelayMillis, trading a little latency for larger batches under load
+     *
+     * @param batch the (empty) list to fill
+     */
+    public static <E> void drainBatch(BlockingQueue<E> queue, List<E> batch, int maxBatchSize, long maxDelayMillis) throws InterruptedException {
+        batch.add(queue.take());
+        queue.drainTo(batch, maxBatchSize - 1);
+        if (maxDelayMillis > 0) {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+            while (batch.size() < maxBatchSize) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    break;
+                }
+                E element = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                if (element == null) {
+                    break;
+                }
+                batch.add(element);
+                queue.drainTo(batch, maxBatchSize - batch.size());
+            }
+        }
+    }
+
+    /**
+     * Publishes the batch to the queue, in a single claim if the queue is a RingBuffer
+     */
+    public static <E> void putAll(BlockingQueue<E> queue, List<E> batch) throws InterruptedException {
+        if (queue instanceof RingBuffer) {
+            ((RingBuffer<E>) queue).putAll(batch);
+        }
+        else {
+            for (E element : batch) {
+                queue.put(element);
+            }
+        }
+    }
+}
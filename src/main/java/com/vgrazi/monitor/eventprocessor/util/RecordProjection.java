@@ -0,0 +1,36 @@
+package com.vgrazi.monitor.eventprocessor.util;
+
+import com.vgrazi.monitor.eventprocessor.domain.Record;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Works out which Record fields the pipeline actually consumes, given the configuration, so that in
+ * parse-mode=projection the FileReader only decodes those fields up front
+ */
+@Service
+public class RecordProjection {
+
+    @Value("${use-record-times}")
+    private boolean useRecordTimes;
+
+    @Autowired
+    private StatsCruncher statsCruncher;
+
+    /**
+     * Returns the fields read by the RecordProcessor and by the enabled aggregations
+     */
+    public Set<Record.Field> getEagerFields() {
+        Set<Record.Field> fields = EnumSet.noneOf(Record.Field.class);
+        if (useRecordTimes) {
+            // RecordProcessor forms the Frames from the record times
+            fields.add(Record.Field.RECORD_TIME);
+        }
+        fields.addAll(statsCruncher.getConsumedFields());
+        return fields;
+    }
+}
@@ -0,0 +1,92 @@
+package com.vgrazi.monitor.eventprocessor.util;
+
+import com.vgrazi.monitor.eventprocessor.domain.Frame;
+import com.vgrazi.monitor.eventprocessor.domain.ResponseSizes;
+
+import java.util.Arrays;
+
+/**
+ * Keeps a LogHistogram of response sizes for each section, and for all sections together, over the whole window.
+ * Each Frame's sparse per-section buckets are added as it enters the window, and subtracted as it is evicted, so the
+ * memory per section is a fixed size bucket array, whatever the traffic.
+ */
+public class ResponseSizeHistograms implements WindowListener {
+    private final int windowSeconds;
+    // indexed by section id
+    private LogHistogram[] sectionHistograms = new LogHistogram[64];
+    private final IntLongMap sectionBytes = new IntLongMap();
+    private final LogHistogram allHistogram = new LogHistogram();
+    private long allBytes;
+    private boolean empty = true;
+    private long firstSecond;
+    private long newestSecond;
+
+    public ResponseSizeHistograms(int windowSeconds) {
+        this.windowSeconds = windowSeconds;
+    }
+
+    @Override
+    public void frameAdded(Frame frame) {
+        if (empty) {
+            empty = false;
+            firstSecond = frame.getStartTime();
+        }
+        firstSecond = Math.min(firstSecond, frame.getStartTime());
+        newestSecond = Math.max(newestSecond, frame.getStartTime());
+        apply(frame, 1);
+    }
+
+    @Override
+    public void frameEvicted(Frame frame) {
+        apply(frame, -1);
+    }
+
+    private void apply(Frame frame, int sign) {
+        frame.getSectionByteBuckets().forEach((key, count) -> {
+            int sectionId = key >>> LogHistogram.BUCKET_BITS;
+            int bucket = key & (LogHistogram.BUCKET_COUNT - 1);
+            histogram(sectionId).add(bucket, sign * count);
+            allHistogram.add(bucket, sign * count);
+        });
+        frame.getSectionBytes().forEach((sectionId, bytes) -> {
+            sectionBytes.add(sectionId, sign * bytes);
+            allBytes += sign * bytes;
+        });
+    }
+
+    private LogHistogram histogram(int sectionId) {
+        if (sectionId >= sectionHistograms.length) {
+            sectionHistograms = Arrays.copyOf(sectionHistograms, Math.max(sectionId + 1, sectionHistograms.length * 2));
+        }
+        LogHistogram histogram = sectionHistograms[sectionId];
+        if (histogram == null) {
+            histogram = new LogHistogram();
+            sectionHistograms[sectionId] = histogram;
+        }
+        return histogram;
+    }
+
+    /**
+     * Returns the response sizes of the section over the window, or null if it has no responses in the window
+     */
+    public ResponseSizes getResponseSizes(int sectionId) {
+        if (sectionId < 0 || sectionId >= sectionHistograms.length || sectionHistograms[sectionId] == null
+                || sectionHistograms[sectionId].getTotalCount() <= 0) {
+            return null;
+        }
+        return toResponseSizes(sectionHistograms[sectionId], sectionBytes.get(sectionId));
+    }
+
+    /**
+     * Returns the response sizes of all sections over the window
+     */
+    public ResponseSizes getAllResponseSizes() {
+        return toResponseSizes(allHistogram, allBytes);
+    }
+
+    private ResponseSizes toResponseSizes(LogHistogram histogram, long bytes) {
+        long seconds = empty ? 1 : Math.min(windowSeconds, newestSecond - firstSecond + 1);
+        return new ResponseSizes(histogram.getValueAtPercentile(50), histogram.getValueAtPercentile(95),
+                histogram.getValueAtPercentile(99), bytes / seconds);
+    }
+}
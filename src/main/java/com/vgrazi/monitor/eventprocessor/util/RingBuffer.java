@@ -0,0 +1,271 @@
+package com.vgrazi.monitor.eventprocessor.util;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A bounded, preallocated ring of slots used to hand elements from one pipeline stage to the next.
+ * Unlike a LinkedTransferQueue, nothing is allocated per element; the slots are reused as the sequences wrap around.
+ * <p>
+ * Any number of threads may produce, but only one thread may consume (poll, take, drainTo). Producers claim a range of
+ * sequences, fill the slots, then publish them. The consumer drains every contiguous published slot in one go, and
+ * releases them with a single write.
+ * <p>
+ * The ring implements BlockingQueue so it can be dropped in between any two stages. When it is full (producers) or
+ * empty (consumer) the caller waits according to the WaitStrategy.
+ */
+public class RingBuffer<E> extends AbstractQueue<E> implements BlockingQueue<E> {
+    private final Object[] slots;
+    // published.get(i) holds the sequence last published into slot i
+    private final AtomicLongArray published;
+    private final int mask;
+    private final WaitStrategy waitStrategy;
+    // the highest sequence claimed by a producer
+    private final AtomicLong claimed = new AtomicLong(-1);
+    // the highest sequence taken by the consumer
+    private final AtomicLong consumed = new AtomicLong(-1);
+
+    /**
+     * @param capacity the number of slots, rounded up to a power of 2
+     */
+    public RingBuffer(int capacity, WaitStrategy waitStrategy) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        slots = new Object[size];
+        published = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            published.set(i, -1);
+        }
+        mask = size - 1;
+        this.waitStrategy = waitStrategy;
+    }
+
+    public int capacity() {
+        return slots.length;
+    }
+
+    /**
+     * Claims count consecutive slots, if there is room for all of them
+     *
+     * @return the first claimed sequence, or -1 if the ring does not have count free slots
+     */
+    public long tryClaim(int count) {
+        while (true) {
+            long current = claimed.get();
+            long last = current + count;
+            if (last - consumed.get() > slots.length) {
+                return -1;
+            }
+            if (claimed.compareAndSet(current, last)) {
+                return current + 1;
+            }
+        }
+    }
+
+    /**
+     * Claims count consecutive slots, waiting for the consumer to make room if necessary
+     *
+     * @return the first claimed sequence
+     */
+    public long claim(int count) throws InterruptedException {
+        if (count > slots.length) {
+            throw new IllegalArgumentException("Can't claim " + count + " slots from a ring of " + slots.length);
+        }
+        long sequence;
+        int idleCount = 0;
+        while ((sequence = tryClaim(count)) < 0) {
+            idle(idleCount++);
+        }
+        return sequence;
+    }
+
+    /**
+     * Fills a claimed slot. The element is not visible to the consumer until it is published
+     */
+    public void set(long sequence, E element) {
+        slots[(int) sequence & mask] = element;
+    }
+
+    /**
+     * Makes the claimed slots from first to last (inclusive) visible to the consumer
+     */
+    public void publish(long first, long last) {
+        for (long sequence = first; sequence <= last; sequence++) {
+            published.lazySet((int) sequence & mask, sequence);
+        }
+    }
+
+    /**
+     * Claims, fills and publishes all of the elements as one batch, waiting for room if necessary
+     */
+    public void putAll(List<? extends E> elements) throws InterruptedException {
+        int offset = 0;
+        while (offset < elements.size()) {
+            int count = Math.min(elements.size() - offset, slots.length);
+            long first = claim(count);
+            for (int i = 0; i < count; i++) {
+                set(first + i, elements.get(offset + i));
+            }
+            publish(first, first + count - 1);
+            offset += count;
+        }
+    }
+
+    @Override
+    public boolean offer(E element) {
+        long sequence = tryClaim(1);
+        if (sequence < 0) {
+            return false;
+        }
+        set(sequence, element);
+        publish(sequence, sequence);
+        return true;
+    }
+
+    @Override
+    public void put(E element) throws InterruptedException {
+        long sequence = claim(1);
+        set(sequence, element);
+        publish(sequence, sequence);
+    }
+
+    @Override
+    public boolean offer(E element, long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        int idleCount = 0;
+        while (!offer(element)) {
+            if (System.nanoTime() >= deadline) {
+                return false;
+            }
+            idle(idleCount++);
+        }
+        return true;
+    }
+
+    @Override
+    public E poll() {
+        long next = consumed.get() + 1;
+        int index = (int) next & mask;
+        if (published.get(index) != next) {
+            return null;
+        }
+        @SuppressWarnings("unchecked")
+        E element = (E) slots[index];
+        slots[index] = null;
+        consumed.lazySet(next);
+        return element;
+    }
+
+    @Override
+    public E take() throws InterruptedException {
+        E element;
+        int idleCount = 0;
+        while ((element = poll()) == null) {
+            idle(idleCount++);
+        }
+        return element;
+    }
+
+    @Override
+    public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        E element;
+        int idleCount = 0;
+        while ((element = poll()) == null) {
+            if (System.nanoTime() >= deadline) {
+                return null;
+            }
+            idle(idleCount++);
+        }
+        return element;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E peek() {
+        long next = consumed.get() + 1;
+        int index = (int) next & mask;
+        if (published.get(index) != next) {
+            return null;
+        }
+        return (E) slots[index];
+    }
+
+    @Override
+    public int drainTo(Collection<? super E> collection) {
+        return drainTo(collection, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Moves up to maxElements contiguous published elements into the collection, and releases their slots with a single
+     * write
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public int drainTo(Collection<? super E> collection, int maxElements) {
+        long first = consumed.get() + 1;
+        long sequence = first;
+        while (sequence - first < maxElements) {
+            int index = (int) sequence & mask;
+            if (published.get(index) != sequence) {
+                break;
+            }
+            collection.add((E) slots[index]);
+            slots[index] = null;
+            sequence++;
+        }
+        int count = (int) (sequence - first);
+        if (count > 0) {
+            consumed.lazySet(sequence - 1);
+        }
+        return count;
+    }
+
+    @Override
+    public int size() {
+        long size = claimed.get() - consumed.get();
+        return (int) Math.max(0, Math.min(size, slots.length));
+    }
+
+    @Override
+    public int remainingCapacity() {
+        return slots.length - size();
+    }
+
+    /**
+     * Returns an iterator over a snapshot of the published elements. Only the consumer may remove elements, so the
+     * iterator does not support remove
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public Iterator<E> iterator() {
+        List<E> snapshot = new ArrayList<>();
+        long first = consumed.get() + 1;
+        for (long sequence = first; sequence - first < slots.length; sequence++) {
+            int index = (int) sequence & mask;
+            Object element = slots[index];
+            if (published.get(index) != sequence || element == null) {
+                break;
+            }
+            snapshot.add((E) element);
+        }
+        return Collections.unmodifiableList(snapshot).iterator();
+    }
+
+    private void idle(int idleCount) throws InterruptedException {
+        try {
+            waitStrategy.idle(idleCount);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.vgrazi.monitor.eventprocessor.util;
+
+import com.vgrazi.monitor.eventprocessor.domain.Scorecard;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Converts Scorecards to and from the bytes passed from the server to the client.
+ * See ScorecardCodecs for the available codecs, and for telling which one wrote a given scorecard
+ */
+public interface ScorecardCodec {
+    void encode(Scorecard scorecard, OutputStream out) throws IOException;
+
+    Scorecard decode(byte[] bytes) throws IOException;
+}
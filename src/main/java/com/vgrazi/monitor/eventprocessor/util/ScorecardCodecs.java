@@ -0,0 +1,33 @@
+package com.vgrazi.monitor.eventprocessor.util;
+
+/**
+ * Creates the ScorecardCodecs by name, and detects which codec wrote a scorecard
+ */
+public class ScorecardCodecs {
+    private static final ScorecardCodec JSON = new JsonScorecardCodec();
+    private static final ScorecardCodec BINARY = new BinaryScorecardCodec();
+
+    /**
+     * @param name json or binary
+     */
+    public static ScorecardCodec create(String name) {
+        switch (name) {
+            case "json":
+                return JSON;
+            case "binary":
+                return BINARY;
+            default:
+                throw new IllegalArgumentException("Unknown scorecard codec: " + name);
+        }
+    }
+
+    /**
+     * Returns the codec that encoded the bytes. Binary scorecards start with a magic header; anything else is JSON
+     */
+    public static ScorecardCodec detect(byte[] bytes) {
+        if (BinaryScorecardCodec.hasMagic(bytes)) {
+            return BINARY;
+        }
+        return JSON;
+    }
+}
@@ -0,0 +1,189 @@
+package com.vgrazi.monitor.eventprocessor.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * A ring of encoded scorecards in a memory mapped file, shared by the ScorecardProcessor (the one writer) and the
+ * MonitorUI (any number of readers), in the same JVM or in another one on the same host.
+ * <p>
+ * The file starts with a header holding the geometry and the latest published sequence, followed by slotCount slots.
+ * Scorecard n goes in slot n % slotCount. Each slot is guarded by a seqlock word: the writer sets it to 2n + 1 before
+ * copying the bytes in, and to 2n + 2 after. A reader copies the bytes out, and only keeps them if the word was
+ * 2n + 2 both before and after, ie the slot was not overwritten meanwhile. Nobody ever waits on a lock.
+ * <p>
+ * Other processes only see the mapped memory, so the header and seqlock words are ordered by MappedOrdering's fences,
+ * rather than by Java fields. Slots are 8 byte aligned, so the seqlock words are never torn
+ */
+public class ScorecardRing implements Closeable {
+    private static final int MAGIC = 0x53435247; // SCRG
+    private static final int VERSION = 2;
+    private static final int HEADER_BYTES = 64;
+    private static final int MAGIC_OFFSET = 0;
+    private static final int VERSION_OFFSET = 4;
+    private static final int SLOT_COUNT_OFFSET = 8;
+    private static final int SLOT_BYTES_OFFSET = 12;
+    private static final int LATEST_OFFSET = 16;
+    // each slot starts with its seqlock word and the length of the scorecard
+    private static final int SLOT_HEADER_BYTES = 16;
+    private static final int LENGTH_OFFSET = 8;
+    private static final int MAX_READ_ATTEMPTS = 16;
+
+    private final FileChannel channel;
+    // the mapping must stay reachable, or it could be unmapped under us
+    private final MappedByteBuffer mapping;
+    private final int slotCount;
+    private final int slotBytes;
+    private final int slotSize;
+
+    private ScorecardRing(FileChannel channel, MappedByteBuffer mapping, int slotCount, int slotBytes) {
+        this.channel = channel;
+        this.mapping = mapping;
+        this.slotCount = slotCount;
+        this.slotBytes = slotBytes;
+        this.slotSize = slotSize(slotBytes);
+        // the writer and readers are on the same host, so skip the byte swapping
+        mapping.order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Creates (or resets) the ring file for writing
+     *
+     * @param slotBytes the largest encoded scorecard a slot can hold
+     */
+    public static ScorecardRing create(Path file, int slotCount, int slotBytes) throws IOException {
+        long size = HEADER_BYTES + (long) slotCount * slotSize(slotBytes);
+        FileChannel channel = new RandomAccessFile(file.toFile(), "rw").getChannel();
+        MappedByteBuffer mapping = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        ScorecardRing ring = new ScorecardRing(channel, mapping, slotCount, slotBytes);
+        // readers that are already attached will see the magic vanish, and wait for the ring to come back
+        MappedOrdering.putIntRelease(mapping, MAGIC_OFFSET, 0);
+        MappedOrdering.fullFence();
+        // a zero seqlock word is never published, so the stale slots can't be read
+        for (int slot = 0; slot < slotCount; slot++) {
+            mapping.putLong(HEADER_BYTES + slot * ring.slotSize, 0);
+        }
+        mapping.putInt(VERSION_OFFSET, VERSION);
+        mapping.putInt(SLOT_COUNT_OFFSET, slotCount);
+        mapping.putInt(SLOT_BYTES_OFFSET, slotBytes);
+        MappedOrdering.putLongRelease(mapping, LATEST_OFFSET, -1);
+        MappedOrdering.putIntRelease(mapping, MAGIC_OFFSET, MAGIC);
+        return ring;
+    }
+
+    /**
+     * Opens a ring file created by the writer, for reading
+     *
+     * @return the ring, or null if the writer has not created it yet
+     */
+    public static ScorecardRing open(Path file) throws IOException {
+        if (!Files.exists(file) || Files.size(file) < HEADER_BYTES) {
+            return null;
+        }
+        FileChannel channel = new RandomAccessFile(file.toFile(), "r").getChannel();
+        MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+        header.order(ByteOrder.nativeOrder());
+        if (MappedOrdering.getIntAcquire(header, MAGIC_OFFSET) != MAGIC) {
+            channel.close();
+            return null;
+        }
+        if (header.getInt(VERSION_OFFSET) != VERSION) {
+            channel.close();
+            throw new IOException("Unsupported scorecard ring version in " + file);
+        }
+        int slotCount = header.getInt(SLOT_COUNT_OFFSET);
+        int slotBytes = header.getInt(SLOT_BYTES_OFFSET);
+        long size = HEADER_BYTES + (long) slotCount * slotSize(slotBytes);
+        MappedByteBuffer mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        return new ScorecardRing(channel, mapping, slotCount, slotBytes);
+    }
+
+    /**
+     * Publishes the encoded scorecard as the given sequence. Sequences must be published in order, starting from 0
+     *
+     * @return false if the scorecard is too large for a slot, and was not published
+     */
+    public boolean publish(long sequence, byte[] bytes, int length) {
+        if (length > slotBytes) {
+            return false;
+        }
+        int slot = slotOffset(sequence);
+        MappedOrdering.putLongRelease(mapping, slot, 2 * sequence + 1);
+        // keep the copy after the odd (writing) marker
+        MappedOrdering.fullFence();
+        mapping.putInt(slot + LENGTH_OFFSET, length);
+        ByteBuffer data = mapping.duplicate();
+        data.position(slot + SLOT_HEADER_BYTES);
+        data.put(bytes, 0, length);
+        MappedOrdering.putLongRelease(mapping, slot, 2 * sequence + 2);
+        MappedOrdering.putLongRelease(mapping, LATEST_OFFSET, sequence);
+        return true;
+    }
+
+    /**
+     * Returns the sequence of the newest scorecard, or -1 if there is none, or the writer is resetting the ring
+     */
+    public long getLatestSequence() {
+        if (MappedOrdering.getIntAcquire(mapping, MAGIC_OFFSET) != MAGIC) {
+            return -1;
+        }
+        return MappedOrdering.getLongAcquire(mapping, LATEST_OFFSET);
+    }
+
+    /**
+     * Returns the encoded scorecard published as the sequence
+     *
+     * @return the bytes, or null if the sequence has not been published, or has already been overwritten
+     */
+    public byte[] read(long sequence) {
+        int slot = slotOffset(sequence);
+        long published = 2 * sequence + 2;
+        for (int attempt = 0; attempt < MAX_READ_ATTEMPTS; attempt++) {
+            if (MappedOrdering.getLongAcquire(mapping, slot) != published) {
+                // not published yet, or already overwritten by a later lap of the ring
+                return null;
+            }
+            int length = mapping.getInt(slot + LENGTH_OFFSET);
+            if (length < 0 || length > slotBytes) {
+                continue;
+            }
+            byte[] bytes = new byte[length];
+            ByteBuffer data = mapping.duplicate();
+            data.position(slot + SLOT_HEADER_BYTES);
+            data.get(bytes);
+            // keep the copy before the second look at the seqlock
+            MappedOrdering.fullFence();
+            if (MappedOrdering.getLongAcquire(mapping, slot) == published) {
+                return bytes;
+            }
+        }
+        return null;
+    }
+
+    public int getSlotCount() {
+        return slotCount;
+    }
+
+    /**
+     * The bytes from one slot to the next: the slot header and the data, rounded up to keep the next slot 8 byte aligned
+     */
+    private static int slotSize(int slotBytes) {
+        return SLOT_HEADER_BYTES + ((slotBytes + 7) & ~7);
+    }
+
+    private int slotOffset(long sequence) {
+        return (int) (HEADER_BYTES + Math.floorMod(sequence, (long) slotCount) * slotSize);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
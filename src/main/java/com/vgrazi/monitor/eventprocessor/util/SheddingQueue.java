@@ -0,0 +1,140 @@
+package com.vgrazi.monitor.eventprocessor.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.AbstractQueue;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * Wraps a bounded queue, and applies the OverflowPolicy when a producer adds to it while it is full, so that a traffic
+ * spike costs us records (which are counted in the IngestMetrics) rather than unbounded memory.
+ * The consuming side is passed straight through to the delegate.
+ * Note that DROP_OLDEST removes elements from the producer's thread, so it requires a delegate that supports
+ * concurrent consumers, such as an ArrayBlockingQueue
+ */
+public class SheddingQueue<E> extends AbstractQueue<E> implements BlockingQueue<E> {
+    private final Logger logger = LoggerFactory.getLogger(SheddingQueue.class);
+    private final BlockingQueue<E> delegate;
+    private final OverflowPolicy policy;
+    private final Predicate<E> malformed;
+    private final IngestMetrics metrics;
+    private boolean warned;
+
+    /**
+     * @param delegate  the bounded queue holding the elements
+     * @param malformed identifies malformed elements, for the DROP_MALFORMED policy
+     */
+    public SheddingQueue(BlockingQueue<E> delegate, OverflowPolicy policy, Predicate<E> malformed, IngestMetrics metrics) {
+        this.delegate = delegate;
+        this.policy = policy;
+        this.malformed = malformed;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void put(E element) throws InterruptedException {
+        if (offer(element)) {
+            return;
+        }
+        // we only get here if the queue is full and the policy is to wait for room
+        delegate.put(element);
+    }
+
+    /**
+     * Adds the element, applying the overflow policy if the queue is full
+     *
+     * @return false only if the queue is full and the policy says to wait for room (BLOCK, or DROP_MALFORMED for a
+     * well formed element). Returns true if the element was added, or was shed
+     */
+    @Override
+    public boolean offer(E element) {
+        if (delegate.offer(element)) {
+            return true;
+        }
+        switch (policy) {
+            case DROP_NEWEST:
+                metrics.recordDroppedNewest();
+                warnShedding();
+                return true;
+            case DROP_MALFORMED:
+                if (malformed.test(element)) {
+                    metrics.recordDroppedMalformed();
+                    warnShedding();
+                    return true;
+                }
+                return false;
+            case DROP_OLDEST:
+                do {
+                    if (delegate.poll() != null) {
+                        metrics.recordDroppedOldest();
+                    }
+                } while (!delegate.offer(element));
+                warnShedding();
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    @Override
+    public boolean offer(E element, long timeout, TimeUnit unit) throws InterruptedException {
+        return offer(element) || delegate.offer(element, timeout, unit);
+    }
+
+    private void warnShedding() {
+        if (!warned) {
+            warned = true;
+            logger.warn("Record queue is full, shedding records according to policy {}", policy);
+        }
+    }
+
+    @Override
+    public E take() throws InterruptedException {
+        return delegate.take();
+    }
+
+    @Override
+    public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+        return delegate.poll(timeout, unit);
+    }
+
+    @Override
+    public E poll() {
+        return delegate.poll();
+    }
+
+    @Override
+    public E peek() {
+        return delegate.peek();
+    }
+
+    @Override
+    public int remainingCapacity() {
+        return delegate.remainingCapacity();
+    }
+
+    @Override
+    public int drainTo(Collection<? super E> collection) {
+        return delegate.drainTo(collection);
+    }
+
+    @Override
+    public int drainTo(Collection<? super E> collection, int maxElements) {
+        return delegate.drainTo(collection, maxElements);
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        return delegate.iterator();
+    }
+
+    @Override
+    public int size() {
+        return delegate.size();
+    }
+}
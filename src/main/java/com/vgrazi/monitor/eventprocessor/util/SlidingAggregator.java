@@ -0,0 +1,195 @@
+package com.vgrazi.monitor.eventprocessor.util;
+
+import com.vgrazi.monitor.eventprocessor.domain.Dimension;
+import com.vgrazi.monitor.eventprocessor.domain.DistinctCount;
+import com.vgrazi.monitor.eventprocessor.domain.Frame;
+import com.vgrazi.monitor.eventprocessor.domain.HeavyHitters;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps running totals over the most recent seconds of the window, so that each new Frame costs time proportional to
+ * its own records rather than to the length of the window:
+ * <ul>
+ * <li>the per-section hit counts over the last hitsReportSeconds seconds</li>
+ * <li>the hit count sum over the last averageSeconds seconds</li>
+ * <li>the heavy hitter sketches of the last hitsReportSeconds seconds, if the Frames carry them</li>
+ * <li>the response size histograms of the whole window, see ResponseSizeHistograms</li>
+ * <li>sliding HyperLogLogs of the distinct values of the distinct count dimensions, over the whole window</li>
+ * </ul>
+ * Counts are kept by section id in primitive IntLongMaps, and only boxed into a map of section names when the hits
+ * report is taken. Each Frame's contribution is kept in a ring of one slot per second, like the FrameWindow. When a newer second
+ * arrives, the slots of the seconds that fell out of each range are subtracted from the totals and cleared.
+ */
+public class SlidingAggregator implements WindowListener {
+    private final int hitsReportSeconds;
+    private final int averageSeconds;
+
+    // section id counts contributed by each second of the report range, indexed by second % hitsReportSeconds.
+    // The maps are cleared and reused as the range slides
+    private final IntLongMap[] reportCounts;
+    private final IntLongMap sectionTotals = new IntLongMap();
+    // heavy hitter sketches (indexed by Dimension ordinal) of the Frames of each second of the report range
+    private final List<List<SpaceSaving[]>> reportHeavyHitters;
+
+    // hits contributed by each second of the average range, indexed by second % averageSeconds
+    private final long[] hitCounts;
+    private long hitSum;
+    // the seconds of the average range that had a frame, as the average is over those seconds only
+    private final boolean[] hadFrame;
+    private int framedSeconds;
+
+    private final ResponseSizeHistograms responseSizes;
+    private final int windowSeconds;
+    // indexed by Dimension ordinal, null for the dimensions that are not counted
+    private final SlidingHyperLogLog[] distinctCounts = new SlidingHyperLogLog[Dimension.values().length];
+
+    private boolean empty = true;
+    private long newestSecond;
+
+    public SlidingAggregator(int hitsReportSeconds, int averageSeconds, int windowSeconds, Set<Dimension> distinctCountDimensions) {
+        this.hitsReportSeconds = hitsReportSeconds;
+        this.averageSeconds = averageSeconds;
+        this.windowSeconds = windowSeconds;
+        responseSizes = new ResponseSizeHistograms(windowSeconds);
+        for (Dimension dimension : distinctCountDimensions) {
+            distinctCounts[dimension.ordinal()] = new SlidingHyperLogLog(windowSeconds);
+        }
+        reportCounts = new IntLongMap[hitsReportSeconds];
+        for (int i = 0; i < hitsReportSeconds; i++) {
+            reportCounts[i] = new IntLongMap();
+        }
+        reportHeavyHitters = new ArrayList<>(hitsReportSeconds);
+        for (int i = 0; i < hitsReportSeconds; i++) {
+            reportHeavyHitters.add(new ArrayList<>());
+        }
+        hitCounts = new long[averageSeconds];
+        hadFrame = new boolean[averageSeconds];
+    }
+
+    @Override
+    public void frameAdded(Frame frame) {
+        responseSizes.frameAdded(frame);
+        long second = frame.getStartTime();
+        if (empty) {
+            empty = false;
+            newestSecond = second;
+        }
+        else if (second > newestSecond) {
+            advance(second);
+        }
+
+        HyperLogLog[] frameDistinctCounts = frame.takeDistinctCounts();
+        if (frameDistinctCounts != null) {
+            for (int i = 0; i < distinctCounts.length; i++) {
+                if (distinctCounts[i] != null && frameDistinctCounts[i] != null) {
+                    distinctCounts[i].add(frameDistinctCounts[i], second);
+                }
+            }
+        }
+        // the sketches are no use to the Frame once we have them, and are dropped if the Frame is already out of range
+        SpaceSaving[] heavyHitters = frame.takeHeavyHitters();
+        if (second > newestSecond - hitsReportSeconds) {
+            // a late frame for a second we already have is added to that second
+            int index = indexOf(second, hitsReportSeconds);
+            reportCounts[index].addAll(frame.getSectionCounts());
+            sectionTotals.addAll(frame.getSectionCounts());
+            if (heavyHitters != null) {
+                reportHeavyHitters.get(index).add(heavyHitters);
+            }
+        }
+        if (second > newestSecond - averageSeconds) {
+            int index = indexOf(second, averageSeconds);
+            hitCounts[index] += frame.getHitCount();
+            hitSum += frame.getHitCount();
+            if (!hadFrame[index]) {
+                hadFrame[index] = true;
+                framedSeconds++;
+            }
+        }
+    }
+
+    /**
+     * Only the window wide response sizes need to know, our ranges expire by time as newer frames arrive
+     */
+    @Override
+    public void frameEvicted(Frame frame) {
+        responseSizes.frameEvicted(frame);
+    }
+
+    /**
+     * Slides the ranges forward to end at the given second, clearing the seconds that fall out
+     */
+    private void advance(long second) {
+        long steps = Math.min(second - newestSecond, Math.max(hitsReportSeconds, averageSeconds));
+        for (long expired = second - steps + 1; expired <= second; expired++) {
+            // sections that no longer have any hits in range drop out of the totals
+            IntLongMap counts = reportCounts[indexOf(expired, hitsReportSeconds)];
+            sectionTotals.subtractAll(counts);
+            counts.clear();
+            reportHeavyHitters.get(indexOf(expired, hitsReportSeconds)).clear();
+            int averageIndex = indexOf(expired, averageSeconds);
+            hitSum -= hitCounts[averageIndex];
+            hitCounts[averageIndex] = 0;
+            if (hadFrame[averageIndex]) {
+                hadFrame[averageIndex] = false;
+                framedSeconds--;
+            }
+        }
+        newestSecond = second;
+    }
+
+    private static int indexOf(long second, int ringSize) {
+        return (int) Math.floorMod(second, (long) ringSize);
+    }
+
+    /**
+     * Returns the per-section hit counts over the last hitsReportSeconds seconds, boxed and keyed by section name for
+     * the Scorecard
+     */
+    public Map<String, Long> getHitsReport() {
+        return sectionTotals.toMap(Dictionary.SECTIONS);
+    }
+
+    /**
+     * Merges the heavy hitter sketches of the last hitsReportSeconds seconds, and returns the n most frequent values of
+     * the dimension
+     */
+    public HeavyHitters getHeavyHitters(Dimension dimension, int n) {
+        List<SpaceSaving> sketches = new ArrayList<>();
+        for (List<SpaceSaving[]> second : reportHeavyHitters) {
+            for (SpaceSaving[] frameSketches : second) {
+                sketches.add(frameSketches[dimension.ordinal()]);
+            }
+        }
+        return SpaceSaving.topK(sketches, n);
+    }
+
+    /**
+     * Returns the distinct count estimates of the dimension over the last hitsReportSeconds and over the window, or
+     * null if the dimension is not counted
+     */
+    public DistinctCount getDistinctCount(Dimension dimension) {
+        SlidingHyperLogLog sketch = distinctCounts[dimension.ordinal()];
+        if (sketch == null) {
+            return null;
+        }
+        return new DistinctCount(hitsReportSeconds, sketch.estimate(hitsReportSeconds), windowSeconds,
+                sketch.estimate(windowSeconds), HyperLogLog.STANDARD_ERROR);
+    }
+
+    public ResponseSizeHistograms getResponseSizes() {
+        return responseSizes;
+    }
+
+    /**
+     * Returns the average hits per frame over the frames of the last averageSeconds seconds. Seconds with no
+     * frame are left out of the average rather than counted as 0
+     */
+    public float getAverageHitCount() {
+        return framedSeconds == 0 ? 0 : hitSum / (float) framedSeconds;
+    }
+}
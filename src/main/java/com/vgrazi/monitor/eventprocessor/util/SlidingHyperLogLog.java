@@ -0,0 +1,83 @@
+package com.vgrazi.monitor.eventprocessor.util;
+
+/**
+ * A HyperLogLog over a sliding window of seconds (after Chabchoub and Hebrail). Instead of one value per register, each
+ * register keeps the list of (second, rho) pairs that could still be its maximum for some window ending now: seconds
+ * ascending, rho strictly descending. A pair is dropped as soon as a later pair has a rho at least as high, or it falls
+ * out of the window, so a list never holds more than 64 - PRECISION + 1 pairs.
+ * The distinct count for any range of the last windowSeconds seconds is then estimated from the first pair in range of
+ * each register, at a cost that does not depend on the length of the window.
+ * Not thread safe.
+ */
+public class SlidingHyperLogLog {
+    private static final int MAX_PAIRS = 64;
+    private static final int REGISTER_COUNT = HyperLogLog.REGISTER_COUNT;
+
+    private final int windowSeconds;
+    // circular lists of pairs, MAX_PAIRS per register
+    private final long[] seconds = new long[REGISTER_COUNT * MAX_PAIRS];
+    private final byte[] rhos = new byte[REGISTER_COUNT * MAX_PAIRS];
+    private final int[] heads = new int[REGISTER_COUNT];
+    private final int[] sizes = new int[REGISTER_COUNT];
+    private long newestSecond = Long.MIN_VALUE;
+
+    public SlidingHyperLogLog(int windowSeconds) {
+        this.windowSeconds = windowSeconds;
+    }
+
+    /**
+     * Adds the registers of a frame's sketch as of the given second. A late frame, older than one already added, is
+     * treated as belonging to the newest second, so it stays in range slightly longer than it should
+     */
+    public void add(HyperLogLog sketch, long second) {
+        newestSecond = Math.max(newestSecond, second);
+        long time = newestSecond;
+        for (int register = 0; register < REGISTER_COUNT; register++) {
+            int rho = sketch.getRegister(register);
+            if (rho == 0) {
+                continue;
+            }
+            int base = register * MAX_PAIRS;
+            int head = heads[register];
+            int size = sizes[register];
+            // drop the pairs that this one dominates, from the newest back
+            while (size > 0 && rhos[base + (head + size - 1) % MAX_PAIRS] <= rho) {
+                size--;
+            }
+            int tail = base + (head + size) % MAX_PAIRS;
+            seconds[tail] = time;
+            rhos[tail] = (byte) rho;
+            sizes[register] = size + 1;
+        }
+    }
+
+    /**
+     * Estimates the distinct count over the last rangeSeconds seconds, up to windowSeconds
+     */
+    public long estimate(int rangeSeconds) {
+        long start = newestSecond - Math.min(rangeSeconds, windowSeconds) + 1;
+        byte[] registers = new byte[REGISTER_COUNT];
+        for (int register = 0; register < REGISTER_COUNT; register++) {
+            int base = register * MAX_PAIRS;
+            int head = heads[register];
+            int size = sizes[register];
+            // expire the pairs that have left the window altogether
+            long windowStart = newestSecond - windowSeconds + 1;
+            while (size > 0 && seconds[base + head] < windowStart) {
+                head = (head + 1) % MAX_PAIRS;
+                size--;
+            }
+            heads[register] = head;
+            sizes[register] = size;
+            // rho descends along the list, so the first pair in range is the register's maximum for the range
+            for (int i = 0; i < size; i++) {
+                int index = base + (head + i) % MAX_PAIRS;
+                if (seconds[index] >= start) {
+                    registers[register] = rhos[index];
+                    break;
+                }
+            }
+        }
+        return HyperLogLog.estimate(registers);
+    }
+}
@@ -0,0 +1,195 @@
+package com.vgrazi.monitor.eventprocessor.util;
+
+import com.vgrazi.monitor.eventprocessor.domain.HeavyHitters;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Space-Saving heavy hitters sketch (Metwally, Agrawal and El Abbadi). Tracks at most capacity values, however many
+ * distinct values are added. When a new value arrives and the sketch is full, it takes over the counter with the
+ * smallest count, inheriting that count as its possible error. Any value whose true count exceeds total / capacity is
+ * guaranteed to be tracked, and no count is overestimated by more than the smallest count.
+ * <p>
+ * The counters are kept in a min-heap on count, so adding a value costs O(log capacity).
+ * Sketches are mergeable, so per-second sketches can be combined into a sketch of any range of seconds.
+ * Not thread safe.
+ */
+public class SpaceSaving {
+    private static final class Counter {
+        final String value;
+        long count;
+        long error;
+        int heapIndex;
+
+        Counter(String value) {
+            this.value = value;
+        }
+    }
+
+    private final int capacity;
+    private final Counter[] heap;
+    private final Map<String, Counter> counters;
+    private int size;
+    private long total;
+
+    public SpaceSaving(int capacity) {
+        this.capacity = capacity;
+        heap = new Counter[capacity];
+        counters = new HashMap<>();
+    }
+
+    public void add(String value, long weight) {
+        total += weight;
+        Counter counter = counters.get(value);
+        if (counter != null) {
+            counter.count += weight;
+            siftDown(counter.heapIndex);
+        }
+        else if (size < capacity) {
+            counter = new Counter(value);
+            counter.count = weight;
+            counters.put(value, counter);
+            heap[size] = counter;
+            counter.heapIndex = size;
+            siftUp(size++);
+        }
+        else {
+            // the new value takes over the smallest counter
+            Counter smallest = heap[0];
+            counters.remove(smallest.value);
+            counter = new Counter(value);
+            counter.count = smallest.count + weight;
+            counter.error = smallest.count;
+            counters.put(value, counter);
+            heap[0] = counter;
+            siftDown(0);
+        }
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the count a value missing from the sketch might have, ie the smallest count if the sketch is full, else 0
+     */
+    public long getMinCount() {
+        return size < capacity ? 0 : heap[0].count;
+    }
+
+    /**
+     * Returns the total weight added to the sketch
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * Merges the other sketch into this one, keeping the capacity highest counts of the combination
+     */
+    public void merge(SpaceSaving other) {
+        List<Counter> combined = combine(Arrays.asList(this, other));
+        long mergedTotal = total + other.total;
+        counters.clear();
+        size = 0;
+        for (Counter counter : combined) {
+            if (size == capacity) {
+                break;
+            }
+            counters.put(counter.value, counter);
+            heap[size] = counter;
+            counter.heapIndex = size;
+            siftUp(size++);
+        }
+        total = mergedTotal;
+    }
+
+    /**
+     * Merges the sketches and returns the n values with the highest estimated counts
+     */
+    public static HeavyHitters topK(List<SpaceSaving> sketches, int n) {
+        HeavyHitters heavyHitters = new HeavyHitters();
+        LinkedHashMap<String, Long> counts = new LinkedHashMap<>();
+        long errorBound = 0;
+        long total = 0;
+        for (SpaceSaving sketch : sketches) {
+            errorBound += sketch.getMinCount();
+            total += sketch.total;
+        }
+        List<Counter> combined = combine(sketches);
+        for (int i = 0; i < combined.size() && i < n; i++) {
+            counts.put(combined.get(i).value, combined.get(i).count);
+        }
+        heavyHitters.setCounts(counts);
+        heavyHitters.setErrorBound(errorBound);
+        heavyHitters.setTotal(total);
+        return heavyHitters;
+    }
+
+    /**
+     * Combines the counters of the sketches, highest count first. A value missing from a full sketch may have had up to
+     * that sketch's smallest count there, so it is charged that much, both in count and in error
+     */
+    private static List<Counter> combine(List<SpaceSaving> sketches) {
+        Map<String, Counter> combined = new HashMap<>();
+        long totalMin = 0;
+        for (SpaceSaving sketch : sketches) {
+            long min = sketch.getMinCount();
+            totalMin += min;
+            for (int i = 0; i < sketch.size; i++) {
+                Counter counter = sketch.heap[i];
+                Counter sum = combined.computeIfAbsent(counter.value, Counter::new);
+                // every value is charged totalMin below, so take back this sketch's share where the value is present
+                sum.count += counter.count - min;
+                sum.error += counter.error - min;
+            }
+        }
+        List<Counter> result = new ArrayList<>(combined.values());
+        for (Counter counter : result) {
+            counter.count += totalMin;
+            counter.error += totalMin;
+        }
+        result.sort((c1, c2) -> Long.compare(c2.count, c1.count));
+        return result;
+    }
+
+    private void siftUp(int index) {
+        Counter counter = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (heap[parent].count <= counter.count) {
+                break;
+            }
+            moveTo(heap[parent], index);
+            index = parent;
+        }
+        moveTo(counter, index);
+    }
+
+    private void siftDown(int index) {
+        Counter counter = heap[index];
+        int half = size >>> 1;
+        while (index < half) {
+            int child = 2 * index + 1;
+            if (child + 1 < size && heap[child + 1].count < heap[child].count) {
+                child++;
+            }
+            if (counter.count <= heap[child].count) {
+                break;
+            }
+            moveTo(heap[child], index);
+            index = child;
+        }
+        moveTo(counter, index);
+    }
+
+    private void moveTo(Counter counter, int index) {
+        heap[index] = counter;
+        counter.heapIndex = index;
+    }
+}
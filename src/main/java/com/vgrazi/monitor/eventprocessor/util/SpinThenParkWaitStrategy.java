@@ -0,0 +1,37 @@
+package com.vgrazi.monitor.eventprocessor.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Busy spins for the first few idle rounds, then yields, then parks for progressively longer periods, up to maxParkMillis.
+ * A burst is picked up within nanoseconds, while a quiet log costs at most one wakeup every maxParkMillis
+ */
+public class SpinThenParkWaitStrategy implements WaitStrategy {
+    private static final int SPIN_ROUNDS = 100;
+    private static final int YIELD_ROUNDS = 100;
+    private static final long MIN_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    private final long maxParkNanos;
+
+    public SpinThenParkWaitStrategy(long maxParkMillis) {
+        this.maxParkNanos = Math.max(MIN_PARK_NANOS, TimeUnit.MILLISECONDS.toNanos(maxParkMillis));
+    }
+
+    @Override
+    public void idle(int idleCount) throws InterruptedException {
+        if (idleCount < SPIN_ROUNDS) {
+            return;
+        }
+        if (idleCount < SPIN_ROUNDS + YIELD_ROUNDS) {
+            Thread.yield();
+            return;
+        }
+        // double the park time each round, starting from MIN_PARK_NANOS
+        int doublings = Math.min(idleCount - SPIN_ROUNDS - YIELD_ROUNDS, 30);
+        long parkNanos = Math.min(maxParkNanos, MIN_PARK_NANOS << doublings);
+        LockSupport.parkNanos(this, parkNanos);
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+    }
+}
@@ -1,7 +1,11 @@
 package com.vgrazi.monitor.eventprocessor.util;
 
+import com.vgrazi.monitor.eventprocessor.domain.Dimension;
+import com.vgrazi.monitor.eventprocessor.domain.DistinctCount;
 import com.vgrazi.monitor.eventprocessor.domain.Frame;
+import com.vgrazi.monitor.eventprocessor.domain.HeavyHitters;
 import com.vgrazi.monitor.eventprocessor.domain.Record;
+import com.vgrazi.monitor.eventprocessor.domain.ResponseSizes;
 import com.vgrazi.monitor.eventprocessor.domain.State;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -12,7 +16,6 @@ import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
-import java.util.stream.Collectors;
 
 import static java.util.stream.Collectors.toMap;
 
@@ -34,17 +37,65 @@ public class StatsCruncher {
     @Value("${alert-threshold}")
     private int alertThreshold;
 
+    @Value("${heavy-hitters-enabled}")
+    private boolean heavyHittersEnabled;
+
+    @Value("${heavy-hitters-top-n}")
+    private int heavyHittersTopN;
+
+    @Value("${distinct-count-dimensions}")
+    private String distinctCountDimensions;
+
     /**
      * This is the master facade, called by FrameProcessor to generate all of the current state base on the incoming frames
      * and previous state
      */
-    public void generateState(Deque<Frame> frames, State state) {
+    public void generateState(FrameWindow frames, SlidingAggregator aggregator, State state) {
         // generate hits report
-        saveHitsReportToState(frames, state, reportStatsTimeSecs);
+        saveHitsReportToState(frames, aggregator, state, reportStatsTimeSecs);
         // generate average hit counts for last 2 minutes
-        float avgHitCountForLastSeconds = getAverageHitCountForLastSeconds(frames, secondsOfThrashing);
+        float avgHitCountForLastSeconds = aggregator.getAverageHitCount();
         logger.debug("Average hit count for last {} seconds:{}", secondsOfThrashing, avgHitCountForLastSeconds);
         saveHitCountAlertsToState(frames, (int) avgHitCountForLastSeconds, state);
+        saveDistinctCountsToState(aggregator, state);
+    }
+
+    /**
+     * Creates the aggregator that maintains the hits report and the average hit count incrementally as frames are
+     * added to the window. Pass it to WindowUtils.addFrameToWindow and to generateState
+     */
+    public SlidingAggregator createSlidingAggregator(int windowSeconds) {
+        return new SlidingAggregator(reportStatsTimeSecs, secondsOfThrashing, windowSeconds, getDistinctCountDimensions());
+    }
+
+    /**
+     * Returns the dimensions listed in distinct-count-dimensions
+     */
+    public Set<Dimension> getDistinctCountDimensions() {
+        Set<Dimension> dimensions = EnumSet.noneOf(Dimension.class);
+        for (String name : distinctCountDimensions.split(",")) {
+            if (!name.trim().isEmpty()) {
+                dimensions.add(Dimension.valueOf(name.trim().toUpperCase()));
+            }
+        }
+        return dimensions;
+    }
+
+    /**
+     * Returns the Record fields read by the aggregations
+     */
+    public Set<Record.Field> getConsumedFields() {
+        // the Frame summary reads all of these as each record is added
+        Set<Record.Field> fields = EnumSet.of(Record.Field.SECTION, Record.Field.RETURN_CODE, Record.Field.BYTE_COUNT);
+        if (heavyHittersEnabled) {
+            for (Dimension dimension : Dimension.values()) {
+                fields.add(dimension.getField());
+            }
+        }
+        for (Dimension dimension : getDistinctCountDimensions()) {
+            fields.add(dimension.getField());
+        }
+        return fields;
     }
 
     /**
@@ -57,44 +108,49 @@ public class StatsCruncher {
     }
 
     /**
-     * Extracts the time:hitCount for each frame in the list
+     * Returns the hits of each second from the oldest frame in the window to the newest, 0 for the seconds with no frame
      */
-    public List<String> extractHitCountList(Deque<Frame> frames) {
-        List<String> hitCounts = frames.stream()
-                .map(frame -> String.format("%s:%s", frame.getStartTime(), frame.getHitCount()))
-                .collect(Collectors.toList());
+    public int[] extractHitCountSeries(FrameWindow frames) {
+        return extractHitCountSeries(frames, frames.getFirst().getStartTime());
+    }
+
+    /**
+     * Returns the hits of each second from the given second to the newest in the window, 0 for the seconds with no frame
+     */
+    public int[] extractHitCountSeries(FrameWindow frames, long first) {
+        int[] hitCounts = new int[(int) Math.max(0, frames.getNewestSecond() - first + 1)];
+        for (int i = 0; i < hitCounts.length; i++) {
+            Frame frame = frames.get(first + i);
+            if (frame != null) {
+                hitCounts[i] = frame.getHitCount();
+            }
+        }
         return hitCounts;
     }
 
     /**
-     * Calculates average hit counts for last 2 minutes
+     * Extracts the time:hitCount for each frame in the list. This is the legacy form of extractHitCountSeries
      */
-    private float getAverageHitCountForLastSeconds(Deque<Frame> frames, int seconds) {
-        int frameCount = 0;
-        int sum = 0;
-        Iterator<Frame> iterator = frames.descendingIterator();
-        for (int i = 0; iterator.hasNext() && i < seconds; i++) {
-            frameCount++;
-            Frame frame = iterator.next();
-            sum += frame.getHitCount();
+    public List<String> extractHitCountList(FrameWindow frames) {
+        List<String> hitCounts = new ArrayList<>(frames.getFrameCount());
+        for (Frame frame : frames) {
+            hitCounts.add(String.format("%s:%s", frame.getStartTime(), frame.getHitCount()));
         }
-        return sum / (float) frameCount;
+        return hitCounts;
     }
 
     /**
-     * Iterates the records in the Frame to produce a sorted map of hit counts per section
+     * Returns the Frame's summary of hit counts per section
      */
-    private Map<String, Long> getSectionHitCounts(Frame frame) {
-        Map<String, Long> counts = frame.stream().collect(Collectors.groupingBy(Record::getSection, Collectors.counting()));
-        return counts;
+    public Map<String, Long> getSectionHitCounts(Frame frame) {
+        return frame.getSectionCounts().toMap(Dictionary.SECTIONS);
     }
 
     /**
-     * Iterates the frame to produce a sorted map of hit counts per section
+     * Returns the Frame's summary of failed (non 200) responses per section
      */
     public Map<String, Long> getSectionFailedResponses(Frame frame) {
-        Map<String, Long> counts = frame.stream().filter(record -> record.getReturnCode() != 200).collect(Collectors.groupingBy(Record::getRequest, Collectors.counting()));
-        return counts;
+        return frame.getFailedSectionCounts().toMap(Dictionary.SECTIONS);
     }
 
     public int getRecordsPerSecond(Frame frame) {
@@ -113,42 +169,58 @@ public class StatsCruncher {
     }
 
     /**
-     * Gather the usage stats for the last 10 seconds
-     *
-     * @param frames
-     * @param reportStatsTimeSecs
-     * @return
+     * Takes the hits report maintained by the aggregator (or the top sections, if heavy hitters are tracked), and then saves that hits report to the state
      */
-    public Map<String, Long> generateHitsReport(Deque<Frame> frames, int reportStatsTimeSecs) {
-        Map<String, Long> counts = new HashMap<>();
-        Iterator<Frame> iterator = frames.descendingIterator();
-        for (int i = 0; iterator.hasNext() && i < reportStatsTimeSecs; i++) {
-            Frame frame = iterator.next();
-            Map<String, Long> sectionHitCounts = getSectionHitCounts(frame);
-            for (Map.Entry<String, Long> entry : sectionHitCounts.entrySet()) {
-                String key = entry.getKey();
-                Long value = entry.getValue();
-                Long current = counts.get(key);
-                if (current == null) {
-                    current = 0L;
-                }
-                current += value;
-                counts.put(key, current);
+    private void saveHitsReportToState(FrameWindow frames, SlidingAggregator aggregator, State state, int reportStatsTimeSecs) {
+        long now = frames.getLast().getFrameEndTime();
+        if (state.getLastStatsReportTimeSecs() + reportStatsTimeSecs <= now) {
+            state.setLastStatsReportTimeSecs(now);
+            if (heavyHittersEnabled) {
+                HeavyHitters topSections = aggregator.getHeavyHitters(Dimension.SECTION, heavyHittersTopN);
+                state.setTopSections(topSections);
+                state.setTopHosts(aggregator.getHeavyHitters(Dimension.HOST, heavyHittersTopN));
+                state.setTopCallers(aggregator.getHeavyHitters(Dimension.CALLER, heavyHittersTopN));
+                state.setHitsReport(topSections.getCounts());
+            }
+            else {
+                Map<String, Long> hitsReport = aggregator.getHitsReport();
+                state.setHitsReport(hitsReport);
             }
+            saveResponseSizesToState(aggregator.getResponseSizes(), state);
         }
-        return counts;
     }
 
     /**
-     * Iterates the Frames deque to produce a hits report for each second, and then saves that hits report to the state
+     * Saves the distinct count estimates of each of the distinct count dimensions, keyed by dimension name
      */
-    private void saveHitsReportToState(Deque<Frame> frames, State state, int reportStatsTimeSecs) {
-        long now = frames.getLast().getFrameEndTime();
-        if (state.getLastStatsReportTimeSecs() + reportStatsTimeSecs <= now) {
-            state.setLastStatsReportTimeSecs(now);
-            Map<String, Long> hitsReport = generateHitsReport(frames, reportStatsTimeSecs);
-            state.setHitsReport(hitsReport);
+    private void saveDistinctCountsToState(SlidingAggregator aggregator, State state) {
+        Map<String, DistinctCount> distinctCounts = new LinkedHashMap<>();
+        for (Dimension dimension : Dimension.values()) {
+            DistinctCount distinctCount = aggregator.getDistinctCount(dimension);
+            if (distinctCount != null) {
+                distinctCounts.put(dimension.name().toLowerCase(), distinctCount);
+            }
+        }
+        state.setDistinctCounts(distinctCounts);
+    }
+
+    /**
+     * Saves the response sizes over the window of each section in the hits report, and of all sections together
+     */
+    private void saveResponseSizesToState(ResponseSizeHistograms histograms, State state) {
+        Map<String, ResponseSizes> responseSizes = new HashMap<>();
+        for (String section : state.getHitsReport().keySet()) {
+            int sectionId = Dictionary.SECTIONS.find(section);
+            // sections that arrived after the dictionary filled up are only counted together, as OTHER_VALUE
+            if (sectionId != Dictionary.NO_ID && (sectionId != Dictionary.OTHER || Dictionary.OTHER_VALUE.equals(section))) {
+                ResponseSizes sizes = histograms.getResponseSizes(sectionId);
+                if (sizes != null) {
+                    responseSizes.put(section, sizes);
+                }
+            }
         }
+        state.setResponseSizes(responseSizes);
+        state.setAllResponseSizes(histograms.getAllResponseSizes());
     }
 
     /**
@@ -160,7 +232,7 @@ public class StatsCruncher {
      *
      * @param avgHitCountForLastSeconds this is the average hit count over the last "10" (by default) seconds
      */
-    private void saveHitCountAlertsToState(Deque<Frame> frames, int avgHitCountForLastSeconds, State state) {
+    private void saveHitCountAlertsToState(FrameWindow frames, int avgHitCountForLastSeconds, State state) {
         long now = frames.getLast().getFrameEndTime();
         state.setAlert(null);
         if (avgHitCountForLastSeconds > alertThreshold) {
@@ -0,0 +1,17 @@
+package com.vgrazi.monitor.eventprocessor.util;
+
+/**
+ * Sleeps for a fixed poll period whenever the caller is idle
+ */
+public class TimedPollWaitStrategy implements WaitStrategy {
+    private final long pollMillis;
+
+    public TimedPollWaitStrategy(long pollMillis) {
+        this.pollMillis = pollMillis;
+    }
+
+    @Override
+    public void idle(int idleCount) throws InterruptedException {
+        Thread.sleep(pollMillis);
+    }
+}
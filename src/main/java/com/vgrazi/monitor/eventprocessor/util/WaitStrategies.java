@@ -0,0 +1,22 @@
+package com.vgrazi.monitor.eventprocessor.util;
+
+/**
+ * Creates the WaitStrategies that are not tied to a file, by name
+ */
+public class WaitStrategies {
+    /**
+     * @param name spin-then-park or timed-poll
+     * @param maxParkMillis the longest a spin-then-park strategy will park for
+     * @param pollMillis how long a timed-poll strategy sleeps for
+     */
+    public static WaitStrategy create(String name, long maxParkMillis, long pollMillis) {
+        switch (name) {
+            case "spin-then-park":
+                return new SpinThenParkWaitStrategy(maxParkMillis);
+            case "timed-poll":
+                return new TimedPollWaitStrategy(pollMillis);
+            default:
+                throw new IllegalArgumentException("Unknown wait strategy: " + name);
+        }
+    }
+}
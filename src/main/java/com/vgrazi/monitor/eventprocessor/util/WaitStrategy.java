@@ -0,0 +1,21 @@
+package com.vgrazi.monitor.eventprocessor.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Decides how a polling loop waits when it finds nothing to do, for example when a tailer reaches the end of the file.
+ * The caller counts its consecutive idle rounds, and resets the count as soon as it makes progress, so that a strategy
+ * can stay responsive during bursts and back off as the quiet stretch gets longer.
+ */
+public interface WaitStrategy extends Closeable {
+    /**
+     * Waits before the caller polls again
+     * @param idleCount the number of consecutive rounds (starting at 0) in which the caller found nothing to do
+     */
+    void idle(int idleCount) throws IOException, InterruptedException;
+
+    @Override
+    default void close() throws IOException {
+    }
+}
@@ -0,0 +1,41 @@
+package com.vgrazi.monitor.eventprocessor.util;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Blocks until the file system reports a change in the directory of the watched file.
+ * Since some WatchService implementations are themselves polling based (and slow), we never wait longer than
+ * the poll period before letting the caller check again.
+ */
+public class WatchServiceWaitStrategy implements WaitStrategy {
+    private final WatchService watchService;
+    private final long pollMillis;
+
+    public WatchServiceWaitStrategy(Path watchedFile, long pollMillis) throws IOException {
+        this.pollMillis = pollMillis;
+        Path dir = watchedFile.toAbsolutePath().getParent();
+        watchService = FileSystems.getDefault().newWatchService();
+        dir.register(watchService, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_CREATE);
+    }
+
+    @Override
+    public void idle(int idleCount) throws InterruptedException {
+        WatchKey watchKey = watchService.poll(pollMillis, TimeUnit.MILLISECONDS);
+        if (watchKey != null) {
+            // we don't care what changed, the caller will just read whatever is new
+            watchKey.pollEvents();
+            watchKey.reset();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+    }
+}
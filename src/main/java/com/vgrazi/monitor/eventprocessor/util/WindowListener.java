@@ -0,0 +1,18 @@
+package com.vgrazi.monitor.eventprocessor.util;
+
+import com.vgrazi.monitor.eventprocessor.domain.Frame;
+
+/**
+ * Notified by WindowUtils as Frames enter and leave the window, so that aggregates can be maintained incrementally
+ */
+public interface WindowListener {
+    /**
+     * Called after the frame has been appended to the window
+     */
+    void frameAdded(Frame frame);
+
+    /**
+     * Called after the frame, the oldest in the window, has been evicted
+     */
+    void frameEvicted(Frame frame);
+}
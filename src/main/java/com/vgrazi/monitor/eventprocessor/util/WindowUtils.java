@@ -4,8 +4,6 @@ import com.vgrazi.monitor.eventprocessor.domain.Frame;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.util.Deque;
-
 @Service
 public class WindowUtils {
 
@@ -13,21 +11,18 @@ public class WindowUtils {
     private int windowDuration;
 
     /**
-     * If Frame end time - Window start time > windowDuration, then evict oldest records
-     * from the frame until the time duration is back in line
+     * Creates an empty window of window-duration-seconds one second slots
      */
-    public void addFrameToWindow(Frame frame, Deque<Frame> window) {
-        // first prune old records from the window
-        while(!window.isEmpty()) {
-            if(window.getFirst().getStartTime() - frame.getFrameEndTime() > windowDuration) {
-                window.removeFirst();
-            }
-            else {
-                break;
-            }
-        }
+    public FrameWindow createWindow() {
+        return new FrameWindow(windowDuration);
+    }
 
-        // then add the new record
-        window.addLast(frame);
+    /**
+     * Adds the frame to the window. If the frame is newer than the window, the window slides forward, evicting the
+     * frames that are now more than windowDuration seconds old.
+     * The listener is notified of each evicted frame, and then of the added frame
+     */
+    public void addFrameToWindow(Frame frame, FrameWindow window, WindowListener listener) {
+        window.add(frame, listener);
     }
 }
@@ -0,0 +1,357 @@
+package com.vgrazi.monitor.eventprocessor.domain;
+
+import org.junit.Test;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks the single pass scan of typical lines against the regex parse it replaced: every line, typical or malformed,
+ * must come out of Record.fromLine with the same fields, the same errors, or the same exception as before, whichever
+ * fields are decoded up front
+ */
+public class RecordTest {
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("dd/MMM/yyyy:HH:mm:ss +SSSS");
+    private static final String MISSING = "line missing the following:";
+
+    // the typicalLinePattern the scan replaced
+    private static final Pattern OLD_TYPICAL_LINE_PATTERN = Pattern.compile(
+            "(?x)(?<host>\\S+)\\s-\\s(?<caller>\\S+)\\s\\[" +
+                    "(?<datetime>\\d\\d?/\\w{3}/\\d{4}:\\d{2}:\\d{2}:\\d{2}\\s\\+\\d{4})]\\s\"" +
+                    "(?<httpmethod>\\w+)\\s(?<section>/[^/\\s]+)?(?<request>\\S+)*\\s(?<http>\\w+)/(?<httpversion>[^\"]+)\"\\s" +
+                    "(?<returncode>\\d{3})\\s(?<bytecount>\\d+)"
+    );
+
+    // The same, with (?<request>\S+)* as (?<request>\S+)? which matches the same lines with the same groups. The nested
+    // quantifier backtracks exponentially in the length of the request whenever the rest of the line doesn't match,
+    // so the old pattern can't be run on the mutated lines
+    private static final Pattern TYPICAL_LINE_PATTERN = Pattern.compile(
+            OLD_TYPICAL_LINE_PATTERN.pattern().replace("(?<request>\\S+)*", "(?<request>\\S+)?"));
+
+    // the best effort patterns of the old parse, for lines that are not typical
+    private static final Pattern HOST_PATTERN = Pattern.compile("^\\s*(?<host>\\S+)");
+    private static final Pattern CALLER_PATTERN = Pattern.compile("- (?<caller>\\S+)");
+    private static final Pattern HTTP_METHOD_PATTERN = Pattern.compile("\"(?<httpmethod>\\S+)");
+    private static final Pattern REQUEST_PATTERN = Pattern.compile("\"\\S+\\s(?<request>(?<section>/[^/\\s]+)((/[^/\\s]+)*))");
+    private static final Pattern HTTP_VERSION_PATTERN = Pattern.compile("(?<httpversion>\\s\\S+)\"");
+    private static final Pattern RETURN_CODE_PATTERN = Pattern.compile("\"\\s(?<returncode>\\d+)");
+    private static final Pattern BYTE_COUNT_PATTERN = Pattern.compile("(?<bytecount>\\d+)$");
+    private static final Pattern DATE_TIME_PATTERN = Pattern.compile("\\[(?<datetime>\\d\\d?/\\w+?/\\d{4}:\\d\\d?:\\d\\d?:\\d\\d?\\s\\+\\d+)]");
+
+    // everything up front, nothing up front, and what the summary frame mode consumes
+    private static final List<Set<Record.Field>> PROJECTIONS = Arrays.asList(
+            EnumSet.allOf(Record.Field.class),
+            EnumSet.noneOf(Record.Field.class),
+            EnumSet.of(Record.Field.SECTION, Record.Field.RECORD_TIME));
+
+    private static final String[] GROUPS = {
+            "host", "caller", "datetime", "httpmethod", "section", "request", "returncode", "bytecount"
+    };
+
+    private static final String[] TYPICAL_LINES = {
+            "127.0.0.1 - james [11/Mar/2019:22:08:21 +9490] \"GET /report HTTP/1.0\" 200 123",
+            "127.0.0.1 - jill [11/Mar/2019:22:08:21 +9600] \"GET /api/user HTTP/1.0\" 200 234",
+            "10.0.0.12 - frank [29/Feb/2020:23:59:59 +0000] \"POST /api/user/7/orders?x=1 HTTP/1.1\" 503 0",
+            "host_1 - - [01/Jan/2019:00:00:00 +0001] \"DELETE /a/b/c HTTP/2.0\" 404 98765",
+    };
+
+    private static final String[] EDGE_CASES = {
+            // 1 digit day
+            "127.0.0.1 - james [1/Mar/2019:22:08:21 +9490] \"GET /report HTTP/1.0\" 200 123",
+            // missing section
+            "127.0.0.1 - james [11/Mar/2019:22:08:21 +9490] \"GET  HTTP/1.0\" 200 123",
+            "127.0.0.1 - james [11/Mar/2019:22:08:21 +9490] \"GET / HTTP/1.0\" 200 123",
+            "127.0.0.1 - james [11/Mar/2019:22:08:21 +9490] \"GET //report HTTP/1.0\" 200 123",
+            "127.0.0.1 - james [11/Mar/2019:22:08:21 +9490] \"GET report/x HTTP/1.0\" 200 123",
+            // quotes in the request
+            "127.0.0.1 - james [11/Mar/2019:22:08:21 +9490] \"GET /rep\"ort HTTP/1.0\" 200 123",
+            "127.0.0.1 - james [11/Mar/2019:22:08:21 +9490] \"GET /report?q=\"x\" HTTP/1.0\" 200 123",
+            "127.0.0.1 - james [11/Mar/2019:22:08:21 +9490] \"GET /report HTTP/1\"0\" 200 123",
+            // trailing garbage
+            "127.0.0.1 - james [11/Mar/2019:22:08:21 +9490] \"GET /report HTTP/1.0\" 200 123 ",
+            "127.0.0.1 - james [11/Mar/2019:22:08:21 +9490] \"GET /report HTTP/1.0\" 200 123x",
+            "127.0.0.1 - james [11/Mar/2019:22:08:21 +9490] \"GET /report HTTP/1.0\" 200 123 456",
+            "127.0.0.1 - james [11/Mar/2019:22:08:21 +9490] \"GET /report HTTP/1.0\" 200 123\"",
+            // anything else out of the ordinary
+            "127.0.0.1 - james [11/Mar/2019:22:08:21 +9490] \"GET /report HTTP/1.0\" 2000 123",
+            "127.0.0.1 - james [11/Mar/2019:22:08:21 +9490] \"GET /report HTTP/1.0\" 200 ",
+            "127.0.0.1 - james [11/March/2019:22:08:21 +9490] \"GET /report HTTP/1.0\" 200 123",
+            "127.0.0.1 - james [11/Mar/2019:22:08:21 9490] \"GET /report HTTP/1.0\" 200 123",
+            "127.0.0.1 -  james [11/Mar/2019:22:08:21 +9490] \"GET /report HTTP/1.0\" 200 123",
+            "127.0.0.1\t-\tjames\t[11/Mar/2019:22:08:21\t+9490]\t\"GET\t/report\tHTTP/1.0\"\t200\t123",
+            " 127.0.0.1 - james [11/Mar/2019:22:08:21 +9490] \"GET /report HTTP/1.0\" 200 123",
+            "127.0.0.1 - james [11/Mar/2019:22:08:21 +9490] \"GET /report HTTP/\" 200 123",
+            "127.0.0.1 - james [11/Mar/2019:22:08:21 +9490] \"GET /report /HTTP/1.0\" 200 123",
+            "127.0.0.1 - james [11/Mar/2019:22:08:21 +9490] \"G-T /report HTTP/1.0\" 200 123",
+            "",
+    };
+
+    // lines that only the best effort parse can take apart, each with some of its errors
+    private static final String[] MALFORMED_LINES = {
+            "garbage",
+            "127.0.0.1 - james",
+            "127.0.0.1 - james [11/Mar/2019:22:08:21 +9490]",
+            "127.0.0.1 - james \"GET /report HTTP/1.0\" 200 123",
+            "127.0.0.1 - james [11/Mar/2019:22:08:21 +9490] \"GET /report HTTP/1.0\"",
+            "127.0.0.1 james [11/Mar/2019:22:08:21 +9490] \"GET /report HTTP/1.0\" 200 123",
+            "127.0.0.1 - james [11/Mar/2019:22:08:21 +9490] GET /report HTTP/1.0 200 123",
+            "127.0.0.1 - james 11/Mar/2019:22:08:21 +9490 \"GET /report HTTP/1.0\" 200 123",
+    };
+
+    @Test
+    public void typicalLinesAreScanned() {
+        for (String line : TYPICAL_LINES) {
+            assertTrue(line, TYPICAL_LINE_PATTERN.matcher(line).matches());
+            assertFalse(line, parsedByRegex(line).contains(MISSING));
+            assertScannedLikeTheRegex(line);
+        }
+    }
+
+    @Test
+    public void edgeCasesAreScannedLikeTheRegex() {
+        for (String line : EDGE_CASES) {
+            assertScannedLikeTheRegex(line);
+        }
+    }
+
+    @Test
+    public void malformedLinesReportTheSameErrorsAsBefore() {
+        for (String line : MALFORMED_LINES) {
+            assertTrue(line, parsedByRegex(line).contains(MISSING));
+            assertScannedLikeTheRegex(line);
+        }
+    }
+
+    @Test
+    public void rewrittenPatternMatchesLikeTheOldOne() {
+        for (String line : EDGE_CASES) {
+            Matcher old = OLD_TYPICAL_LINE_PATTERN.matcher(line);
+            Matcher rewritten = TYPICAL_LINE_PATTERN.matcher(line);
+            boolean matches = old.matches();
+            assertEquals(line, matches, rewritten.matches());
+            for (int i = 0; matches && i < GROUPS.length; i++) {
+                assertEquals(line, old.group(GROUPS[i]), rewritten.group(GROUPS[i]));
+            }
+        }
+    }
+
+    @Test
+    public void singleDigitDayIsRejectedByTheFormatterAsBefore() {
+        // the regex accepted a 1 digit day, which the formatter then rejected
+        assertTrue(TYPICAL_LINE_PATTERN.matcher(EDGE_CASES[0]).matches());
+        for (Set<Record.Field> projection : PROJECTIONS) {
+            assertEquals(DateTimeParseException.class.getName(), scanned(EDGE_CASES[0], projection));
+        }
+    }
+
+    @Test
+    public void mutatedLinesAreScannedLikeTheRegex() {
+        Random random = new Random(4);
+        String alphabet = " \t-[]/\":+.?0123456789aZ_";
+        for (int i = 0; i < 20_000; i++) {
+            StringBuilder line = new StringBuilder(TYPICAL_LINES[random.nextInt(TYPICAL_LINES.length)]);
+            int mutations = 1 + random.nextInt(3);
+            for (int m = 0; m < mutations && line.length() > 0; m++) {
+                int at = random.nextInt(line.length());
+                char ch = alphabet.charAt(random.nextInt(alphabet.length()));
+                switch (random.nextInt(3)) {
+                    case 0:
+                        line.deleteCharAt(at);
+                        break;
+                    case 1:
+                        line.insert(at, ch);
+                        break;
+                    default:
+                        line.setCharAt(at, ch);
+                }
+            }
+            assertScannedLikeTheRegex(line.toString());
+        }
+    }
+
+    @Test
+    public void lazyFieldThatCantBeDecodedKeepsFailing() {
+        Record record = Record.fromLine(EDGE_CASES[0], EnumSet.noneOf(Record.Field.class));
+        for (int i = 0; i < 2; i++) {
+            try {
+                record.getRecordTime();
+                fail("expected the 1 digit day to be rejected by the formatter");
+            } catch (DateTimeParseException expected) {
+                // every time, not just the first
+            }
+        }
+    }
+
+    /**
+     * Two threads read the lazily decoded fields of the same records at the same time. Both must see every field
+     * exactly as an eagerly decoded record has it
+     */
+    @Test(timeout = 60_000)
+    public void concurrentReadersSeeTheDecodedFields() throws Exception {
+        Random random = new Random(6);
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 20_000; i++) {
+            String line = TYPICAL_LINES[random.nextInt(TYPICAL_LINES.length)];
+            lines.add(line.replace("james", "james" + i).replace("/api/", "/api" + random.nextInt(50) + "/"));
+        }
+        List<Record> records = new ArrayList<>();
+        for (String line : lines) {
+            records.add(Record.fromLine(line, EnumSet.noneOf(Record.Field.class)));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            CyclicBarrier start = new CyclicBarrier(2);
+            List<Future<List<String>>> readers = new ArrayList<>();
+            for (int reader = 0; reader < 2; reader++) {
+                readers.add(executor.submit(() -> {
+                    start.await();
+                    List<String> seen = new ArrayList<>();
+                    for (Record record : records) {
+                        seen.add(describe(record));
+                    }
+                    return seen;
+                }));
+            }
+            for (Future<List<String>> reader : readers) {
+                List<String> seen = reader.get();
+                for (int i = 0; i < lines.size(); i++) {
+                    assertEquals(lines.get(i), describe(Record.fromLine(lines.get(i))), seen.get(i));
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static void assertScannedLikeTheRegex(String line) {
+        String expected = parsedByRegex(line);
+        for (Set<Record.Field> projection : PROJECTIONS) {
+            assertEquals(line + " " + projection, expected, scanned(line, projection));
+        }
+    }
+
+    /**
+     * Everything Record.fromLine makes of the line: its fields and errors, or the exception it throws
+     */
+    private static String scanned(String line, Set<Record.Field> projection) {
+        try {
+            return describe(Record.fromLine(line, projection));
+        } catch (RuntimeException e) {
+            return e.getClass().getName();
+        }
+    }
+
+    /**
+     * Everything the getters return, or the exception one of them throws
+     */
+    private static String describe(Record record) {
+        try {
+            String string = record.toString();
+            int missing = string.indexOf(MISSING);
+            return describe(record.getHost(), record.getCaller(), record.getMethod(), record.getSection(),
+                    record.getRequest(), record.getHttpVersion(), record.getReturnCode(), record.getByteCount(),
+                    record.getRecordTime(), missing < 0 ? "" : string.substring(missing));
+        } catch (RuntimeException e) {
+            return e.getClass().getName();
+        }
+    }
+
+    /**
+     * The same, as the old regex parse made of it
+     */
+    private static String parsedByRegex(String line) {
+        try {
+            Matcher matcher = TYPICAL_LINE_PATTERN.matcher(line);
+            if (matcher.matches()) {
+                return describe(matcher.group("host"), matcher.group("caller"), matcher.group("httpmethod"),
+                        matcher.group("section"), matcher.group("request"), null,
+                        Integer.parseInt(matcher.group("returncode")), Integer.parseInt(matcher.group("bytecount")),
+                        LocalDateTime.from(FORMATTER.parse(matcher.group("datetime"))), "");
+            }
+            String host = null, caller = null, method = null, section = null, request = null, httpVersion = null;
+            int returnCode = 0;
+            long byteCount = 0;
+            LocalDateTime recordTime = null;
+            List<String> errors = new ArrayList<>();
+            if ((matcher = HOST_PATTERN.matcher(line)).find()) {
+                host = matcher.group("host");
+            }
+            else {
+                errors.add("host");
+            }
+            if ((matcher = CALLER_PATTERN.matcher(line)).find()) {
+                caller = matcher.group("caller");
+            }
+            else {
+                errors.add("caller");
+            }
+            if ((matcher = HTTP_METHOD_PATTERN.matcher(line)).find()) {
+                method = matcher.group("httpmethod");
+            }
+            else {
+                errors.add("http method");
+            }
+            if ((matcher = REQUEST_PATTERN.matcher(line)).find()) {
+                section = matcher.group("section");
+                request = matcher.group("request");
+            }
+            else {
+                errors.add("request/section");
+            }
+            if ((matcher = HTTP_VERSION_PATTERN.matcher(line)).find()) {
+                httpVersion = matcher.group("httpversion");
+            }
+            else {
+                errors.add("http version");
+            }
+            if ((matcher = RETURN_CODE_PATTERN.matcher(line)).find()) {
+                returnCode = Integer.parseInt(matcher.group("returncode"));
+            }
+            else {
+                errors.add("Http return code");
+            }
+            if ((matcher = BYTE_COUNT_PATTERN.matcher(line)).find()) {
+                byteCount = Integer.parseInt(matcher.group("bytecount"));
+            }
+            else {
+                errors.add("byte count");
+            }
+            if ((matcher = DATE_TIME_PATTERN.matcher(line)).find()) {
+                recordTime = LocalDateTime.from(FORMATTER.parse(matcher.group("datetime")));
+            }
+            else {
+                errors.add("date/time");
+            }
+            return describe(host, caller, method, section, request, httpVersion, returnCode, byteCount, recordTime,
+                    errors.isEmpty() ? "" : MISSING + errors);
+        } catch (RuntimeException e) {
+            return e.getClass().getName();
+        }
+    }
+
+    private static String describe(String host, String caller, String method, String section, String request,
+                                   String httpVersion, int returnCode, long byteCount, LocalDateTime recordTime,
+                                   String errors) {
+        return "host=" + host + ", caller=" + caller + ", method=" + method + ", section=" + section +
+                ", request=" + request + ", httpVersion=" + httpVersion + ", returnCode=" + returnCode +
+                ", byteCount=" + byteCount + ", recordTime=" + recordTime + ", " + errors;
+    }
+}
@@ -0,0 +1,172 @@
+package com.vgrazi.monitor.eventprocessor.processor;
+
+import com.vgrazi.monitor.eventprocessor.domain.Dimension;
+import com.vgrazi.monitor.eventprocessor.domain.Frame;
+import com.vgrazi.monitor.eventprocessor.domain.Record;
+import com.vgrazi.monitor.eventprocessor.domain.Scorecard;
+import com.vgrazi.monitor.eventprocessor.util.BinaryScorecardCodec;
+import com.vgrazi.monitor.eventprocessor.util.IngestMetrics;
+import com.vgrazi.monitor.eventprocessor.util.JsonScorecardCodec;
+import com.vgrazi.monitor.eventprocessor.util.StatsCruncher;
+import com.vgrazi.monitor.eventprocessor.util.WindowUtils;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.springframework.test.util.ReflectionTestUtils.setField;
+
+/**
+ * Feeds the same frames to a FrameProcessor that only writes keyframes and to one that writes deltas in between, and
+ * checks that each delta, completed from the scorecard before it, is the same as the corresponding keyframe
+ */
+public class FrameProcessorTest {
+    private static final int HISTORY_MAX_MESSAGES = 10;
+    private static final int FRAME_COUNT = 150;
+
+    private final List<FrameProcessor> processors = new ArrayList<>();
+
+    @After
+    public void stop() {
+        processors.forEach(FrameProcessor::stop);
+    }
+
+    @Test(timeout = 60_000)
+    public void completedDeltasMatchKeyframes() throws Exception {
+        assertCompletedDeltasMatchKeyframes(false, "");
+    }
+
+    @Test(timeout = 60_000)
+    public void completedDeltasMatchKeyframesWithHeavyHittersAndDistinctCounts() throws Exception {
+        assertCompletedDeltasMatchKeyframes(true, "host,caller");
+    }
+
+    private void assertCompletedDeltasMatchKeyframes(boolean heavyHitters, String distinctCountDimensions) throws Exception {
+        List<Scorecard> snapshots = process(1, heavyHitters, distinctCountDimensions);
+        List<Scorecard> scorecards = process(4, heavyHitters, distinctCountDimensions);
+        assertEquals(FRAME_COUNT, snapshots.size());
+        assertEquals(FRAME_COUNT, scorecards.size());
+
+        BinaryScorecardCodec codec = new BinaryScorecardCodec();
+        Scorecard model = null;
+        int deltasWithoutReport = 0;
+        int alerts = 0;
+        for (int i = 0; i < FRAME_COUNT; i++) {
+            Scorecard snapshot = snapshots.get(i);
+            assertTrue(snapshot.isKeyframe());
+            // the deltas go through the binary codec, to check that what they leave out survives as null
+            Scorecard scorecard = codec.decode(encode(codec, scorecards.get(i)));
+            assertEquals(i % 4 == 0, scorecard.isKeyframe());
+            if (!scorecard.isKeyframe()) {
+                assertTrue(scorecard.getHitCountSeries().length < snapshot.getHitCountSeries().length);
+                if (scorecard.getHitsReport() == null) {
+                    deltasWithoutReport++;
+                }
+                scorecard.completeFrom(model, HISTORY_MAX_MESSAGES);
+                scorecard.setKeyframe(true);
+            }
+            assertEquals("scorecard " + i, json(snapshot), json(scorecard));
+            alerts += snapshot.getAlert() != null ? 1 : 0;
+            model = scorecard;
+        }
+        // the report is only regenerated every few seconds, so most deltas leave it out
+        assertTrue(deltasWithoutReport > FRAME_COUNT / 4);
+        // and the history changed along the way
+        assertTrue(alerts > 1);
+    }
+
+    /**
+     * Runs the frames through a new FrameProcessor, and returns its scorecards
+     */
+    private List<Scorecard> process(int keyframeInterval, boolean heavyHitters, String distinctCountDimensions) throws Exception {
+        StatsCruncher statsCruncher = new StatsCruncher();
+        setField(statsCruncher, "reportStatsTimeSecs", 5);
+        setField(statsCruncher, "secondsOfThrashing", 5);
+        setField(statsCruncher, "secondsOfCalm", 3);
+        setField(statsCruncher, "alertThreshold", 30);
+        setField(statsCruncher, "heavyHittersEnabled", heavyHitters);
+        setField(statsCruncher, "heavyHittersTopN", 5);
+        setField(statsCruncher, "distinctCountDimensions", distinctCountDimensions);
+        WindowUtils windowUtils = new WindowUtils();
+        setField(windowUtils, "windowDuration", 30);
+        FrameProcessor processor = new FrameProcessor();
+        processors.add(processor);
+        setField(processor, "statsCruncher", statsCruncher);
+        setField(processor, "windowUtils", windowUtils);
+        setField(processor, "ingestMetrics", new IngestMetrics());
+        setField(processor, "batchSize", 16);
+        setField(processor, "batchMaxDelayMillis", 1L);
+        setField(processor, "legacyHitCounts", false);
+        setField(processor, "keyframeInterval", keyframeInterval);
+        setField(processor, "historyMaxMessages", HISTORY_MAX_MESSAGES);
+
+        BlockingQueue<Frame> frameQueue = new LinkedBlockingQueue<>();
+        BlockingQueue<Scorecard> scorecardQueue = new LinkedBlockingQueue<>();
+        frameQueue.addAll(frames(heavyHitters ? 16 : 0, statsCruncher.getDistinctCountDimensions()));
+        processor.processFrames(frameQueue, scorecardQueue);
+        List<Scorecard> scorecards = new ArrayList<>();
+        while (scorecards.size() < FRAME_COUNT) {
+            Scorecard scorecard = scorecardQueue.poll(10, TimeUnit.SECONDS);
+            assertNotNull(scorecard);
+            scorecards.add(scorecard);
+        }
+        assertNull(scorecardQueue.poll(10, TimeUnit.MILLISECONDS));
+        return scorecards;
+    }
+
+    /**
+     * Bursts of traffic above the alert threshold with quiet spells in between, some seconds with no frame, and now
+     * and then a late frame for a second already in the window
+     */
+    private static List<Frame> frames(int heavyHitterCapacity, Set<Dimension> distinctCountDimensions) {
+        Random random = new Random(37);
+        List<Frame> frames = new ArrayList<>();
+        long second = 1_000;
+        while (frames.size() < FRAME_COUNT) {
+            long frameSecond = second;
+            if (frames.size() % 7 == 6) {
+                frameSecond -= 1 + random.nextInt(3);
+            }
+            else {
+                second += random.nextInt(5) == 0 ? 2 : 1;
+            }
+            int hits = (second / 20) % 2 == 0 ? 40 + random.nextInt(20) : 1 + random.nextInt(5);
+            Frame frame = new Frame(false, heavyHitterCapacity, distinctCountDimensions);
+            frame.setFrameStartTime(frameSecond);
+            for (int i = 0; i < hits; i++) {
+                frame.addRecord(Record.fromLine(String.format(
+                        "10.0.0.%d - caller%d [11/Mar/2019:22:08:21 +0000] \"GET /section%d/page HTTP/1.0\" %d %d",
+                        random.nextInt(50), random.nextInt(30), random.nextInt(8), random.nextInt(10) == 0 ? 500 : 200,
+                        random.nextInt(10_000))));
+            }
+            frame.setFrameEndTime(frameSecond);
+            frames.add(frame);
+        }
+        return frames;
+    }
+
+    private static byte[] encode(BinaryScorecardCodec codec, Scorecard scorecard) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        codec.encode(scorecard, out);
+        return out.toByteArray();
+    }
+
+    private static String json(Scorecard scorecard) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new JsonScorecardCodec().encode(scorecard, out);
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,142 @@
+package com.vgrazi.monitor.eventprocessor.processor;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Function;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Appends to a file a few bytes at a time, as a writer that has not flushed whole lines would, and checks that both
+ * tailers carry the partial lines over until they are completed
+ */
+public class LineTailerTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private FileChannel writer;
+    private FileChannel reader;
+
+    @After
+    public void close() throws IOException {
+        if (writer != null) {
+            writer.close();
+            reader.close();
+        }
+    }
+
+    @Test
+    public void channelTailerCarriesPartialLinesOver() throws Exception {
+        assertCarriesPartialLinesOver(channel -> new ChannelLineTailer(channel, 16));
+    }
+
+    @Test
+    public void mappedTailerCarriesPartialLinesOver() throws Exception {
+        assertCarriesPartialLinesOver(channel -> new MappedLineTailer(channel, 0, 16, 8));
+    }
+
+    @Test
+    public void channelTailerReadsRandomlySplitAppends() throws Exception {
+        assertReadsRandomlySplitAppends(channel -> new ChannelLineTailer(channel, 16));
+    }
+
+    @Test
+    public void mappedTailerReadsRandomlySplitAppends() throws Exception {
+        assertReadsRandomlySplitAppends(channel -> new MappedLineTailer(channel, 0, 16, 8));
+    }
+
+    /**
+     * The pending line grows to more than twice the segment size on the read buffer path, and is then completed by
+     * an append large enough to be mapped
+     */
+    @Test
+    public void mappedTailerGrowsTheSegmentUntilThePendingLineFits() throws Exception {
+        LineTailer tailer = open(channel -> new MappedLineTailer(channel, 0, 16, 64));
+        List<String> lines = new ArrayList<>();
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 15; i++) {
+            append("abc");
+            expected.append("abc");
+            drain(tailer, lines);
+        }
+        append("0123456789\n");
+        expected.append("0123456789");
+        drain(tailer, lines);
+        assertEquals(Collections.singletonList(expected.toString()), lines);
+    }
+
+    private void assertCarriesPartialLinesOver(Function<FileChannel, LineTailer> factory) throws Exception {
+        LineTailer tailer = open(factory);
+        List<String> lines = new ArrayList<>();
+        append("first li");
+        drain(tailer, lines);
+        assertEquals(Collections.emptyList(), lines);
+        append("ne\nsecond");
+        drain(tailer, lines);
+        assertEquals(Collections.singletonList("first line"), lines);
+        append(" line, a good deal longer than any of the buffers\r\n\n   \nthird\n");
+        drain(tailer, lines);
+        assertEquals(Arrays.asList("first line", "second line, a good deal longer than any of the buffers", "third"), lines);
+    }
+
+    private void assertReadsRandomlySplitAppends(Function<FileChannel, LineTailer> factory) throws Exception {
+        LineTailer tailer = open(factory);
+        Random random = new Random(3);
+        StringBuilder text = new StringBuilder();
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            // mostly short lines, now and then one that spans several segments
+            int length = 1 + random.nextInt(random.nextInt(10) == 0 ? 300 : 40);
+            StringBuilder line = new StringBuilder();
+            for (int j = 0; j < length; j++) {
+                line.append((char) ('a' + random.nextInt(26)));
+            }
+            expected.add(line.toString());
+            text.append(line).append('\n');
+        }
+        List<String> lines = new ArrayList<>();
+        for (int from = 0; from < text.length(); ) {
+            int to = Math.min(text.length(), from + 1 + random.nextInt(random.nextInt(4) == 0 ? 100 : 6));
+            append(text.substring(from, to));
+            drain(tailer, lines);
+            from = to;
+        }
+        assertEquals(expected, lines);
+    }
+
+    private LineTailer open(Function<FileChannel, LineTailer> factory) throws IOException {
+        Path file = folder.newFile("access.log").toPath();
+        writer = FileChannel.open(file, StandardOpenOption.APPEND);
+        reader = FileChannel.open(file, StandardOpenOption.READ);
+        return factory.apply(reader);
+    }
+
+    private void append(String text) throws IOException {
+        writer.write(ByteBuffer.wrap(text.getBytes(StandardCharsets.ISO_8859_1)));
+    }
+
+    /**
+     * Polls until the tailer has caught up with the writer
+     */
+    private static void drain(LineTailer tailer, List<String> lines) throws Exception {
+        int consumed;
+        while ((consumed = tailer.poll(lines::add)) != 0) {
+            assertTrue("consumed " + consumed, consumed > 0);
+        }
+    }
+}
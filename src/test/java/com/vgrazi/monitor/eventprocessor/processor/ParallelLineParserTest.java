@@ -0,0 +1,135 @@
+package com.vgrazi.monitor.eventprocessor.processor;
+
+import com.vgrazi.monitor.eventprocessor.domain.Record;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ParallelLineParserTest {
+    /**
+     * The batches are parsed last first, and the resequencer still hands them back in the order they were read
+     */
+    @Test
+    public void recordsComeBackInFileOrderWhenBatchesCompleteOutOfOrder() throws Exception {
+        HeldExecutor pool = new HeldExecutor();
+        ParallelLineParser parser = new ParallelLineParser(pool, EnumSet.allOf(Record.Field.class), 3, 16);
+        List<String> sections = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            sections.add("/page" + i);
+            parser.onLine(line("/page" + i));
+        }
+        // the last, partial batch
+        parser.flush();
+        assertEquals(4, pool.tasks.size());
+        pool.runLastFirst();
+
+        List<String> parsed = new ArrayList<>();
+        List<Record> records;
+        while ((records = parser.poll(0, TimeUnit.MILLISECONDS)) != null) {
+            for (Record record : records) {
+                parsed.add(record.getSection());
+            }
+        }
+        assertEquals(sections, parsed);
+    }
+
+    /**
+     * On a real pool, with the resequencer on its own thread and the tailer waiting whenever maxInFlight batches are
+     * waiting to be taken
+     */
+    @Test(timeout = 60_000)
+    public void recordsComeBackInFileOrderFromAPool() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        ExecutorService resequencer = Executors.newSingleThreadExecutor();
+        try {
+            ParallelLineParser parser = new ParallelLineParser(pool, EnumSet.allOf(Record.Field.class), 7, 8);
+            int count = 5_000;
+            Future<List<String>> parsed = resequencer.submit(() -> {
+                List<String> taken = new ArrayList<>();
+                while (taken.size() < count) {
+                    for (Record record : parser.poll(10, TimeUnit.SECONDS)) {
+                        taken.add(record.getSection());
+                    }
+                }
+                return taken;
+            });
+            List<String> sections = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                sections.add("/page" + i);
+                parser.onLine(line("/page" + i));
+            }
+            parser.flush();
+            assertEquals(sections, parsed.get());
+        } finally {
+            pool.shutdown();
+            resequencer.shutdown();
+        }
+    }
+
+    @Test
+    public void pollReturnsNullWhenNothingWasRead() throws Exception {
+        ParallelLineParser parser = new ParallelLineParser(new HeldExecutor(), EnumSet.allOf(Record.Field.class), 3, 16);
+        parser.onLine(line("/page"));
+        // the partial batch is held until flushed
+        assertNull(parser.poll(10, TimeUnit.MILLISECONDS));
+    }
+
+    private static String line(String section) {
+        return "127.0.0.1 - james [11/Mar/2019:22:08:21 +9490] \"GET " + section + " HTTP/1.0\" 200 123";
+    }
+
+    /**
+     * Holds the submitted tasks until asked to run them
+     */
+    private static class HeldExecutor extends AbstractExecutorService {
+        private final List<Runnable> tasks = new ArrayList<>();
+
+        void runLastFirst() {
+            Collections.reverse(tasks);
+            for (Runnable task : tasks) {
+                task.run();
+            }
+            tasks.clear();
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            tasks.add(command);
+        }
+
+        @Override
+        public void shutdown() {
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return false;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return false;
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.vgrazi.monitor.eventprocessor.processor;
+
+import com.vgrazi.monitor.eventprocessor.domain.Record;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RecordMergerTest {
+    private final List<BlockingQueue<Record>> fileQueues = new ArrayList<>();
+    private final BlockingQueue<Record> recordQueue = new LinkedBlockingQueue<>();
+
+    /**
+     * Three files with interleaved times, all queued up, are merged into one stream in time order, each file's records
+     * still in file order
+     */
+    @Test
+    public void mergesInterleavedFilesInTimeOrder() throws Exception {
+        // with everything queued, a file only runs dry once all of its records have gone, so nothing need be held back
+        RecordMerger merger = newMerger(3, 0);
+        Random random = new Random(29);
+        int[] seconds = new int[3];
+        int count = 300;
+        for (int i = 0; i < count; i++) {
+            int file = random.nextInt(3);
+            // each file is in order, a second or so apart
+            seconds[file] += random.nextInt(3);
+            fileQueues.get(file).add(record(seconds[file], "/file" + file + "-" + i));
+        }
+        while (merger.mergeNext()) {
+            // merge them all
+        }
+        List<Record> merged = new ArrayList<>();
+        recordQueue.drainTo(merged);
+        assertEquals(count, merged.size());
+        int[] last = {-1, -1, -1};
+        for (int i = 0; i < merged.size(); i++) {
+            if (i > 0) {
+                assertTrue(merged.get(i - 1) + " before " + merged.get(i),
+                        merged.get(i - 1).getRecordEpochSecond() <= merged.get(i).getRecordEpochSecond());
+            }
+            String[] parts = merged.get(i).getSection().substring("/file".length()).split("-");
+            int file = Integer.parseInt(parts[0]);
+            int index = Integer.parseInt(parts[1]);
+            assertTrue(merged.get(i) + " after " + last[file], index > last[file]);
+            last[file] = index;
+        }
+    }
+
+    @Test
+    public void quietFileHoldsBackNewerRecordsUntilMaxWait() throws Exception {
+        RecordMerger merger = newMerger(2, 200);
+        fileQueues.get(0).add(record(10, "/busy"));
+        long start = System.nanoTime();
+        // the quiet file has delivered nothing yet, so might deliver something older
+        assertFalse(merger.mergeNext());
+        assertTrue(recordQueue.isEmpty());
+
+        // a record from the quiet file that is older still goes first
+        fileQueues.get(1).add(record(5, "/quiet"));
+        assertTrue(merger.mergeNext());
+        assertEquals("/quiet", recordQueue.take().getSection());
+        // the quiet file has gone quiet again, having only delivered second 5, which is older than 10
+        assertFalse(merger.mergeNext());
+
+        while (!merger.mergeNext()) {
+            Thread.sleep(10);
+        }
+        assertTrue("waited " + (System.nanoTime() - start) / 1_000_000 + "ms", System.nanoTime() - start >= 200_000_000L);
+        assertEquals("/busy", recordQueue.take().getSection());
+    }
+
+    @Test
+    public void recordsNoNewerThanTheQuietFilesLastArePassedOn() throws Exception {
+        RecordMerger merger = newMerger(2, 60_000);
+        fileQueues.get(0).add(record(5, "/a"));
+        fileQueues.get(1).add(record(5, "/b"));
+        assertTrue(merger.mergeNext());
+        assertTrue(merger.mergeNext());
+        // file 1 has delivered second 5, so a second 5 record from file 0 need not wait for it
+        fileQueues.get(0).add(record(5, "/c"));
+        fileQueues.get(0).add(record(6, "/d"));
+        assertTrue(merger.mergeNext());
+        assertFalse(merger.mergeNext());
+        List<String> sections = new ArrayList<>();
+        for (Record record : recordQueue) {
+            sections.add(record.getSection());
+        }
+        assertEquals(Arrays.asList("/a", "/b", "/c"), sections);
+    }
+
+    private RecordMerger newMerger(int files, long maxWaitMillis) {
+        for (int i = 0; i < files; i++) {
+            fileQueues.add(new LinkedBlockingQueue<>());
+        }
+        return new RecordMerger(fileQueues, recordQueue, true, maxWaitMillis);
+    }
+
+    private static Record record(int second, String section) {
+        return Record.fromLine(String.format("127.0.0.1 - james [11/Mar/2019:22:%02d:%02d +0000] \"GET %s HTTP/1.0\" 200 123",
+                second / 60, second % 60, section));
+    }
+}
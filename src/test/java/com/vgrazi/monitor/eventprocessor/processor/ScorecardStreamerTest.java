@@ -0,0 +1,125 @@
+package com.vgrazi.monitor.eventprocessor.processor;
+
+import com.sun.net.httpserver.HttpServer;
+import com.vgrazi.monitor.eventprocessor.domain.Scorecard;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.springframework.test.util.ReflectionTestUtils.getField;
+import static org.springframework.test.util.ReflectionTestUtils.setField;
+
+/**
+ * Starts the streamer on a free local port, connects a subscriber, and checks the first events it receives
+ */
+public class ScorecardStreamerTest {
+    private final ScorecardStreamer streamer = new ScorecardStreamer();
+    private HttpURLConnection connection;
+    private BufferedReader events;
+
+    @Before
+    public void start() throws IOException {
+        setField(streamer, "enabled", true);
+        setField(streamer, "address", "127.0.0.1");
+        setField(streamer, "port", 0);
+        setField(streamer, "bufferSize", 2);
+        setField(streamer, "keepAliveSeconds", 1);
+        streamer.start();
+    }
+
+    @After
+    public void stop() {
+        if (connection != null) {
+            connection.disconnect();
+        }
+        streamer.stop();
+    }
+
+    @Test(timeout = 30_000)
+    public void newSubscriberGetsTheKeyframeAndTheDeltasSince() throws Exception {
+        publish(1, true);
+        publish(2, false);
+        publish(3, false);
+        publish(4, false);
+        subscribe();
+        // more deltas than the subscriber's buffer holds, all replayed
+        assertEquals(Arrays.asList("1 keyframe", "2 delta", "3 delta", "4 delta"), next(4));
+        // then carries on from the next scorecard published, with no gap
+        publish(5, false);
+        publish(6, true);
+        assertEquals(Arrays.asList("5 delta", "6 keyframe"), next(2));
+    }
+
+    @Test(timeout = 30_000)
+    public void replayStartsFromTheLatestKeyframe() throws Exception {
+        // a delta before any keyframe can't be applied, so isn't replayed
+        publish(1, false);
+        publish(2, true);
+        publish(3, false);
+        publish(4, true);
+        publish(5, false);
+        subscribe();
+        assertEquals(Arrays.asList("4 keyframe", "5 delta"), next(2));
+        publish(6, false);
+        assertEquals(Arrays.asList("6 delta"), next(1));
+    }
+
+    @Test(timeout = 30_000)
+    public void subscriberBeforeTheFirstKeyframeGetsEverythingFromThen() throws Exception {
+        subscribe();
+        publish(1, true);
+        publish(2, false);
+        assertEquals(Arrays.asList("1 keyframe", "2 delta"), next(2));
+    }
+
+    private void publish(long sequence, boolean keyframe) throws IOException {
+        Scorecard scorecard = new Scorecard();
+        scorecard.setSequence(sequence);
+        scorecard.setKeyframe(keyframe);
+        streamer.publish(scorecard);
+    }
+
+    private void subscribe() throws IOException {
+        int port = ((HttpServer) getField(streamer, "server")).getAddress().getPort();
+        connection = (HttpURLConnection) new URL("http://127.0.0.1:" + port + "/scorecards").openConnection();
+        connection.setReadTimeout(10_000);
+        assertEquals(200, connection.getResponseCode());
+        assertEquals("text/event-stream", connection.getContentType());
+        events = new BufferedReader(new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Reads the next count events, skipping keep-alives, as "id event"
+     */
+    private List<String> next(int count) throws IOException {
+        List<String> received = new ArrayList<>();
+        String id = null;
+        String event = null;
+        String line;
+        while (received.size() < count && (line = events.readLine()) != null) {
+            if (line.startsWith("id: ")) {
+                id = line.substring(4);
+            }
+            else if (line.startsWith("event: ")) {
+                event = line.substring(7);
+            }
+            else if (line.isEmpty() && id != null) {
+                received.add(id + " " + event);
+                id = null;
+                event = null;
+            }
+        }
+        return received;
+    }
+}
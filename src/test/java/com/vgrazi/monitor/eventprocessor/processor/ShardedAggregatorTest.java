@@ -0,0 +1,128 @@
+package com.vgrazi.monitor.eventprocessor.processor;
+
+import com.vgrazi.monitor.eventprocessor.domain.Dimension;
+import com.vgrazi.monitor.eventprocessor.domain.Frame;
+import com.vgrazi.monitor.eventprocessor.domain.Record;
+import com.vgrazi.monitor.eventprocessor.util.Dictionary;
+import com.vgrazi.monitor.eventprocessor.util.HyperLogLog;
+import com.vgrazi.monitor.eventprocessor.util.IntLongMap;
+import com.vgrazi.monitor.eventprocessor.util.SpaceSaving;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Folds the same records into Frames on one thread and on the shards, and compares the Frames
+ */
+public class ShardedAggregatorTest {
+    private static final Set<Dimension> DISTINCT_COUNT_DIMENSIONS = EnumSet.of(Dimension.HOST, Dimension.CALLER);
+    // more than the distinct values of any dimension below, so that the heavy hitter counts are exact either way
+    private static final int HEAVY_HITTER_CAPACITY = 64;
+
+    private final ShardedAggregator aggregator = new ShardedAggregator(3, 16, 1);
+
+    @After
+    public void stop() {
+        aggregator.stop();
+    }
+
+    private int heavyHitterCapacity;
+
+    @Test(timeout = 60_000)
+    public void shardedFramesMatchFramesFoldedOnOneThread() throws Exception {
+        assertShardedFramesMatch();
+    }
+
+    @Test(timeout = 60_000)
+    public void shardedHeavyHittersMatchThoseFoldedOnOneThread() throws Exception {
+        heavyHitterCapacity = HEAVY_HITTER_CAPACITY;
+        assertShardedFramesMatch();
+    }
+
+    private void assertShardedFramesMatch() throws Exception {
+        Random random = new Random(31);
+        for (int second = 0; second < 20; second++) {
+            List<Record> records = new ArrayList<>();
+            for (int i = random.nextInt(500); i >= 0; i--) {
+                records.add(record(random));
+            }
+            Frame single = newFrame(second);
+            for (Record record : records) {
+                single.addRecord(record);
+            }
+            Frame sharded = newFrame(second);
+            for (int i = 0; i < records.size(); i++) {
+                aggregator.add(sharded, records.get(i));
+                if (i % 100 == 99) {
+                    aggregator.flush();
+                }
+            }
+            aggregator.close(sharded);
+            aggregator.awaitClosed();
+            assertSameFrame(single, sharded);
+        }
+    }
+
+    private void assertSameFrame(Frame expected, Frame actual) {
+        assertEquals(expected.getRecords(), actual.getRecords());
+        assertEquals(expected.getHitCount(), actual.getHitCount());
+        assertEquals(expected.getSectionCounts().toMap(Dictionary.SECTIONS), actual.getSectionCounts().toMap(Dictionary.SECTIONS));
+        assertEquals(expected.getFailedSectionCounts().toMap(Dictionary.SECTIONS),
+                actual.getFailedSectionCounts().toMap(Dictionary.SECTIONS));
+        for (int statusClass = 0; statusClass <= 5; statusClass++) {
+            assertEquals(expected.getStatusClassCount(statusClass), actual.getStatusClassCount(statusClass));
+        }
+        assertEquals(expected.getByteCount(), actual.getByteCount());
+        assertEquals(expected.getSectionBytes().toMap(Dictionary.SECTIONS), actual.getSectionBytes().toMap(Dictionary.SECTIONS));
+        assertEquals(toMap(expected.getSectionByteBuckets()), toMap(actual.getSectionByteBuckets()));
+
+        SpaceSaving[] expectedHeavyHitters = expected.takeHeavyHitters();
+        SpaceSaving[] actualHeavyHitters = actual.takeHeavyHitters();
+        assertEquals(heavyHitterCapacity > 0, actualHeavyHitters != null);
+        if (actualHeavyHitters != null) {
+            for (Dimension dimension : Dimension.values()) {
+                int i = dimension.ordinal();
+                assertEquals(dimension.name(),
+                        SpaceSaving.topK(Collections.singletonList(expectedHeavyHitters[i]), heavyHitterCapacity).getCounts(),
+                        SpaceSaving.topK(Collections.singletonList(actualHeavyHitters[i]), heavyHitterCapacity).getCounts());
+            }
+        }
+        HyperLogLog[] expectedDistinctCounts = expected.takeDistinctCounts();
+        HyperLogLog[] actualDistinctCounts = actual.takeDistinctCounts();
+        for (Dimension dimension : DISTINCT_COUNT_DIMENSIONS) {
+            HyperLogLog expectedSketch = expectedDistinctCounts[dimension.ordinal()];
+            HyperLogLog actualSketch = actualDistinctCounts[dimension.ordinal()];
+            for (int register = 0; register < HyperLogLog.REGISTER_COUNT; register++) {
+                assertEquals(expectedSketch.getRegister(register), actualSketch.getRegister(register));
+            }
+        }
+    }
+
+    private static Map<Integer, Long> toMap(IntLongMap map) {
+        Map<Integer, Long> boxed = new HashMap<>();
+        map.forEach(boxed::put);
+        return boxed;
+    }
+
+    private Frame newFrame(long second) {
+        Frame frame = new Frame(true, heavyHitterCapacity, DISTINCT_COUNT_DIMENSIONS);
+        frame.setFrameStartTime(second);
+        return frame;
+    }
+
+    private static Record record(Random random) {
+        int returnCode = random.nextInt(10) == 0 ? 404 : 200;
+        return Record.fromLine(String.format("10.0.0.%d - caller%d [11/Mar/2019:22:08:21 +0000] \"GET /section%d/page HTTP/1.0\" %d %d",
+                random.nextInt(20), random.nextInt(30), random.nextInt(40), returnCode, random.nextInt(100_000)));
+    }
+}
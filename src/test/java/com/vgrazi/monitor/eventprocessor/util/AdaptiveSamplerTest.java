@@ -0,0 +1,108 @@
+package com.vgrazi.monitor.eventprocessor.util;
+
+import com.vgrazi.monitor.eventprocessor.domain.Record;
+import org.junit.Test;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AdaptiveSamplerTest {
+    private static final String LINE = "127.0.0.1 - james [11/Mar/2019:22:08:21 +9490] \"GET /report HTTP/1.0\" 200 123";
+    private static final int THRESHOLD = 100;
+    // the sampler re-measures the lag every 256 records
+    private static final int ADJUST_EVERY = 256;
+
+    private final BlockingQueue<Record> recordQueue = new LinkedBlockingQueue<>();
+    private final IngestMetrics metrics = new IngestMetrics();
+    private AdaptiveSampler sampler = new AdaptiveSampler(recordQueue, THRESHOLD, 16, metrics);
+    private long seen;
+    private long admitted;
+    private long weights;
+
+    @Test
+    public void intervalDoublesAboveTheThresholdUpToTheMaximum() {
+        setLag(THRESHOLD + 1);
+        for (int expected : new int[]{2, 4, 8, 16, 16}) {
+            admitAll(ADJUST_EVERY);
+            assertEquals(expected, metrics.getSamplingInterval());
+        }
+    }
+
+    @Test
+    public void intervalHalvesBelowHalfTheThreshold() {
+        setLag(THRESHOLD + 1);
+        admitAll(4 * ADJUST_EVERY);
+        assertEquals(16, metrics.getSamplingInterval());
+
+        // between half the threshold and the threshold, the interval stays put
+        setLag(THRESHOLD / 2);
+        admitAll(ADJUST_EVERY);
+        assertEquals(16, metrics.getSamplingInterval());
+
+        setLag(THRESHOLD / 2 - 1);
+        for (int expected : new int[]{8, 4, 2, 1, 1}) {
+            admitAll(ADJUST_EVERY);
+            assertEquals(expected, metrics.getSamplingInterval());
+        }
+    }
+
+    @Test
+    public void noSamplingBelowTheThreshold() {
+        setLag(THRESHOLD);
+        admitAll(10 * ADJUST_EVERY);
+        assertEquals(0, metrics.getSampledOut());
+        assertEquals(seen, weights);
+    }
+
+    /**
+     * Whenever a record is admitted, the weights so far must add up to the records seen so far, however the interval
+     * has changed in between. The lag goes up and down, so the interval does too
+     */
+    @Test
+    public void weightsAddUpToTheRecordsSeen() {
+        // a maximum that doesn't divide the adjustment period, so that the interval changes part way through a block
+        sampler = new AdaptiveSampler(recordQueue, THRESHOLD, 48, metrics);
+        int[] lags = {THRESHOLD + 1, THRESHOLD + 1, THRESHOLD + 1, THRESHOLD + 1, THRESHOLD + 1, THRESHOLD + 1, 0,
+                THRESHOLD + 1, 0, 0, 0, THRESHOLD + 1, 0};
+        for (int round = 0; round < 20; round++) {
+            setLag(lags[round % lags.length]);
+            admitAll(ADJUST_EVERY + round * 37);
+        }
+        // admit checks the weights at every admission, including this one, which ends the last weighted block
+        while (!admit()) {
+            // sampled out
+        }
+        assertTrue(metrics.getSampledOut() > 0);
+        assertEquals(seen - admitted, metrics.getSampledOut());
+    }
+
+    private void admitAll(int count) {
+        for (int i = 0; i < count; i++) {
+            admit();
+        }
+    }
+
+    private boolean admit() {
+        Record record = Record.fromLine(LINE);
+        if (!sampler.admit(record)) {
+            seen++;
+            return false;
+        }
+        assertEquals("weights before record " + seen, seen, weights);
+        seen++;
+        admitted++;
+        weights += record.getWeight();
+        return true;
+    }
+
+    private void setLag(int lag) {
+        recordQueue.clear();
+        Record record = Record.fromLine(LINE);
+        for (int i = 0; i < lag; i++) {
+            recordQueue.add(record);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.vgrazi.monitor.eventprocessor.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+
+public class DictionaryTest {
+    @Test
+    public void valuesGetDenseIdsFromRegionsOfTheLine() {
+        Dictionary dictionary = new Dictionary("section", 10);
+        String line = "GET /report /api /report";
+        int report = dictionary.idOf(line, 4, 11);
+        int api = dictionary.idOf(line, 12, 16);
+        assertEquals(1, report);
+        assertEquals(2, api);
+        assertEquals(report, dictionary.idOf(line, 17, 24));
+        assertSame(dictionary.valueOf(report), dictionary.intern(line, 17, 24));
+        assertEquals(report, dictionary.find("/report"));
+        assertEquals(Dictionary.NO_ID, dictionary.find("/missing"));
+    }
+
+    @Test
+    public void newValuesShareTheOtherIdOnceFull() {
+        Dictionary dictionary = new Dictionary("section", 3);
+        assertEquals(1, dictionary.idOf("/a"));
+        assertEquals(2, dictionary.idOf("/b"));
+        assertEquals(Dictionary.OTHER, dictionary.idOf("/c"));
+        assertEquals(Dictionary.OTHER, dictionary.idOf("/d"));
+        assertEquals("/c", dictionary.intern("/c", 0, 2));
+        // values interned before it filled up keep their ids
+        assertEquals(2, dictionary.idOf("/b"));
+        assertEquals(3, dictionary.size());
+    }
+
+    @Test
+    public void raisingTheMaxSizeMakesRoomForNewValues() {
+        Dictionary dictionary = new Dictionary("host", 2);
+        int a = dictionary.idOf("a");
+        assertEquals(Dictionary.OTHER, dictionary.idOf("b"));
+        dictionary.setMaxSize(3);
+        int b = dictionary.idOf("b");
+        assertNotEquals(Dictionary.OTHER, b);
+        assertEquals(a, dictionary.idOf("a"));
+        assertEquals("b", dictionary.valueOf(b));
+    }
+}
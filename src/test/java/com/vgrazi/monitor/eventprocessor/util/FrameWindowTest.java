@@ -0,0 +1,110 @@
+package com.vgrazi.monitor.eventprocessor.util;
+
+import com.vgrazi.monitor.eventprocessor.domain.Frame;
+import com.vgrazi.monitor.eventprocessor.domain.Record;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class FrameWindowTest {
+    private static final String LINE = "127.0.0.1 - james [11/Mar/2019:22:08:21 +9490] \"GET /report HTTP/1.0\" 200 123";
+
+    private final FrameWindow window = new FrameWindow(5);
+    private final List<Frame> added = new ArrayList<>();
+    private final List<Frame> evicted = new ArrayList<>();
+    private final WindowListener listener = new WindowListener() {
+        @Override
+        public void frameAdded(Frame frame) {
+            added.add(frame);
+        }
+
+        @Override
+        public void frameEvicted(Frame frame) {
+            evicted.add(frame);
+        }
+    };
+
+    @Test
+    public void newerFramesEvictTheSecondsThatFallOut() {
+        Frame f100 = add(100, 1);
+        Frame f101 = add(101, 1);
+        Frame f103 = add(103, 1);
+        assertEquals(3, window.getFrameCount());
+        assertSame(f100, window.getFirst());
+        assertNull(window.get(102));
+
+        // 105 pushes 100 out of the 5 second window
+        Frame f105 = add(105, 1);
+        assertEquals(Arrays.asList(f100), evicted);
+        assertEquals(101, window.getOldestSecond());
+        assertNull(window.get(100));
+        assertEquals(Arrays.asList(f101, f103, f105), frames());
+
+        // a gap longer than the window evicts everything, once
+        Frame f200 = add(200, 1);
+        assertEquals(Arrays.asList(f100, f101, f103, f105), evicted);
+        assertEquals(Arrays.asList(f200), frames());
+        assertSame(f200, window.getLast());
+        assertEquals(1, window.getFrameCount());
+    }
+
+    @Test
+    public void lateFrameIsMergedIntoItsSlot() {
+        Frame f100 = add(100, 2);
+        add(102, 1);
+        Frame late = frame(100, 3);
+        assertTrue(window.add(late, listener));
+        // the late frame is merged into the one already there, and the listener sees only the late frame's records
+        assertSame(f100, window.get(100));
+        assertEquals(5, f100.getHitCount());
+        assertEquals(5, f100.getRecords().size());
+        assertSame(late, added.get(added.size() - 1));
+        assertEquals(2, window.getFrameCount());
+        assertTrue(evicted.isEmpty());
+
+        // a late frame for an empty second in the window takes the slot
+        Frame f99 = add(99, 1);
+        assertSame(f99, window.get(99));
+        assertEquals(3, window.getFrameCount());
+        assertSame(f99, window.getFirst());
+    }
+
+    @Test
+    public void frameOlderThanTheWindowIsDiscarded() {
+        add(100, 1);
+        Frame old = frame(95, 1);
+        assertFalse(window.add(old, listener));
+        assertFalse(added.contains(old));
+        assertEquals(1, window.getFrameCount());
+        assertNull(window.get(95));
+    }
+
+    private Frame add(long second, int hits) {
+        Frame frame = frame(second, hits);
+        assertTrue(window.add(frame, listener));
+        return frame;
+    }
+
+    private List<Frame> frames() {
+        List<Frame> frames = new ArrayList<>();
+        window.forEach(frames::add);
+        return frames;
+    }
+
+    private static Frame frame(long second, int hits) {
+        Frame frame = new Frame();
+        frame.setFrameStartTime(second);
+        for (int i = 0; i < hits; i++) {
+            frame.addRecord(Record.fromLine(LINE));
+        }
+        return frame;
+    }
+}
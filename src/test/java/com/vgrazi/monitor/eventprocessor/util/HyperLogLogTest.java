@@ -0,0 +1,108 @@
+package com.vgrazi.monitor.eventprocessor.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HyperLogLogTest {
+    private static final double THREE_SIGMA = 3 * HyperLogLog.STANDARD_ERROR;
+
+    @Test
+    public void estimateIsWithinThreeStandardErrors() {
+        HyperLogLog sketch = new HyperLogLog();
+        int added = 0;
+        for (int distinct : new int[]{10, 100, 1_000, 10_000, 100_000}) {
+            for (; added < distinct; added++) {
+                sketch.add("10.0." + (added >> 8) + "." + (added & 0xff));
+            }
+            assertWithin(distinct, sketch.estimate(), THREE_SIGMA);
+        }
+    }
+
+    @Test
+    public void repeatedValuesAreNotCountedAgain() {
+        HyperLogLog sketch = new HyperLogLog();
+        Random random = new Random(11);
+        for (int i = 0; i < 100_000; i++) {
+            sketch.add("caller" + random.nextInt(5_000));
+        }
+        assertWithin(5_000, sketch.estimate(), THREE_SIGMA);
+    }
+
+    @Test
+    public void mergeEstimatesTheUnion() {
+        HyperLogLog left = new HyperLogLog();
+        HyperLogLog right = new HyperLogLog();
+        HyperLogLog union = new HyperLogLog();
+        for (int i = 0; i < 60_000; i++) {
+            String value = "host" + i;
+            if (i < 40_000) {
+                left.add(value);
+            }
+            if (i >= 20_000) {
+                right.add(value);
+            }
+            union.add(value);
+        }
+        left.merge(right);
+        assertEquals(union.estimate(), left.estimate());
+        assertWithin(60_000, left.estimate(), THREE_SIGMA);
+    }
+
+    /**
+     * Once some seconds have left the window, the sliding sketch's estimate for each range is exactly that of a
+     * HyperLogLog of the frames still in that range
+     */
+    @Test
+    public void slidingSketchAgreesWithAFreshSketchOfTheRange() {
+        int windowSeconds = 30;
+        SlidingHyperLogLog sliding = new SlidingHyperLogLog(windowSeconds);
+        List<HyperLogLog> frames = new ArrayList<>();
+        Random random = new Random(13);
+        for (int second = 0; second < 100; second++) {
+            HyperLogLog frame = new HyperLogLog();
+            // a slowly shifting population of hosts, so that the values in range change as the window slides
+            for (int i = 0; i < 500; i++) {
+                frame.add("host" + (second * 50 + random.nextInt(2_000)));
+            }
+            frames.add(frame);
+            sliding.add(frame, second);
+            if (second >= windowSeconds) {
+                for (int range : new int[]{1, 10, windowSeconds, 2 * windowSeconds}) {
+                    HyperLogLog fresh = new HyperLogLog();
+                    for (int s = second - Math.min(range, windowSeconds) + 1; s <= second; s++) {
+                        fresh.merge(frames.get(s));
+                    }
+                    assertEquals("second " + second + " range " + range, fresh.estimate(), sliding.estimate(range));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void slidingSketchForgetsSecondsThatLeaveTheWindow() {
+        SlidingHyperLogLog sliding = new SlidingHyperLogLog(10);
+        HyperLogLog many = new HyperLogLog();
+        for (int i = 0; i < 50_000; i++) {
+            many.add("caller" + i);
+        }
+        HyperLogLog few = new HyperLogLog();
+        for (int i = 0; i < 100; i++) {
+            few.add("other" + i);
+        }
+        sliding.add(many, 0);
+        sliding.add(few, 5);
+        assertWithin(50_100, sliding.estimate(10), THREE_SIGMA);
+        sliding.add(few, 10);
+        assertWithin(100, sliding.estimate(10), THREE_SIGMA);
+    }
+
+    private static void assertWithin(long expected, long estimate, double relativeError) {
+        assertTrue(estimate + " for " + expected, Math.abs(estimate - expected) <= relativeError * expected);
+    }
+}
@@ -0,0 +1,132 @@
+package com.vgrazi.monitor.eventprocessor.util;
+
+import com.vgrazi.monitor.eventprocessor.domain.Frame;
+import com.vgrazi.monitor.eventprocessor.domain.Record;
+import com.vgrazi.monitor.eventprocessor.domain.ResponseSizes;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LogHistogramTest {
+    private static final double[] PERCENTILES = {1, 25, 50, 90, 95, 99, 99.9, 100};
+
+    @Test
+    public void bucketsAreContiguousAndCoverEveryValue() {
+        for (int bucket = 0; bucket < LogHistogram.bucketOf(Long.MAX_VALUE); bucket++) {
+            assertEquals("bucket " + bucket, LogHistogram.highestValue(bucket) + 1, LogHistogram.lowestValue(bucket + 1));
+        }
+        assertTrue(LogHistogram.bucketOf(Long.MAX_VALUE) < LogHistogram.BUCKET_COUNT);
+        for (int power = 0; power < 63; power++) {
+            for (long value : new long[]{(1L << power) - 1, 1L << power, (1L << power) + 1}) {
+                int bucket = LogHistogram.bucketOf(value);
+                assertTrue(value + " in bucket " + bucket, LogHistogram.lowestValue(bucket) <= value
+                        && value <= LogHistogram.highestValue(bucket));
+            }
+        }
+    }
+
+    /**
+     * A percentile is reported as the highest value of its bucket, so it is never below the exact percentile, and at
+     * most 1/16 above it
+     */
+    @Test
+    public void percentileIsWithinTheBucketErrorOfTheExactValue() {
+        Random random = new Random(5);
+        LogHistogram histogram = new LogHistogram();
+        long[] values = new long[100_000];
+        for (int i = 0; i < values.length; i++) {
+            // response sizes are roughly log normal
+            values[i] = (long) Math.exp(7 + 2 * random.nextGaussian());
+            histogram.record(values[i], 1);
+        }
+        Arrays.sort(values);
+        for (double percentile : PERCENTILES) {
+            long exact = values[(int) Math.max(0, Math.ceil(percentile / 100 * values.length) - 1)];
+            long reported = histogram.getValueAtPercentile(percentile);
+            assertTrue(percentile + "%: " + reported + " < " + exact, reported >= exact);
+            assertTrue(percentile + "%: " + reported + " vs " + exact, reported <= exact + exact / 16);
+        }
+    }
+
+    /**
+     * Subtracting the values that leave the window gives the same histogram as one of the values that remain
+     */
+    @Test
+    public void subtractingTheEvictedValuesLeavesTheRemainingOnes() {
+        Random random = new Random(7);
+        LogHistogram window = new LogHistogram();
+        LogHistogram remaining = new LogHistogram();
+        List<Long> evicted = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            long value = random.nextInt(1 << (1 + random.nextInt(20)));
+            window.record(value, 1);
+            if (i < 6_000) {
+                evicted.add(value);
+            }
+            else {
+                remaining.record(value, 1);
+            }
+        }
+        // a second histogram, like the next Frame's, added in and taken back out
+        LogHistogram other = new LogHistogram();
+        other.record(1L << 40, 3);
+        window.add(other);
+        for (long value : evicted) {
+            window.record(value, -1);
+        }
+        other.record(1L << 40, -6);
+        window.add(other);
+        assertEquals(remaining.getTotalCount(), window.getTotalCount());
+        for (double percentile : PERCENTILES) {
+            assertEquals(percentile + "%", remaining.getValueAtPercentile(percentile), window.getValueAtPercentile(percentile));
+        }
+    }
+
+    /**
+     * The window's histograms subtract each evicted Frame's buckets, per section and for all sections together
+     */
+    @Test
+    public void responseSizeHistogramsSubtractTheEvictedFrames() {
+        ResponseSizeHistograms histograms = new ResponseSizeHistograms(60);
+        Frame large = frame(100, "/large", 1_000_000, 5_000_000);
+        Frame small = frame(101, "/small", 10, 500);
+        Frame mixed = frame(102, "/large", 100, 200);
+        histograms.frameAdded(large);
+        histograms.frameAdded(small);
+        histograms.frameAdded(mixed);
+        histograms.frameEvicted(large);
+
+        ResponseSizeHistograms expected = new ResponseSizeHistograms(60);
+        expected.frameAdded(small);
+        expected.frameAdded(mixed);
+        int largeId = Dictionary.SECTIONS.find("/large");
+        assertPercentiles(expected.getResponseSizes(largeId), histograms.getResponseSizes(largeId));
+        assertPercentiles(expected.getAllResponseSizes(), histograms.getAllResponseSizes());
+        assertTrue(histograms.getAllResponseSizes().getP99() < 1_000_000);
+
+        histograms.frameEvicted(mixed);
+        assertEquals(null, histograms.getResponseSizes(largeId));
+    }
+
+    private static void assertPercentiles(ResponseSizes expected, ResponseSizes actual) {
+        assertEquals(expected.getP50(), actual.getP50());
+        assertEquals(expected.getP95(), actual.getP95());
+        assertEquals(expected.getP99(), actual.getP99());
+    }
+
+    private static Frame frame(long second, String section, int fromBytes, int toBytes) {
+        Frame frame = new Frame(false);
+        frame.setFrameStartTime(second);
+        for (int bytes = fromBytes; bytes <= toBytes; bytes += (toBytes - fromBytes) / 50) {
+            frame.addRecord(Record.fromLine("127.0.0.1 - james [11/Mar/2019:22:08:21 +9490] \"GET " + section
+                    + " HTTP/1.0\" 200 " + bytes));
+        }
+        return frame;
+    }
+}
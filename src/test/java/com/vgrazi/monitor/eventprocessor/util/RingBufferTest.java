@@ -0,0 +1,193 @@
+package com.vgrazi.monitor.eventprocessor.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RingBufferTest {
+    private static final int PRODUCERS = 3;
+    private static final int PER_PRODUCER = 50_000;
+
+    private static RingBuffer<Long> newRing(int capacity) {
+        return new RingBuffer<>(capacity, new SpinThenParkWaitStrategy(1));
+    }
+
+    /**
+     * Several producers put through a small ring, so the sequences wrap around many times. Each element is the
+     * producer number and its own sequence, so the consumer can check that every producer's elements arrive once each,
+     * in the order that producer put them
+     */
+    @Test(timeout = 120_000)
+    public void multipleProducersKeepTheirOrderAndLoseNothing() throws Exception {
+        RingBuffer<Long> ring = newRing(8);
+        ExecutorService executor = Executors.newFixedThreadPool(PRODUCERS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> producers = new ArrayList<>();
+        for (int p = 0; p < PRODUCERS; p++) {
+            int producer = p;
+            producers.add(executor.submit(() -> {
+                start.await();
+                List<Long> batch = new ArrayList<>();
+                for (long i = 0; i < PER_PRODUCER; i++) {
+                    long element = (long) producer << 32 | i;
+                    // each producer mixes the ways of putting
+                    switch (producer) {
+                        case 0:
+                            ring.put(element);
+                            break;
+                        case 1:
+                            while (!ring.offer(element, 1, TimeUnit.SECONDS)) {
+                                // the consumer has fallen behind; try again
+                            }
+                            break;
+                        default:
+                            batch.add(element);
+                            if (batch.size() == 5 || i == PER_PRODUCER - 1) {
+                                ring.putAll(batch);
+                                batch.clear();
+                            }
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+
+        long[] next = new long[PRODUCERS];
+        List<Long> drained = new ArrayList<>();
+        int received = 0;
+        while (received < PRODUCERS * PER_PRODUCER) {
+            // alternate between taking one and draining several
+            if (received % 2 == 0) {
+                drained.add(ring.take());
+            }
+            else {
+                ring.drainTo(drained, 3);
+            }
+            for (Long element : drained) {
+                int producer = (int) (element >>> 32);
+                long sequence = element & 0xFFFFFFFFL;
+                assertEquals("producer " + producer, next[producer], sequence);
+                next[producer]++;
+                received++;
+            }
+            drained.clear();
+        }
+        for (Future<?> producer : producers) {
+            producer.get();
+        }
+        executor.shutdown();
+        assertNull(ring.poll());
+        assertEquals(0, ring.size());
+        for (int p = 0; p < PRODUCERS; p++) {
+            assertEquals(PER_PRODUCER, next[p]);
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void putWaitsForRoom() throws Exception {
+        RingBuffer<Long> ring = newRing(2);
+        ring.put(1L);
+        ring.put(2L);
+        assertFalse(ring.offer(3L));
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<?> put = executor.submit(() -> {
+            ring.put(3L);
+            return null;
+        });
+        try {
+            put.get(200, TimeUnit.MILLISECONDS);
+            fail("put should wait while the ring is full");
+        } catch (TimeoutException expected) {
+            // still waiting
+        }
+        assertEquals(Long.valueOf(1), ring.poll());
+        put.get(5, TimeUnit.SECONDS);
+        assertEquals(Arrays.asList(2L, 3L), drain(ring));
+        executor.shutdown();
+    }
+
+    @Test(timeout = 10_000)
+    public void takeWaitsForAnElement() throws Exception {
+        RingBuffer<Long> ring = newRing(4);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<Long> take = executor.submit(ring::take);
+        try {
+            take.get(200, TimeUnit.MILLISECONDS);
+            fail("take should wait while the ring is empty");
+        } catch (TimeoutException expected) {
+            // still waiting
+        }
+        ring.put(7L);
+        assertEquals(Long.valueOf(7), take.get(5, TimeUnit.SECONDS));
+        executor.shutdown();
+    }
+
+    @Test(timeout = 10_000)
+    public void timedPollAndOfferGiveUpAfterTheTimeout() throws Exception {
+        RingBuffer<Long> ring = newRing(2);
+        long start = System.nanoTime();
+        assertNull(ring.poll(100, TimeUnit.MILLISECONDS));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(100));
+
+        ring.put(1L);
+        ring.put(2L);
+        start = System.nanoTime();
+        assertFalse(ring.offer(3L, 100, TimeUnit.MILLISECONDS));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(100));
+        assertEquals(Arrays.asList(1L, 2L), drain(ring));
+
+        assertTrue(ring.offer(3L, 100, TimeUnit.MILLISECONDS));
+        assertEquals(Long.valueOf(3), ring.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void capacityIsRoundedUpToAPowerOf2() {
+        assertEquals(8, newRing(5).capacity());
+        assertEquals(8, newRing(8).capacity());
+        assertEquals(2, newRing(1).capacity());
+    }
+
+    @Test
+    public void iteratorIsAReadOnlySnapshot() throws Exception {
+        RingBuffer<Long> ring = newRing(4);
+        ring.put(1L);
+        ring.put(2L);
+        Iterator<Long> iterator = ring.iterator();
+        assertEquals(Long.valueOf(1), iterator.next());
+        try {
+            iterator.remove();
+            fail("only the consumer may remove elements");
+        } catch (UnsupportedOperationException expected) {
+            // as documented
+        }
+        try {
+            ring.remove(2L);
+            fail("only the consumer may remove elements");
+        } catch (UnsupportedOperationException expected) {
+            // as documented
+        }
+        assertEquals(Arrays.asList(1L, 2L), drain(ring));
+    }
+
+    private static List<Long> drain(RingBuffer<Long> ring) {
+        List<Long> elements = new ArrayList<>();
+        ring.drainTo(elements);
+        return elements;
+    }
+}
@@ -0,0 +1,255 @@
+package com.vgrazi.monitor.eventprocessor.util;
+
+import com.vgrazi.monitor.eventprocessor.domain.DistinctCount;
+import com.vgrazi.monitor.eventprocessor.domain.HeavyHitters;
+import com.vgrazi.monitor.eventprocessor.domain.ResponseSizes;
+import com.vgrazi.monitor.eventprocessor.domain.Scorecard;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ScorecardCodecTest {
+    private static final String[] CODECS = {"json", "binary"};
+
+    @Test
+    public void fullScorecardRoundTrips() throws IOException {
+        for (String name : CODECS) {
+            ScorecardCodec codec = ScorecardCodecs.create(name);
+            Scorecard scorecard = createScorecard();
+            assertScorecardEquals(name, scorecard, codec.decode(encode(codec, scorecard)));
+        }
+    }
+
+    @Test
+    public void emptyScorecardRoundTrips() throws IOException {
+        for (String name : CODECS) {
+            ScorecardCodec codec = ScorecardCodecs.create(name);
+            Scorecard scorecard = new Scorecard();
+            assertScorecardEquals(name, scorecard, codec.decode(encode(codec, scorecard)));
+        }
+    }
+
+    @Test
+    public void codecIsDetectedFromTheBytes() throws IOException {
+        Scorecard scorecard = createScorecard();
+        for (String name : CODECS) {
+            ScorecardCodec codec = ScorecardCodecs.create(name);
+            assertSame(name, codec, ScorecardCodecs.detect(encode(codec, scorecard)));
+        }
+        assertSame(ScorecardCodecs.create("json"), ScorecardCodecs.detect(new byte[0]));
+    }
+
+    @Test
+    public void binaryIsSmallerThanJson() throws IOException {
+        Scorecard scorecard = createScorecard();
+        int json = encode(ScorecardCodecs.create("json"), scorecard).length;
+        int binary = encode(ScorecardCodecs.create("binary"), scorecard).length;
+        assertTrue(binary + " vs " + json, binary < json / 2);
+    }
+
+    @Test
+    public void truncatedScorecardsAreRejected() throws IOException {
+        for (String name : CODECS) {
+            ScorecardCodec codec = ScorecardCodecs.create(name);
+            byte[] bytes = encode(codec, createScorecard());
+            for (int length = 0; length < bytes.length; length++) {
+                assertRejected(name + " truncated to " + length, codec, Arrays.copyOf(bytes, length));
+            }
+        }
+    }
+
+    @Test
+    public void malformedBinaryScorecardsAreRejected() throws IOException {
+        ScorecardCodec codec = ScorecardCodecs.create("binary");
+        // not binary at all
+        assertRejected("no magic", codec, "{\"sequence\":1}".getBytes("UTF-8"));
+        // an unknown version
+        assertRejected("version 2", codec, new byte[]{'S', 'C', 'R', 'B', 4, 0});
+        // a varint that never ends
+        byte[] endless = new byte[20];
+        Arrays.fill(endless, (byte) 0xFF);
+        System.arraycopy(new byte[]{'S', 'C', 'R', 'B'}, 0, endless, 0, 4);
+        assertRejected("endless varint", codec, endless);
+        // version 1, then a hit count series claiming far more entries than there are bytes
+        assertRejected("huge length", codec, new byte[]{'S', 'C', 'R', 'B', 2, 0, 0, 0, 0, (byte) 0xFE, (byte) 0xFF, (byte) 0xFF, 0x7F});
+        // version 1, then a negative length other than the -1 for null
+        assertRejected("negative length", codec, new byte[]{'S', 'C', 'R', 'B', 2, 0, 0, 0, 0, 3});
+    }
+
+    @Test
+    public void garbageAfterTheHeaderIsRejectedOrDecoded() throws IOException {
+        ScorecardCodec codec = ScorecardCodecs.create("binary");
+        byte[] valid = encode(codec, createScorecard());
+        Random random = new Random(23);
+        for (int i = 0; i < 10_000; i++) {
+            byte[] bytes;
+            if (i % 2 == 0) {
+                // random bytes after a valid header
+                bytes = new byte[6 + random.nextInt(200)];
+                random.nextBytes(bytes);
+                System.arraycopy(valid, 0, bytes, 0, 5);
+            }
+            else {
+                // a valid scorecard with a few bytes flipped
+                bytes = valid.clone();
+                for (int flips = 1 + random.nextInt(4); flips > 0; flips--) {
+                    bytes[5 + random.nextInt(bytes.length - 5)] = (byte) random.nextInt(256);
+                }
+            }
+            try {
+                codec.decode(bytes);
+            } catch (IOException expected) {
+                // rejected, as it should be
+            }
+        }
+    }
+
+    private static void assertRejected(String message, ScorecardCodec codec, byte[] bytes) {
+        try {
+            codec.decode(bytes);
+            fail(message + " was decoded");
+        } catch (IOException expected) {
+            // rejected, as it should be
+        }
+    }
+
+    private static byte[] encode(ScorecardCodec codec, Scorecard scorecard) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        codec.encode(scorecard, out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Returns a scorecard with every field set, including negative, large and non ASCII values
+     */
+    private static Scorecard createScorecard() {
+        Scorecard scorecard = new Scorecard();
+        scorecard.setSequence(1_234_567);
+        scorecard.setKeyframe(true);
+        scorecard.setSeriesOffset(17);
+        scorecard.setStartTime(1_557_417_600L);
+        scorecard.setHitCountSeries(new int[]{0, 1, 127, 128, 16_384, Integer.MAX_VALUE, 0, 42});
+        scorecard.setHitCounts(new ArrayList<>(Arrays.asList("1557417600:0", "1557417601:1")));
+        Map<String, Long> hitsReport = new LinkedHashMap<>();
+        hitsReport.put("/api", 300L);
+        hitsReport.put("/report", 12L);
+        scorecard.setHitsReport(hitsReport);
+        scorecard.setLastTimeOfThresholdExceededAlertSecs(1_557_417_650L);
+        scorecard.setFirstTimeOfThresholdExceededSecs(-1);
+        scorecard.setInHighActivity(true);
+        scorecard.setHistory(new LinkedList<>(Arrays.asList("High traffic generated an alert - hits = 23", "Recovered at 12:00 \u00fcber \u2713")));
+        scorecard.setAlert("High traffic generated an alert - hits = 23, triggered at 12:00");
+        scorecard.setShedRecords(Long.MAX_VALUE);
+        scorecard.setSamplingInterval(4);
+        scorecard.setTopSections(createHeavyHitters("/api", 250, 3));
+        scorecard.setTopHosts(createHeavyHitters("10.0.0.1", 99, 0));
+        scorecard.setTopCallers(createHeavyHitters("james", 7, 1));
+        Map<String, ResponseSizes> responseSizes = new LinkedHashMap<>();
+        responseSizes.put("/api", new ResponseSizes(512, 4096, 65_536, 1_000_000));
+        responseSizes.put("/report", new ResponseSizes(0, 0, 0, 0));
+        scorecard.setResponseSizes(responseSizes);
+        scorecard.setAllResponseSizes(new ResponseSizes(600, 5000, 70_000, 1_200_000));
+        Map<String, DistinctCount> distinctCounts = new LinkedHashMap<>();
+        distinctCounts.put("host", new DistinctCount(10, 42, 600, 1_234, 0.0325));
+        distinctCounts.put("caller", new DistinctCount(10, 0, 600, 0, 0.0325));
+        scorecard.setDistinctCounts(distinctCounts);
+        return scorecard;
+    }
+
+    private static HeavyHitters createHeavyHitters(String top, long count, long errorBound) {
+        HeavyHitters heavyHitters = new HeavyHitters();
+        LinkedHashMap<String, Long> counts = new LinkedHashMap<>();
+        counts.put(top, count);
+        counts.put("other", 1L);
+        heavyHitters.setCounts(counts);
+        heavyHitters.setErrorBound(errorBound);
+        heavyHitters.setTotal(count + 1 + errorBound);
+        return heavyHitters;
+    }
+
+    private static void assertScorecardEquals(String codec, Scorecard expected, Scorecard actual) {
+        assertEquals(codec, expected.getSequence(), actual.getSequence());
+        assertEquals(codec, expected.isKeyframe(), actual.isKeyframe());
+        assertEquals(codec, expected.getSeriesOffset(), actual.getSeriesOffset());
+        assertEquals(codec, expected.getStartTime(), actual.getStartTime());
+        assertArrayEquals(codec, expected.getHitCountSeries(), actual.getHitCountSeries());
+        assertEquals(codec, expected.getHitCounts(), actual.getHitCounts());
+        assertEquals(codec, expected.getHitsReport(), actual.getHitsReport());
+        assertEquals(codec, expected.getLastTimeOfThresholdExceededAlertSecs(), actual.getLastTimeOfThresholdExceededAlertSecs());
+        assertEquals(codec, expected.getFirstTimeOfThresholdExceededSecs(), actual.getFirstTimeOfThresholdExceededSecs());
+        assertEquals(codec, expected.isInHighActivity(), actual.isInHighActivity());
+        if (expected.getHistory() == null) {
+            assertNull(codec, actual.getHistory());
+        }
+        else {
+            assertEquals(codec, new ArrayList<>(expected.getHistory()), new ArrayList<>(actual.getHistory()));
+        }
+        assertEquals(codec, expected.getAlert(), actual.getAlert());
+        assertEquals(codec, expected.getShedRecords(), actual.getShedRecords());
+        assertEquals(codec, expected.getSamplingInterval(), actual.getSamplingInterval());
+        assertHeavyHittersEquals(codec, expected.getTopSections(), actual.getTopSections());
+        assertHeavyHittersEquals(codec, expected.getTopHosts(), actual.getTopHosts());
+        assertHeavyHittersEquals(codec, expected.getTopCallers(), actual.getTopCallers());
+        if (expected.getResponseSizes() == null) {
+            assertNull(codec, actual.getResponseSizes());
+        }
+        else {
+            assertEquals(codec, expected.getResponseSizes().keySet(), actual.getResponseSizes().keySet());
+            for (Map.Entry<String, ResponseSizes> entry : expected.getResponseSizes().entrySet()) {
+                assertResponseSizesEquals(codec, entry.getValue(), actual.getResponseSizes().get(entry.getKey()));
+            }
+        }
+        assertResponseSizesEquals(codec, expected.getAllResponseSizes(), actual.getAllResponseSizes());
+        if (expected.getDistinctCounts() == null) {
+            assertNull(codec, actual.getDistinctCounts());
+        }
+        else {
+            assertEquals(codec, expected.getDistinctCounts().keySet(), actual.getDistinctCounts().keySet());
+            for (Map.Entry<String, DistinctCount> entry : expected.getDistinctCounts().entrySet()) {
+                DistinctCount expectedCount = entry.getValue();
+                DistinctCount actualCount = actual.getDistinctCounts().get(entry.getKey());
+                assertEquals(codec, expectedCount.getRecentSeconds(), actualCount.getRecentSeconds());
+                assertEquals(codec, expectedCount.getRecent(), actualCount.getRecent());
+                assertEquals(codec, expectedCount.getWindowSeconds(), actualCount.getWindowSeconds());
+                assertEquals(codec, expectedCount.getWindow(), actualCount.getWindow());
+                assertEquals(codec, expectedCount.getStandardError(), actualCount.getStandardError(), 0);
+            }
+        }
+    }
+
+    private static void assertHeavyHittersEquals(String codec, HeavyHitters expected, HeavyHitters actual) {
+        if (expected == null) {
+            assertNull(codec, actual);
+            return;
+        }
+        // the order is the ranking, so it matters
+        assertEquals(codec, new ArrayList<>(expected.getCounts().entrySet()), new ArrayList<>(actual.getCounts().entrySet()));
+        assertEquals(codec, expected.getErrorBound(), actual.getErrorBound());
+        assertEquals(codec, expected.getTotal(), actual.getTotal());
+    }
+
+    private static void assertResponseSizesEquals(String codec, ResponseSizes expected, ResponseSizes actual) {
+        if (expected == null) {
+            assertNull(codec, actual);
+            return;
+        }
+        assertEquals(codec, expected.getP50(), actual.getP50());
+        assertEquals(codec, expected.getP95(), actual.getP95());
+        assertEquals(codec, expected.getP99(), actual.getP99());
+        assertEquals(codec, expected.getBytesPerSecond(), actual.getBytesPerSecond());
+    }
+}
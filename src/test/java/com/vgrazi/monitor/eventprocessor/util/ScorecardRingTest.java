@@ -0,0 +1,176 @@
+package com.vgrazi.monitor.eventprocessor.util;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ScorecardRingTest {
+    private static final int SLOTS = 4;
+    private static final int SLOT_BYTES = 100;
+    // the layout of the file, as documented in ScorecardRing
+    private static final int HEADER_BYTES = 64;
+    private static final int SLOT_SIZE = 16 + 104;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void publishedScorecardsAreReadBack() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("scorecards.ring");
+        assertNull(ScorecardRing.open(file));
+        try (ScorecardRing writer = ScorecardRing.create(file, SLOTS, SLOT_BYTES);
+             ScorecardRing reader = ScorecardRing.open(file)) {
+            assertNotNull(reader);
+            assertEquals(SLOTS, reader.getSlotCount());
+            assertEquals(-1, reader.getLatestSequence());
+            assertNull(reader.read(0));
+            for (long sequence = 0; sequence < 3; sequence++) {
+                publish(writer, sequence);
+            }
+            assertEquals(2, reader.getLatestSequence());
+            for (long sequence = 0; sequence < 3; sequence++) {
+                assertArrayEquals(payload(sequence), reader.read(sequence));
+            }
+            assertNull("not published yet", reader.read(3));
+        }
+    }
+
+    @Test
+    public void lappedSequencesAreNoLongerRead() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("scorecards.ring");
+        try (ScorecardRing writer = ScorecardRing.create(file, SLOTS, SLOT_BYTES);
+             ScorecardRing reader = ScorecardRing.open(file)) {
+            for (long sequence = 0; sequence < 10; sequence++) {
+                publish(writer, sequence);
+            }
+            for (long sequence = 0; sequence < 10 - SLOTS; sequence++) {
+                assertNull("overwritten " + sequence, reader.read(sequence));
+            }
+            for (long sequence = 10 - SLOTS; sequence < 10; sequence++) {
+                assertArrayEquals(payload(sequence), reader.read(sequence));
+            }
+        }
+    }
+
+    @Test
+    public void tooLargeAScorecardIsNotPublished() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("scorecards.ring");
+        try (ScorecardRing writer = ScorecardRing.create(file, SLOTS, SLOT_BYTES)) {
+            assertTrue(writer.publish(0, new byte[SLOT_BYTES], SLOT_BYTES));
+            assertFalse(writer.publish(1, new byte[SLOT_BYTES + 1], SLOT_BYTES + 1));
+            assertEquals(0, writer.getLatestSequence());
+            assertNull(writer.read(1));
+        }
+    }
+
+    @Test
+    public void attachedReadersSeeTheRingReset() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("scorecards.ring");
+        try (ScorecardRing writer = ScorecardRing.create(file, SLOTS, SLOT_BYTES);
+             ScorecardRing reader = ScorecardRing.open(file)) {
+            publish(writer, 0);
+            publish(writer, 1);
+            try (ScorecardRing restarted = ScorecardRing.create(file, SLOTS, SLOT_BYTES)) {
+                assertEquals(-1, reader.getLatestSequence());
+                assertNull(reader.read(1));
+                publish(restarted, 0);
+                assertEquals(0, reader.getLatestSequence());
+                assertArrayEquals(payload(0), reader.read(0));
+            }
+        }
+    }
+
+    /**
+     * Plays the part of a writer that is part way through overwriting a slot, by setting the slot's seqlock word
+     * directly in the file
+     */
+    @Test
+    public void slotBeingOverwrittenIsNotRead() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("scorecards.ring");
+        try (ScorecardRing writer = ScorecardRing.create(file, SLOTS, SLOT_BYTES);
+             FileChannel channel = new RandomAccessFile(file.toFile(), "rw").getChannel()) {
+            publish(writer, 1);
+            MappedByteBuffer mapping = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+            mapping.order(ByteOrder.nativeOrder());
+            int seqlock = HEADER_BYTES + SLOT_SIZE;
+            assertEquals(2 * 1 + 2, mapping.getLong(seqlock));
+
+            // sequence 5 is being written over sequence 1
+            mapping.putLong(seqlock, 2 * 5 + 1);
+            assertNull(writer.read(1));
+            assertNull(writer.read(5));
+            // and has been written
+            mapping.putLong(seqlock, 2 * 5 + 2);
+            assertNull(writer.read(1));
+        }
+    }
+
+    /**
+     * A writer laps a small ring many times, while a reader follows the newest scorecard and the oldest one, which is
+     * the next to be overwritten. Every scorecard the reader gets back must be exactly what was published
+     */
+    @Test(timeout = 120_000)
+    public void concurrentReaderNeverSeesATornScorecard() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("scorecards.ring");
+        int count = 200_000;
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try (ScorecardRing writer = ScorecardRing.create(file, SLOTS, SLOT_BYTES);
+             ScorecardRing reader = ScorecardRing.open(file)) {
+            Future<?> writing = executor.submit(() -> {
+                for (long sequence = 0; sequence < count; sequence++) {
+                    publish(writer, sequence);
+                }
+                return null;
+            });
+            int read = 0;
+            long latest = -1;
+            while (!writing.isDone() || latest < count - 1) {
+                latest = reader.getLatestSequence();
+                for (long sequence = Math.max(0, latest - SLOTS + 1); sequence <= latest; sequence++) {
+                    byte[] bytes = reader.read(sequence);
+                    if (bytes != null) {
+                        assertArrayEquals("sequence " + sequence, payload(sequence), bytes);
+                        read++;
+                    }
+                }
+            }
+            writing.get();
+            assertTrue(read > 0);
+            assertArrayEquals(payload(count - 1), reader.read(count - 1));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static void publish(ScorecardRing ring, long sequence) {
+        byte[] bytes = payload(sequence);
+        assertTrue(ring.publish(sequence, bytes, bytes.length));
+    }
+
+    /**
+     * A payload that only the one sequence has, of a length that varies from one sequence to the next
+     */
+    private static byte[] payload(long sequence) {
+        byte[] bytes = new byte[1 + (int) (sequence * 37 % SLOT_BYTES)];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) (sequence * 31 + i * (sequence >>> 8 | 1));
+        }
+        return bytes;
+    }
+}
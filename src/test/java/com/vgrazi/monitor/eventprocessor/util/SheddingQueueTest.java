@@ -0,0 +1,135 @@
+package com.vgrazi.monitor.eventprocessor.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SheddingQueueTest {
+    private final IngestMetrics metrics = new IngestMetrics();
+
+    // negative elements play the part of malformed records
+    private SheddingQueue<Integer> newQueue(OverflowPolicy policy) {
+        return new SheddingQueue<>(new ArrayBlockingQueue<>(2), policy, element -> element < 0, metrics);
+    }
+
+    @Test(timeout = 10_000)
+    public void blockMakesTheProducerWaitAndDropsNothing() throws Exception {
+        SheddingQueue<Integer> queue = newQueue(OverflowPolicy.BLOCK);
+        queue.put(1);
+        queue.put(2);
+        assertFalse(queue.offer(3));
+        assertFalse(queue.offer(-3));
+        assertPutWaitsForRoom(queue, 4);
+        assertEquals(Arrays.asList(2, 4), drain(queue));
+        assertEquals(0, metrics.getShedCount());
+    }
+
+    @Test
+    public void dropNewestDiscardsAndCountsTheNewElements() throws Exception {
+        SheddingQueue<Integer> queue = newQueue(OverflowPolicy.DROP_NEWEST);
+        for (int i = 1; i <= 5; i++) {
+            queue.put(i);
+        }
+        assertTrue(queue.offer(6));
+        assertEquals(Arrays.asList(1, 2), drain(queue));
+        assertEquals(4, metrics.getDroppedNewest());
+        assertEquals(4, metrics.getShedCount());
+    }
+
+    @Test(timeout = 10_000)
+    public void dropMalformedOnlyDiscardsMalformedElements() throws Exception {
+        SheddingQueue<Integer> queue = newQueue(OverflowPolicy.DROP_MALFORMED);
+        queue.put(1);
+        queue.put(2);
+        queue.put(-3);
+        assertTrue(queue.offer(-4));
+        assertFalse(queue.offer(5));
+        assertEquals(2, metrics.getDroppedMalformed());
+        assertPutWaitsForRoom(queue, 6);
+        assertEquals(Arrays.asList(2, 6), drain(queue));
+        assertEquals(2, metrics.getShedCount());
+    }
+
+    @Test
+    public void dropOldestDiscardsAndCountsTheOldestElements() throws Exception {
+        SheddingQueue<Integer> queue = newQueue(OverflowPolicy.DROP_OLDEST);
+        for (int i = 1; i <= 5; i++) {
+            queue.put(i);
+        }
+        assertEquals(Arrays.asList(4, 5), drain(queue));
+        assertEquals(3, metrics.getDroppedOldest());
+        assertEquals(3, metrics.getShedCount());
+    }
+
+    /**
+     * DROP_OLDEST polls from the producer's thread while the consumer is taking. Every element must either be taken
+     * once, in order, or be counted as dropped
+     */
+    @Test(timeout = 60_000)
+    public void dropOldestCountsExactlyWhatTheConsumerMisses() throws Exception {
+        SheddingQueue<Integer> queue = newQueue(OverflowPolicy.DROP_OLDEST);
+        int count = 200_000;
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> producer = executor.submit(() -> {
+                for (int i = 0; i < count; i++) {
+                    queue.put(i);
+                }
+                // the end marker. Nothing is put after it, so it is never dropped
+                queue.put(-1);
+                return null;
+            });
+            int taken = 0;
+            int last = -1;
+            Integer element;
+            while ((element = queue.poll(10, TimeUnit.SECONDS)) != -1) {
+                assertTrue(element + " after " + last, element > last);
+                last = element;
+                taken++;
+            }
+            producer.get();
+            assertEquals(count, taken + metrics.getDroppedOldest());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static void assertPutWaitsForRoom(SheddingQueue<Integer> queue, int element) throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> put = executor.submit(() -> {
+                queue.put(element);
+                return null;
+            });
+            try {
+                put.get(200, TimeUnit.MILLISECONDS);
+                fail("put should wait while the queue is full");
+            } catch (TimeoutException expected) {
+                // still waiting
+            }
+            queue.take();
+            put.get(5, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static List<Integer> drain(SheddingQueue<Integer> queue) {
+        List<Integer> elements = new ArrayList<>();
+        queue.drainTo(elements);
+        return elements;
+    }
+}
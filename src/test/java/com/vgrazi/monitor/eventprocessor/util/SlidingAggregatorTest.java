@@ -0,0 +1,73 @@
+package com.vgrazi.monitor.eventprocessor.util;
+
+import com.vgrazi.monitor.eventprocessor.domain.Dimension;
+import com.vgrazi.monitor.eventprocessor.domain.Frame;
+import com.vgrazi.monitor.eventprocessor.domain.Record;
+import org.junit.Test;
+
+import java.util.EnumSet;
+
+import static org.junit.Assert.assertEquals;
+
+public class SlidingAggregatorTest {
+    private static final String LINE = "127.0.0.1 - james [11/Mar/2019:22:08:21 +9490] \"GET /report HTTP/1.0\" 200 123";
+    private static final float DELTA = 1e-6f;
+
+    private final SlidingAggregator aggregator = new SlidingAggregator(10, 4, 60, EnumSet.noneOf(Dimension.class));
+
+    @Test
+    public void averageIsZeroBeforeAnyFrame() {
+        assertEquals(0, aggregator.getAverageHitCount(), DELTA);
+    }
+
+    /**
+     * Seconds with no frame are left out of the average, as they were when the average was taken over the frames in
+     * the window
+     */
+    @Test
+    public void averageIsOverTheFramesPresent() {
+        aggregator.frameAdded(frame(100, 6));
+        assertEquals(6, aggregator.getAverageHitCount(), DELTA);
+        // no frames for 101 and 102
+        aggregator.frameAdded(frame(103, 2));
+        assertEquals(4, aggregator.getAverageHitCount(), DELTA);
+    }
+
+    @Test
+    public void averageDropsTheFramesOlderThanTheRange() {
+        aggregator.frameAdded(frame(100, 100));
+        aggregator.frameAdded(frame(101, 1));
+        aggregator.frameAdded(frame(102, 2));
+        aggregator.frameAdded(frame(103, 3));
+        assertEquals(26.5f, aggregator.getAverageHitCount(), DELTA);
+        // 100 falls out of the 4 second range
+        aggregator.frameAdded(frame(104, 6));
+        assertEquals(3, aggregator.getAverageHitCount(), DELTA);
+        // a long gap empties the range, leaving only the new frame
+        aggregator.frameAdded(frame(200, 5));
+        assertEquals(5, aggregator.getAverageHitCount(), DELTA);
+    }
+
+    @Test
+    public void lateFrameIsAddedToItsSecond() {
+        aggregator.frameAdded(frame(100, 4));
+        aggregator.frameAdded(frame(102, 2));
+        aggregator.frameAdded(frame(100, 2));
+        // 100 has 6 hits in two frames, but is one second of the average
+        assertEquals(4, aggregator.getAverageHitCount(), DELTA);
+        aggregator.frameAdded(frame(101, 1));
+        assertEquals(3, aggregator.getAverageHitCount(), DELTA);
+        // a frame that is already out of range is not counted
+        aggregator.frameAdded(frame(98, 50));
+        assertEquals(3, aggregator.getAverageHitCount(), DELTA);
+    }
+
+    private static Frame frame(long second, int hits) {
+        Frame frame = new Frame(false);
+        frame.setFrameStartTime(second);
+        for (int i = 0; i < hits; i++) {
+            frame.addRecord(Record.fromLine(LINE));
+        }
+        return frame;
+    }
+}
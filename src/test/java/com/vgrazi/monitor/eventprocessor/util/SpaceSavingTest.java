@@ -0,0 +1,146 @@
+package com.vgrazi.monitor.eventprocessor.util;
+
+import com.vgrazi.monitor.eventprocessor.domain.HeavyHitters;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the sketches against an exact count of a skewed (Zipf) stream of many more distinct values than the capacity
+ */
+public class SpaceSavingTest {
+    private static final int CAPACITY = 100;
+    private static final int DISTINCT = 10_000;
+    private static final int COUNT = 200_000;
+
+    private final Map<String, Long> exact = new HashMap<>();
+
+    @Test
+    public void countsAreExactWithinCapacity() {
+        SpaceSaving sketch = new SpaceSaving(CAPACITY);
+        for (int i = 0; i < 1_000; i++) {
+            String value = "/section" + (i % CAPACITY);
+            sketch.add(value, 1 + i % 3);
+            exact.merge(value, 1L + i % 3, Long::sum);
+        }
+        HeavyHitters heavyHitters = topK(sketch, CAPACITY);
+        assertEquals(exact, heavyHitters.getCounts());
+        assertEquals(sum(exact), heavyHitters.getTotal());
+    }
+
+    @Test
+    public void addTracksTheHeavyHittersOfASkewedStream() {
+        SpaceSaving sketch = new SpaceSaving(CAPACITY);
+        for (String value : zipf(new Random(17), COUNT)) {
+            sketch.add(value, 1);
+            exact.merge(value, 1L, Long::sum);
+        }
+        assertEquals(COUNT, sketch.getTotal());
+        assertTrue(sketch.getMinCount() <= COUNT / CAPACITY);
+        assertGuarantees(topK(sketch, CAPACITY), sketch.getMinCount());
+    }
+
+    /**
+     * Sketches of parts of the stream, merged into one, keep the guarantees over the whole stream
+     */
+    @Test
+    public void mergedSketchesTrackTheHeavyHittersOfTheWholeStream() {
+        Random random = new Random(19);
+        SpaceSaving merged = new SpaceSaving(CAPACITY);
+        for (int part = 0; part < 10; part++) {
+            SpaceSaving sketch = new SpaceSaving(CAPACITY);
+            for (String value : zipf(random, COUNT / 10)) {
+                sketch.add(value, 1);
+                exact.merge(value, 1L, Long::sum);
+            }
+            merged.merge(sketch);
+        }
+        assertEquals(COUNT, merged.getTotal());
+        assertGuarantees(topK(merged, CAPACITY), COUNT / CAPACITY);
+    }
+
+    /**
+     * topK over per-second sketches reports the sum of their smallest counts as the error bound
+     */
+    @Test
+    public void topKOfManySketchesIsWithinTheReportedErrorBound() {
+        Random random = new Random(23);
+        List<SpaceSaving> sketches = new ArrayList<>();
+        long minCounts = 0;
+        for (int second = 0; second < 10; second++) {
+            SpaceSaving sketch = new SpaceSaving(CAPACITY);
+            for (String value : zipf(random, COUNT / 10)) {
+                sketch.add(value, 1);
+                exact.merge(value, 1L, Long::sum);
+            }
+            sketches.add(sketch);
+            minCounts += sketch.getMinCount();
+        }
+        HeavyHitters heavyHitters = SpaceSaving.topK(sketches, 10);
+        assertEquals(COUNT, heavyHitters.getTotal());
+        assertEquals(minCounts, heavyHitters.getErrorBound());
+        assertTrue(heavyHitters.getErrorBound() <= COUNT / CAPACITY);
+        assertGuarantees(heavyHitters, heavyHitters.getErrorBound());
+
+        // the top of a Zipf stream is well separated, so the order is the exact one
+        List<String> exactTop = new ArrayList<>(exact.keySet());
+        exactTop.sort((v1, v2) -> Long.compare(exact.get(v2), exact.get(v1)));
+        assertEquals(exactTop.subList(0, 10), new ArrayList<>(heavyHitters.getCounts().keySet()));
+    }
+
+    /**
+     * Every value whose exact count exceeds total / capacity is reported, and no reported count is below the exact
+     * count, or above it by more than the error bound
+     */
+    private void assertGuarantees(HeavyHitters heavyHitters, long errorBound) {
+        Map<String, Long> counts = heavyHitters.getCounts();
+        for (Map.Entry<String, Long> entry : counts.entrySet()) {
+            long exactCount = exact.getOrDefault(entry.getKey(), 0L);
+            assertTrue(entry + " exact " + exactCount, entry.getValue() >= exactCount);
+            assertTrue(entry + " exact " + exactCount, entry.getValue() <= exactCount + errorBound);
+        }
+        long guaranteed = sum(exact) / CAPACITY;
+        long topReported = Collections.min(counts.values());
+        for (Map.Entry<String, Long> entry : exact.entrySet()) {
+            // only the top n are reported, so only values whose count puts them in the top n must be there
+            if (entry.getValue() > guaranteed && entry.getValue() > topReported) {
+                assertTrue(entry + " missing", counts.containsKey(entry.getKey()));
+            }
+        }
+    }
+
+    private static HeavyHitters topK(SpaceSaving sketch, int n) {
+        return SpaceSaving.topK(Collections.singletonList(sketch), n);
+    }
+
+    private static long sum(Map<String, Long> counts) {
+        return counts.values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    /**
+     * Returns count values drawn from DISTINCT sections with Zipf (s = 1.1) frequencies
+     */
+    private static List<String> zipf(Random random, int count) {
+        double[] cumulative = new double[DISTINCT];
+        double sum = 0;
+        for (int rank = 0; rank < DISTINCT; rank++) {
+            sum += 1 / Math.pow(rank + 1, 1.1);
+            cumulative[rank] = sum;
+        }
+        List<String> values = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int rank = Arrays.binarySearch(cumulative, random.nextDouble() * sum);
+            values.add("/section" + (rank < 0 ? -rank - 1 : rank));
+        }
+        return values;
+    }
+}